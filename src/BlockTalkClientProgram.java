@@ -1,4 +1,5 @@
 import chatroom.Client;
+import chatroom.ClientConfiguration;
 import chatroom.ClientListener;
 import models.User;
 
@@ -26,7 +27,7 @@ import models.messages.*;
 public class BlockTalkClientProgram implements ClientListener {
     @Override
     public void messageSent(User recipient, Message message) {
-        //System.out.printf("Successfully sent message: %s\n", message.getData());
+        //System.out.printf("Successfully sent message: %s\n", message);
     }
 
     @Override
@@ -49,6 +50,11 @@ public class BlockTalkClientProgram implements ClientListener {
         }
     }
 
+    @Override
+    public void roomReady(int connectedPeers, int joinPeers) {
+        System.out.printf("Room ready, connected to %d of %d members.\n", connectedPeers, joinPeers);
+    }
+
     /**
      * Main function to participate in chat rooms.
      *
@@ -63,7 +69,7 @@ public class BlockTalkClientProgram implements ClientListener {
         User clientUser = promptClientInfo(scanner);
 
         // Start client.
-        Client client = new Client(clientUser, program);
+        Client client = new Client(clientUser, program, ClientConfiguration.fromArgs(args));
         new Thread(client).start();
 
         // Prompt user for desired key/room
@@ -94,19 +100,23 @@ public class BlockTalkClientProgram implements ClientListener {
                 System.out.println("SEND HLO");
                 client.sendMessageToAll(new HelloMessage(clientUser));
             } else if (message.startsWith("/ODR")) {
-                Message msgA = new ChatMessage(clientUser.getSocketAddress(), client.timestamp(), "A");
-                Message msgB = new ChatMessage(clientUser.getSocketAddress(), client.timestamp(), "B");
-                Message msgC = new ChatMessage(clientUser.getSocketAddress(), client.timestamp(), "C");
-                client.sendMessageToAll(msgC);
-                client.sendMessageToAll(msgB);
-                client.sendMessageToAll(msgA);
+                client.execute(() -> {
+                    ChatMessage msgA = client.createChatMessage("A");
+                    ChatMessage msgB = client.createChatMessage("B");
+                    ChatMessage msgC = client.createChatMessage("C");
+                    client.sendChatMessage(msgC);
+                    client.sendChatMessage(msgB);
+                    client.sendChatMessage(msgA);
+                });
+            } else if (message.startsWith("/stats")) {
+                client.execute(() -> System.out.println("HOLDBACK " + client.getHoldbackMetrics()));
             } else if (message.startsWith("/rank")) {
                 for (User user : client.getUserRankingOrderList()) { System.out.println(user); }
             } else if (message.toLowerCase().startsWith("/q") || message.toLowerCase().startsWith("/quit")) {
                 shutdown = true;
                 client.sendMessageToAll(new ByeMessage(clientUser.getSocketAddress()));
             } else {
-                client.sendMessageToAll(new ChatMessage(clientUser.getSocketAddress(),client.timestamp(), message));
+                client.sendChatMessage(message);
             }
         }
     }
@@ -0,0 +1,151 @@
+package benchmarks;
+
+import encryption.EncryptionEngine;
+import helpers.BufferPool;
+import models.messages.ChatMessage;
+import models.messages.EncryptedMessage;
+import models.messages.Message;
+import sockets.SocketHandler;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * Compares encrypting a broadcast chat message once for the whole room, as Client.sendMessageToAll does,
+ * with encrypting it again for every recipient.
+ *
+ * Recipients are SocketHandlers that only encode the frame they are given into a buffer of their own,
+ * which is the copy a connection's writer makes anyway. Each row is the CPU time of the sending thread per broadcast.
+ *
+ * Usage: java benchmarks.BroadcastBenchmark [room size ...] (default 1 4 16 64 256)
+ */
+public class BroadcastBenchmark {
+
+    /**
+     * Length of the broadcast chat message, in characters.
+     */
+    private static final int MESSAGE_LENGTH = 200;
+
+    /**
+     * Number of recipient sends measured per row, spread over as many broadcasts as needed.
+     */
+    private static final int SENDS = 400000;
+
+    public static void main(String[] args) throws Exception {
+        int[] roomSizes = args.length > 0 ? new int[args.length] : new int[]{1, 4, 16, 64, 256};
+        for (int i = 0; i < args.length; i++) {
+            roomSizes[i] = Integer.parseInt(args[i]);
+        }
+        EncryptionEngine encryptionEngine = new EncryptionEngine("room key");
+        InetSocketAddress sender = new InetSocketAddress("127.0.0.1", 5000);
+        String text = "x".repeat(MESSAGE_LENGTH);
+
+        System.out.printf("%-10s %16s %16s%n", "room size", "per recipient", "once");
+        for (int roomSize : roomSizes) {
+            SocketHandler[] recipients = new SocketHandler[roomSize];
+            for (int i = 0; i < roomSize; i++) {
+                recipients[i] = new EncodingSocketHandler(new InetSocketAddress("127.0.0.1", 6000 + i));
+            }
+            int broadcasts = Math.max(SENDS / roomSize, 2000);
+            // Run both once first so the JIT compiled them before they are measured.
+            measure(broadcasts, () -> sendPerRecipient(encryptionEngine, new ChatMessage(sender, 0, text), recipients));
+            measure(broadcasts, () -> sendOnce(encryptionEngine, new ChatMessage(sender, 0, text), recipients));
+            double perRecipient = measure(broadcasts, () -> sendPerRecipient(encryptionEngine, new ChatMessage(sender, 0, text), recipients));
+            double once = measure(broadcasts, () -> sendOnce(encryptionEngine, new ChatMessage(sender, 0, text), recipients));
+            System.out.printf("%-10d %13.1f us %13.1f us%n", roomSize, perRecipient, once);
+        }
+    }
+
+    /**
+     * Encrypts the message for every recipient, as before the broadcast was encrypted once.
+     */
+    private static void sendPerRecipient(EncryptionEngine encryptionEngine, Message message, SocketHandler[] recipients) throws Exception {
+        for (SocketHandler recipient : recipients) {
+            recipient.sendMessage(encrypt(encryptionEngine, message));
+        }
+    }
+
+    /**
+     * Encrypts the message once and queues the same EncryptedMessage for every recipient.
+     */
+    private static void sendOnce(EncryptionEngine encryptionEngine, Message message, SocketHandler[] recipients) throws Exception {
+        EncryptedMessage encryptedMessage = encrypt(encryptionEngine, message);
+        for (SocketHandler recipient : recipients) {
+            recipient.sendMessage(encryptedMessage);
+        }
+    }
+
+    /**
+     * Encrypts a message the way Client.encryptMessage does.
+     */
+    private static EncryptedMessage encrypt(EncryptionEngine encryptionEngine, Message message) {
+        ByteBuffer plaintext = BufferPool.acquire(message.getDataSize());
+        try {
+            message.writeData(plaintext);
+            plaintext.flip();
+            return new EncryptedMessage(message.getSenderSocketAddress(), encryptionEngine.encrypt(plaintext));
+        } finally {
+            BufferPool.release(plaintext);
+        }
+    }
+
+    /**
+     * Runs a broadcast the given number of times.
+     *
+     * @return CPU time of this thread per broadcast, in microseconds.
+     */
+    private static double measure(int broadcasts, Broadcast broadcast) throws Exception {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        long start = threadMXBean.getCurrentThreadCpuTime();
+        for (int i = 0; i < broadcasts; i++) {
+            broadcast.send();
+        }
+        return (threadMXBean.getCurrentThreadCpuTime() - start) / 1000.0 / broadcasts;
+    }
+
+    /**
+     * One broadcast to the room.
+     */
+    private interface Broadcast {
+        void send() throws Exception;
+    }
+
+    /**
+     * Recipient that encodes every frame it is given, standing in for a connection's writer.
+     */
+    private static class EncodingSocketHandler extends SocketHandler {
+        private final InetSocketAddress socketAddress;
+
+        EncodingSocketHandler(InetSocketAddress socketAddress) {
+            this.socketAddress = socketAddress;
+        }
+
+        @Override
+        public void sendMessage(Message message, boolean mayBlock) {
+            ByteBuffer frame = BufferPool.acquire(message.getEncodedSize());
+            message.writeTo(frame);
+            BufferPool.release(frame);
+        }
+
+        @Override
+        public InetSocketAddress getRemoteSocketAddress() {
+            return socketAddress;
+        }
+
+        @Override
+        public InetSocketAddress getLocalSocketAddress() {
+            return socketAddress;
+        }
+
+        @Override
+        public boolean isConnectionClosed() {
+            return false;
+        }
+
+        @Override
+        public void shutdown() {
+        }
+    }
+}
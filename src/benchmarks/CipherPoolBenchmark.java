@@ -0,0 +1,133 @@
+package benchmarks;
+
+import encryption.EncryptionEngine;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Compares decrypting on several threads with the pooled ciphers of EncryptionEngine,
+ * with one cipher shared by every thread as before the pool, and with one cipher shared under a lock.
+ *
+ * Every thread decrypts the same 1 KiB message over and over. A row prints decrypts per second,
+ * and in brackets the decrypts that failed or did not return the plaintext.
+ * Ciphers are not thread-safe, so the unguarded shared cipher goes wrong once threads contend for it.
+ *
+ * Usage: java benchmarks.CipherPoolBenchmark [threads ...] (default 1 2 4 8)
+ */
+public class CipherPoolBenchmark {
+
+    /**
+     * Size of the decrypted message, in bytes.
+     */
+    private static final int MESSAGE_SIZE = 1024;
+
+    /**
+     * Time every row runs for, in milliseconds.
+     */
+    private static final long DURATION = 2000;
+
+    public static void main(String[] args) throws Exception {
+        int[] threadCounts = args.length > 0 ? new int[args.length] : new int[]{1, 2, 4, 8};
+        for (int i = 0; i < args.length; i++) {
+            threadCounts[i] = Integer.parseInt(args[i]);
+        }
+        SharedCipherEngine encryptionEngine = new SharedCipherEngine("room key");
+        byte[] plaintext = new byte[MESSAGE_SIZE];
+        new Random(1).nextBytes(plaintext);
+        byte[] sealed = encryptionEngine.encrypt(plaintext);
+
+        // Failed decrypts print their stack traces, which would drown the results.
+        System.setErr(new java.io.PrintStream(java.io.OutputStream.nullOutputStream()));
+        // Run every variant once first so the JIT compiled them before they are measured.
+        run(1, plaintext, () -> encryptionEngine.decrypt(sealed));
+        run(1, plaintext, () -> encryptionEngine.decryptShared(sealed));
+        System.out.printf("%-8s %22s %22s %22s%n", "threads", "pool", "shared", "locked");
+        for (int threads : threadCounts) {
+            System.out.printf("%-8d %22s %22s %22s%n", threads,
+                    run(threads, plaintext, () -> encryptionEngine.decrypt(sealed)),
+                    run(threads, plaintext, () -> encryptionEngine.decryptShared(sealed)),
+                    run(threads, plaintext, () -> encryptionEngine.decryptLocked(sealed)));
+        }
+    }
+
+    /**
+     * Decrypts on the given number of threads for the duration of a row.
+     *
+     * @return Decrypts per second, and the wrong ones in brackets.
+     */
+    private static String run(int threads, byte[] plaintext, Decrypt decrypt) throws InterruptedException {
+        AtomicLong decrypts = new AtomicLong();
+        AtomicLong wrong = new AtomicLong();
+        long end = System.nanoTime() + DURATION * 1_000_000;
+        Thread[] decryptThreads = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            decryptThreads[i] = new Thread(() -> {
+                long count = 0;
+                long wrongCount = 0;
+                while (System.nanoTime() < end) {
+                    if (!Arrays.equals(decrypt.decrypt(), plaintext)) {
+                        wrongCount++;
+                    }
+                    count++;
+                }
+                decrypts.addAndGet(count);
+                wrong.addAndGet(wrongCount);
+            });
+            decryptThreads[i].start();
+        }
+        for (Thread decryptThread : decryptThreads) {
+            decryptThread.join();
+        }
+        return String.format("%.2fM/s (%d)", decrypts.get() / (DURATION / 1000.0) / 1e6, wrong.get());
+    }
+
+    /**
+     * One decrypt of the sealed message.
+     */
+    private interface Decrypt {
+        byte[] decrypt();
+    }
+
+    /**
+     * EncryptionEngine that can also decrypt with a single cipher shared by every thread.
+     */
+    private static class SharedCipherEngine extends EncryptionEngine {
+        private final Cipher sharedCipher;
+        private final ReentrantLock sharedCipherLock = new ReentrantLock();
+
+        SharedCipherEngine(String userKey) throws Exception {
+            super(userKey);
+            sharedCipher = Cipher.getInstance(ALGORITHM);
+        }
+
+        /**
+         * Decrypts with the shared cipher without guarding it, as every thread did before the pool.
+         */
+        byte[] decryptShared(byte[] sealed) {
+            try {
+                sharedCipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_SIZE * Byte.SIZE, sealed, 0, NONCE_SIZE));
+                return sharedCipher.doFinal(sealed, NONCE_SIZE, sealed.length - NONCE_SIZE);
+            } catch (GeneralSecurityException | RuntimeException e) {
+                return new byte[0];
+            }
+        }
+
+        /**
+         * Decrypts with the shared cipher while holding a lock, so threads take turns.
+         */
+        byte[] decryptLocked(byte[] sealed) {
+            sharedCipherLock.lock();
+            try {
+                return decryptShared(sealed);
+            } finally {
+                sharedCipherLock.unlock();
+            }
+        }
+    }
+}
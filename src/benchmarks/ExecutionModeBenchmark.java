@@ -0,0 +1,136 @@
+package benchmarks;
+
+import helpers.MessageReadHelper;
+import models.User;
+import models.messages.HelloMessage;
+import models.messages.Message;
+import models.messages.YourInfoMessage;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the threads and memory a ServerManager needs to hold idle client connections
+ * on platform threads, on virtual threads, and on the nio transport.
+ *
+ * For every connection count and mode, a ServerManager is started in its own JVM with the classpath of this one.
+ * This program then opens the connections, exchanges a hello for the client's info on each,
+ * and reads the thread count and resident memory of the ServerManager from /proc, so it only runs on Linux.
+ *
+ * Usage: java benchmarks.ExecutionModeBenchmark [connections ...] (default 1000 10000)
+ * Both processes hold one file per connection, so the open file limit must be above the largest count.
+ */
+public class ExecutionModeBenchmark {
+
+    /**
+     * ServerManager options of the compared modes.
+     */
+    private static final String[] MODES = {"--execution=platform", "--execution=virtual", "--transport=nio"};
+
+    /**
+     * Time given to the ServerManager to settle after the last connection, in milliseconds.
+     */
+    private static final long SETTLE_TIME = 2000;
+
+    public static void main(String[] args) throws Exception {
+        int[] connectionCounts = args.length > 0 ? new int[args.length] : new int[]{1000, 10000};
+        for (int i = 0; i < args.length; i++) {
+            connectionCounts[i] = Integer.parseInt(args[i]);
+        }
+        System.out.printf("%-12s %-22s %8s %10s%n", "connections", "mode", "threads", "rss");
+        for (int connections : connectionCounts) {
+            for (String mode : MODES) {
+                run(connections, mode);
+            }
+        }
+    }
+
+    /**
+     * Holds the given number of connections to a new ServerManager and prints what it uses.
+     */
+    private static void run(int connections, String mode) throws Exception {
+        int port = freePort();
+        Process serverManager = new ProcessBuilder(Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path"), "server.ServerManager", String.valueOf(port), mode)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        List<Socket> sockets = new ArrayList<>();
+        try {
+            // Stop adding servers and start listening for clients.
+            OutputStream input = serverManager.getOutputStream();
+            input.write("c\n".getBytes(StandardCharsets.UTF_8));
+            input.flush();
+
+            for (int i = 0; i < connections; i++) {
+                Socket socket = connect(port);
+                sockets.add(socket);
+                User user = new User("user" + i, new InetSocketAddress("127.0.0.1", 1024 + i % 60000));
+                socket.getOutputStream().write(new HelloMessage(user).toByteArray());
+            }
+            int answered = 0;
+            for (Socket socket : sockets) {
+                Message reply = MessageReadHelper.readNextMessage(socket.getInputStream());
+                if (reply instanceof YourInfoMessage) {
+                    answered++;
+                }
+            }
+            Thread.sleep(SETTLE_TIME);
+
+            String status = Files.readString(Path.of("/proc", String.valueOf(serverManager.pid()), "status"));
+            System.out.printf("%-12d %-22s %8s %7d MB%s%n", connections, mode, statusField(status, "Threads"),
+                    Long.parseLong(statusField(status, "VmRSS").split(" ")[0]) / 1024,
+                    answered < connections ? "  (" + answered + " answered)" : "");
+        } finally {
+            for (Socket socket : sockets) {
+                socket.close();
+            }
+            serverManager.destroyForcibly().waitFor();
+        }
+    }
+
+    /**
+     * Returns a port nothing listens on, picked by the system so it is not one of its ephemeral ports in use.
+     */
+    private static int freePort() throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            return serverSocket.getLocalPort();
+        }
+    }
+
+    /**
+     * Connects to the ServerManager, waiting for it to start listening.
+     */
+    private static Socket connect(int port) throws IOException, InterruptedException {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return new Socket("127.0.0.1", port);
+            } catch (IOException e) {
+                if (attempt == 100) {
+                    throw e;
+                }
+                Thread.sleep(100);
+            }
+        }
+    }
+
+    /**
+     * Returns the value of a field of /proc/[pid]/status.
+     */
+    private static String statusField(String status, String name) {
+        for (String line : status.split("\n")) {
+            if (line.startsWith(name + ":")) {
+                return line.substring(name.length() + 1).trim();
+            }
+        }
+        return "?";
+    }
+}
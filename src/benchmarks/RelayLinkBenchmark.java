@@ -0,0 +1,146 @@
+package benchmarks;
+
+import helpers.SocketAddressHelper;
+import models.ExecutionMode;
+import models.messages.Message;
+import models.messages.RequestRoomListMessage;
+import server.ClientServerConnectionRelay;
+import server.Server;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.SocketAddress;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Compares the link between the ServerManager and a Server on the same host over loopback TCP
+ * and over a Unix domain socket.
+ *
+ * For every transport, a Server is started in this JVM and a ClientServerConnectionRelay is linked to it,
+ * as the ServerManager does. The relay then sends room list requests, first one at a time to measure latency,
+ * then from several threads sharing the link to measure throughput. Every relayed request is two round trips.
+ *
+ * Usage: java benchmarks.RelayLinkBenchmark [unix socket path] (default: a new file in the temporary directory)
+ */
+public class RelayLinkBenchmark {
+
+    /**
+     * Requests sent before measuring, so the JIT compiled the request path.
+     */
+    private static final int WARMUP_REQUESTS = 20000;
+
+    /**
+     * Requests sent one at a time.
+     */
+    private static final int SERIAL_REQUESTS = 50000;
+
+    /**
+     * Requests sent from the relay threads.
+     */
+    private static final int CONCURRENT_REQUESTS = 80000;
+
+    /**
+     * Number of threads sharing the link, as the relay threads of the ServerManager do.
+     */
+    private static final int RELAY_THREADS = 8;
+
+    public static void main(String[] args) throws Exception {
+        Path unixPath = args.length > 0 ? Path.of(args[0])
+                : Files.createTempDirectory("blocktalk").resolve("server.sock");
+        int port;
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            port = serverSocket.getLocalPort();
+        }
+        // The Server and relay log every request, which would drown the results.
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(PrintStream.nullOutputStream()));
+
+        out.printf("%-14s %9s %9s %14s %14s%n", "link", "p50", "p99", "serial", RELAY_THREADS + " threads");
+        out.println(run("loopback TCP", "127.0.0.1:" + port));
+        out.println(run("unix socket", SocketAddressHelper.UNIX_SCHEME + unixPath));
+        Files.deleteIfExists(unixPath);
+        if (args.length == 0) {
+            Files.deleteIfExists(unixPath.getParent());
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Links a relay to a new Server at the address and sends it requests.
+     *
+     * @return Row of results.
+     */
+    private static String run(String link, String address) throws Exception {
+        SocketAddress serverAddress = SocketAddressHelper.parse(address);
+        Server server = new Server(serverAddress, ExecutionMode.PLATFORM);
+        Thread serverThread = new Thread(() -> {
+            try {
+                server.run();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        });
+        serverThread.setDaemon(true);
+        serverThread.start();
+
+        try (SocketChannel serverChannel = connect(serverAddress)) {
+            ClientServerConnectionRelay relay = new ClientServerConnectionRelay(List.of(serverChannel));
+            Message request = new RequestRoomListMessage(new InetSocketAddress("127.0.0.1", 5000));
+            for (int i = 0; i < WARMUP_REQUESTS; i++) {
+                relay.messageReceived(request);
+            }
+
+            long[] latencies = new long[SERIAL_REQUESTS];
+            long serialStart = System.nanoTime();
+            for (int i = 0; i < SERIAL_REQUESTS; i++) {
+                long start = System.nanoTime();
+                relay.messageReceived(request);
+                latencies[i] = System.nanoTime() - start;
+            }
+            long serialTime = System.nanoTime() - serialStart;
+            Arrays.sort(latencies);
+
+            ExecutorService relayThreadPool = Executors.newFixedThreadPool(RELAY_THREADS);
+            CountDownLatch relayed = new CountDownLatch(CONCURRENT_REQUESTS);
+            long concurrentStart = System.nanoTime();
+            for (int i = 0; i < CONCURRENT_REQUESTS; i++) {
+                relayThreadPool.execute(() -> {
+                    relay.messageReceived(request);
+                    relayed.countDown();
+                });
+            }
+            relayed.await();
+            long concurrentTime = System.nanoTime() - concurrentStart;
+            relayThreadPool.shutdown();
+
+            return String.format("%-14s %7.1fus %7.1fus %8.0f req/s %8.0f req/s", link,
+                    latencies[SERIAL_REQUESTS / 2] / 1e3, latencies[SERIAL_REQUESTS * 99 / 100] / 1e3,
+                    SERIAL_REQUESTS / (serialTime / 1e9), CONCURRENT_REQUESTS / (concurrentTime / 1e9));
+        }
+    }
+
+    /**
+     * Connects to the Server, waiting for it to start listening.
+     */
+    private static SocketChannel connect(SocketAddress serverAddress) throws Exception {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return SocketChannel.open(serverAddress);
+            } catch (IOException e) {
+                if (attempt == 100) {
+                    throw e;
+                }
+                Thread.sleep(50);
+            }
+        }
+    }
+}
@@ -0,0 +1,396 @@
+package chatroom;
+
+import models.SenderMessageTuple;
+import models.User;
+import models.messages.CausalChatMessage;
+import models.messages.ChatMessage;
+import models.messages.NakMessage;
+import models.messages.OrderStateMessage;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Delivers chat messages in causal order.
+ * Every sender numbers its messages and lists how many messages of every other sender it had delivered
+ * when sending each one. A message is delivered once it is the next one of its sender and all of its
+ * dependencies have been delivered, so it waits only for the messages it could have been a reply to.
+ * Held back messages are kept per sender in sequence order, so only the first one of each sender is
+ * ever checked.
+ *
+ * A client that joins a room holds back what it receives until the host sent how many messages of every
+ * sender it had delivered. Messages up to those counts were sent before this client joined and are dropped.
+ * A member may also have sent messages before it knew of this client, which never arrive. So once a message
+ * has waited for a member not heard from since joining for JOIN_GAP_TIMEOUT, the missing messages of that
+ * member are skipped. Members that joined afterwards start at zero.
+ */
+class CausalOrdering implements MessageOrdering {
+
+    /**
+     * Time a message waits for a member not heard from since joining before its missing messages are skipped,
+     * in milliseconds.
+     */
+    static final long JOIN_GAP_TIMEOUT = 1000;
+
+    /**
+     * Number of delivered messages of each sender.
+     */
+    private final Map<InetSocketAddress, Integer> deliveredMessages = new HashMap<>();
+
+    /**
+     * Held back messages of each sender, in sequence order.
+     */
+    private final Map<InetSocketAddress, PriorityQueue<SenderMessageTuple>> heldMessages = new HashMap<>();
+
+    /**
+     * False from joining a room until the host sent how many messages of every sender it delivered.
+     */
+    private boolean synced = true;
+
+    /**
+     * Messages received before that, in arrival order.
+     */
+    private final List<SenderMessageTuple> unsyncedMessages = new ArrayList<>();
+
+    /**
+     * Members of the room that nothing was delivered from since this client joined.
+     */
+    private final Set<InetSocketAddress> unheardSenders = new HashSet<>();
+
+    /**
+     * Whether skipping the messages missed from unheard members is scheduled.
+     */
+    private boolean joinGapCheckScheduled;
+
+    /**
+     * Number of rooms joined, so a scheduled skip for a previous room is ignored.
+     */
+    private int joins;
+
+    /**
+     * Socket address of this client, as used in sequence numbers.
+     */
+    private InetSocketAddress selfAddress;
+
+    /**
+     * Number of messages this client has sent.
+     */
+    private int sentMessages;
+
+    /**
+     * Receives delivered messages.
+     */
+    private final BiConsumer<User, ChatMessage> delivery;
+
+    /**
+     * Sends messages to the room.
+     */
+    private final RoomLink room;
+
+    /**
+     * Runs the join gap timeouts.
+     */
+    private final ClientEventLoop eventLoop;
+
+    private final HoldbackMetrics metrics = new HoldbackMetrics();
+
+    /**
+     * Creates a causal ordering.
+     *
+     * @param delivery Receives delivered messages with their sender.
+     * @param room Sends messages to the room.
+     * @param eventLoop Event loop of the Client.
+     */
+    CausalOrdering(BiConsumer<User, ChatMessage> delivery, RoomLink room, ClientEventLoop eventLoop) {
+        this.delivery = delivery;
+        this.room = room;
+        this.eventLoop = eventLoop;
+    }
+
+    /**
+     * Numbers the message and attaches the number of delivered messages of every sender.
+     */
+    @Override
+    public ChatMessage stamp(InetSocketAddress senderSocketAddress, String text) {
+        selfAddress = senderSocketAddress;
+        Map<InetSocketAddress, Integer> dependencies = new LinkedHashMap<>();
+        for (Map.Entry<InetSocketAddress, Integer> delivered : deliveredMessages.entrySet()) {
+            if (delivered.getValue() > 0) {
+                dependencies.put(delivered.getKey(), delivered.getValue());
+            }
+        }
+        return new CausalChatMessage(senderSocketAddress, ++sentMessages, dependencies, text);
+    }
+
+    @Override
+    public void receive(User sender, ChatMessage message) {
+        if (!(message instanceof CausalChatMessage)) {
+            // Not causally ordered by its sender, so there is nothing to wait for.
+            metrics.messageDelivered();
+            delivery.accept(sender, message);
+            return;
+        }
+        CausalChatMessage causalMessage = (CausalChatMessage) message;
+        if (!synced) {
+            // Which messages were sent before this client joined is not known yet.
+            unsyncedMessages.add(new SenderMessageTuple(sender, causalMessage));
+            return;
+        }
+        InetSocketAddress senderAddress = causalMessage.getSenderSocketAddress();
+
+        // A sender the host did not know of has not sent anything this client could have missed.
+        deliveredMessages.putIfAbsent(senderAddress, causalMessage.getSequence() - 1);
+        if (causalMessage.getSequence() <= deliveredMessages.get(senderAddress)) {
+            // Delivered already, sent before this client joined, or skipped.
+            return;
+        }
+
+        if (isDeliverable(causalMessage)) {
+            deliver(sender, causalMessage);
+            metrics.messageDelivered();
+            deliverReady();
+        } else {
+            heldMessages.computeIfAbsent(senderAddress, address -> new PriorityQueue<>())
+                    .offer(new SenderMessageTuple(sender, causalMessage));
+            metrics.messageHeld();
+            if (!unheardSenders.isEmpty() && !joinGapCheckScheduled) {
+                joinGapCheckScheduled = true;
+                int join = joins;
+                eventLoop.schedule(() -> skipJoinGaps(join), JOIN_GAP_TIMEOUT, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Delivers held back messages until the first one of every sender is still waiting.
+     */
+    @Override
+    public void deliverReady() {
+        boolean delivered = true;
+        while (delivered) {
+            delivered = false;
+            Iterator<PriorityQueue<SenderMessageTuple>> senderQueues = heldMessages.values().iterator();
+            while (senderQueues.hasNext()) {
+                PriorityQueue<SenderMessageTuple> senderQueue = senderQueues.next();
+                while (!senderQueue.isEmpty() && isDeliverable((CausalChatMessage) senderQueue.peek().message)) {
+                    SenderMessageTuple released = senderQueue.poll();
+                    deliver(released.sender, (CausalChatMessage) released.message);
+                    metrics.messageReleased(released.queuedTime);
+                    delivered = true;
+                }
+                if (senderQueue.isEmpty()) {
+                    senderQueues.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Forgets the previous room. Messages held back for it are discarded.
+     * Messages of the new room are held back until the host sent how many messages of every sender it delivered.
+     */
+    @Override
+    public void joinRoom() {
+        for (PriorityQueue<SenderMessageTuple> senderQueue : heldMessages.values()) {
+            for (int i = senderQueue.size(); i > 0; i--) {
+                metrics.messageDiscarded();
+            }
+        }
+        heldMessages.clear();
+        deliveredMessages.clear();
+        unsyncedMessages.clear();
+        unheardSenders.clear();
+        joinGapCheckScheduled = false;
+        joins++;
+        sentMessages = 0;
+        synced = false;
+    }
+
+    /**
+     * Returns how many messages of every sender this client delivered, and how many it sent itself.
+     */
+    @Override
+    public OrderStateMessage getState() {
+        InetSocketAddress self = room.getSelf().getSocketAddress();
+        Map<InetSocketAddress, Integer> delivered = new LinkedHashMap<>(deliveredMessages);
+        delivered.put(self, sentMessages);
+        return new OrderStateMessage(self, 0, 0, delivered);
+    }
+
+    /**
+     * Starts counting the messages of every sender from what the host delivered,
+     * then handles the messages received in the meantime.
+     */
+    @Override
+    public void sync(OrderStateMessage message) {
+        if (synced) {
+            return;
+        }
+        InetSocketAddress self = room.getSelf().getSocketAddress();
+        for (Map.Entry<InetSocketAddress, Integer> delivered : message.getDeliveredMessages().entrySet()) {
+            if (!delivered.getKey().equals(self)) {
+                deliveredMessages.merge(delivered.getKey(), delivered.getValue(), Math::max);
+                unheardSenders.add(delivered.getKey());
+            }
+        }
+        synced = true;
+        List<SenderMessageTuple> received = new ArrayList<>(unsyncedMessages);
+        unsyncedMessages.clear();
+        for (SenderMessageTuple unsynced : received) {
+            receive(unsynced.sender, unsynced.message);
+        }
+    }
+
+    /**
+     * Sends the message straight to every member.
+     */
+    @Override
+    public void send(ChatMessage message) {
+        room.sendToAll(message);
+    }
+
+    @Override
+    public void repairRequested(User sender, NakMessage message) {
+        // Every member sends its own messages, so there is no host to repair from.
+    }
+
+    @Override
+    public int getEpoch() {
+        return 0;
+    }
+
+    /**
+     * A host that left before sending how many messages it delivered never will,
+     * so the messages received since joining are handled without knowing what was missed.
+     */
+    @Override
+    public void hostChanged(int epoch) {
+        if (!synced) {
+            sync(new OrderStateMessage(room.getSelf().getSocketAddress(), 0, 0, Map.of()));
+        }
+    }
+
+    @Override
+    public void memberJoined(User user) {
+        deliveredMessages.putIfAbsent(user.getSocketAddress(), 0);
+    }
+
+    /**
+     * Messages of the user that never arrived will not arrive any more, so they are skipped.
+     * Its held back messages are delivered in sequence order, then messages waiting for the rest are released.
+     */
+    @Override
+    public void memberLeft(User user) {
+        InetSocketAddress leftAddress = user.getSocketAddress();
+        if (!deliveredMessages.containsKey(leftAddress)) {
+            return;
+        }
+        unheardSenders.remove(leftAddress);
+        do {
+            deliverReady();
+        } while (skipMissing(leftAddress));
+        if (!heldMessages.containsKey(leftAddress) && getHighestDependency(leftAddress) <= deliveredMessages.get(leftAddress)) {
+            // Nothing waits for it, so later messages need not list it.
+            deliveredMessages.remove(leftAddress);
+        }
+    }
+
+    @Override
+    public HoldbackMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns whether a message is the next one of its sender and all of its dependencies were delivered.
+     */
+    private boolean isDeliverable(CausalChatMessage message) {
+        if (message.getSequence() != deliveredMessages.get(message.getSenderSocketAddress()) + 1) {
+            return false;
+        }
+        for (Map.Entry<InetSocketAddress, Integer> dependency : message.getDependencies().entrySet()) {
+            if (dependency.getKey().equals(selfAddress)) {
+                continue;
+            }
+            Integer delivered = deliveredMessages.get(dependency.getKey());
+            if (delivered != null && delivered < dependency.getValue()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Marks a message as delivered and hands it over.
+     */
+    private void deliver(User sender, CausalChatMessage message) {
+        InetSocketAddress senderAddress = message.getSenderSocketAddress();
+        deliveredMessages.merge(senderAddress, message.getSequence(), Math::max);
+        unheardSenders.remove(senderAddress);
+        delivery.accept(sender, message);
+    }
+
+    /**
+     * Skips the messages of members not heard from since joining that held back messages still wait for.
+     * They were sent before those members knew of this client, so they never arrive.
+     *
+     * @param join The number of rooms joined when the skip was scheduled.
+     */
+    private void skipJoinGaps(int join) {
+        if (join != joins) {
+            return;
+        }
+        joinGapCheckScheduled = false;
+        boolean skipped = true;
+        while (skipped) {
+            deliverReady();
+            skipped = false;
+            for (InetSocketAddress unheardSender : unheardSenders) {
+                skipped |= skipMissing(unheardSender);
+            }
+        }
+    }
+
+    /**
+     * Skips the missing messages of a sender up to its first held back message,
+     * or up to the highest number of its messages a held back message depends on.
+     *
+     * @return True if messages were skipped.
+     */
+    private boolean skipMissing(InetSocketAddress senderAddress) {
+        PriorityQueue<SenderMessageTuple> senderQueue = heldMessages.get(senderAddress);
+        int skipTo = senderQueue != null
+                ? senderQueue.peek().message.getTimestamp() - 1
+                : getHighestDependency(senderAddress);
+        if (skipTo <= deliveredMessages.get(senderAddress)) {
+            return false;
+        }
+        deliveredMessages.put(senderAddress, skipTo);
+        return true;
+    }
+
+    /**
+     * Returns the highest number of messages of a sender that any held back message depends on.
+     */
+    private int getHighestDependency(InetSocketAddress senderAddress) {
+        int highest = 0;
+        for (PriorityQueue<SenderMessageTuple> senderQueue : heldMessages.values()) {
+            for (SenderMessageTuple held : senderQueue) {
+                Integer dependency = ((CausalChatMessage) held.message).getDependencies().get(senderAddress);
+                if (dependency != null) {
+                    highest = Math.max(highest, dependency);
+                }
+            }
+        }
+        return highest;
+    }
+}
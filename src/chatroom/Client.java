@@ -1,21 +1,29 @@
 package chatroom;
 
+import models.RoomTopology;
 import models.User;
 import models.messages.*;
-import models.SenderMessageTuple;
+import sockets.BlockingSocketTransport;
+import sockets.MulticastGroup;
+import sockets.SelectorSocketTransport;
+import sockets.SocketAcceptListener;
 import sockets.SocketHandler;
 import sockets.SocketHandlerListener;
+import sockets.SocketTransport;
 import encryption.*;
+import helpers.BufferPool;
 
 import java.io.IOException;
 import java.net.*;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.PriorityQueue;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.security.GeneralSecurityException;
 
 import java.util.Base64;
@@ -25,26 +33,41 @@ import java.util.Base64;
  * allow the user to create or connect to rooms and communicate
  * with the server and other clients.
  *
+ * All state changes run on the thread running the Client, in the order they arrived.
+ * SocketHandler threads only decode received messages and publish them to the ClientEventLoop,
+ * and sends requested from other threads are handed to the loop the same way.
+ *
  * @author Clinton Cabiles
  * @author Jan Clarin
  * @author Riley Lahd
  */
-public class Client implements Runnable, SocketHandlerListener {
+public final class Client implements Runnable, SocketHandlerListener, SocketAcceptListener {
     
     /**
-     * Delay that server socket blocks for before messages can dequeue
+     * Enable/disable debug mode
      */
-    private final static int SERVER_SOCKET_TIMEOUT = 150;
+    private final static boolean DEBUG = false;
 
     /**
-     * Enable/disable debug mode
+     * Time departures noticed by this client are collected before they are reported together, in milliseconds.
      */
-    private final static boolean DEBUG = false;
+    static final long DEATH_REPORT_WINDOW = 50;
+
+    /**
+     * Extra wait before reporting departures per rank of this client, in milliseconds. The highest ranked member
+     * that noticed a departure reports it first, and the notice reaches the others before they would.
+     */
+    static final long DEATH_REPORT_STAGGER = 25;
+
+    /**
+     * Number of departed members remembered to recognize notices about them.
+     */
+    static final int DEPARTED_MEMBERS = 1024;
 
     /**
-     * Maps SocketHandlers to the User of the connection.
+     * Open connections, indexed by SocketHandler, by remote address and by the User of room peers.
      */
-    private final Map<SocketHandler, User> socketHandlerUserMap = new HashMap<>();
+    private final PeerRegistry peerRegistry;
 
     /**
      * Listener for chat room events.
@@ -52,9 +75,14 @@ public class Client implements Runnable, SocketHandlerListener {
     private final ClientListener listener;
 
     /**
-     * Thread pool for SocketHandlers.
+     * Event loop running every state change of this Client.
      */
-    private ExecutorService socketHandlerThreadPool;
+    private final ClientEventLoop eventLoop;
+
+    /**
+     * Transport opening and accepting connections.
+     */
+    private final SocketTransport socketTransport;
 
     /**
      * User associated with this client.
@@ -72,14 +100,94 @@ public class Client implements Runnable, SocketHandlerListener {
     private boolean continueRunning = true;
 
     /**
-     * Lamport timestamp for message ordering
+     * Order in which received chat messages are delivered, holding back those that arrived early
+     */
+    private final MessageOrdering messageOrdering;
+
+    /**
+     * How members of the room are connected
+     */
+    private final RoomTopology roomTopology;
+
+    /**
+     * Spreads room messages over the neighbors of this client in a gossip or tree room
+     */
+    private final GossipBroadcast gossipBroadcast;
+
+    /**
+     * Largest number of children of a member in a tree room
      */
-    private int timestamp = 0;
+    private final int treeDegree;
 
     /**
-     * Priority queue for later-timestamped messages
+     * Multicasts chat messages to the room on the local network, unused until a group is joined.
      */
-    private PriorityQueue<SenderMessageTuple> queuedMessages = new PriorityQueue<>();
+    private final MulticastLane multicastLane;
+
+    /**
+     * Whether to join the multicast group of a room.
+     */
+    private final boolean multicast;
+
+    /**
+     * Name of the network interface to join multicast groups on, or null for the one holding the client address.
+     */
+    private final String multicastInterface;
+
+    /**
+     * Time between heartbeats sent to every peer in milliseconds, or 0 if none are sent.
+     */
+    private final int heartbeatInterval;
+
+    /**
+     * Suspects peers whose heartbeats stopped arriving.
+     */
+    private final PhiAccrualFailureDetector failureDetector;
+
+    /**
+     * The System.nanoTime() at which heartbeats were last sent.
+     */
+    private long lastHeartbeatTime;
+
+    /**
+     * True once this client said bye to the room, after which peers close their connections to it.
+     */
+    private boolean leavingRoom = false;
+
+    /**
+     * Socket addresses of members that recently left or died, oldest first.
+     */
+    private final Set<InetSocketAddress> departedMembers = Collections.newSetFromMap(new LinkedHashMap<InetSocketAddress, Boolean>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<InetSocketAddress, Boolean> eldest) {
+            return size() > DEPARTED_MEMBERS;
+        }
+    });
+
+    /**
+     * Number of members this client knows to have left the room since it joined.
+     */
+    private int membershipVersion;
+
+    /**
+     * Departures noticed by this client that nobody reported to the room yet.
+     */
+    private final Set<User> unreportedDeaths = new LinkedHashSet<>();
+
+    /**
+     * True while a report of the unreported departures is scheduled.
+     */
+    private boolean deathReportScheduled = false;
+
+    /**
+     * Opens connections to members without blocking the event loop.
+     */
+    private final PeerConnector peerConnector;
+
+    /**
+     * Members this client connects to while joining a room, or null once the room is ready.
+     */
+    private List<User> joinPeers;
 
     /**
      * Room member ranking order. Users added as their information is received. Used for leader election.
@@ -121,10 +229,90 @@ public class Client implements Runnable, SocketHandlerListener {
      *
      * @param clientUser Client user information.
      * @param listener   Listener to notify when certain events occur.
+     * @throws IOException Thrown when the transport cannot be created.
+     */
+    public Client(final User clientUser, final ClientListener listener) throws IOException {
+        this(clientUser, listener, new ClientConfiguration());
+    }
+
+    /**
+     * Creates a new Client with the given models and startup options.
+     *
+     * @param clientUser Client user information.
+     * @param listener   Listener to notify when certain events occur.
+     * @param configuration Startup options, e.g. the transport to use.
+     * @throws IOException Thrown when the transport cannot be created.
      */
-    public Client(final User clientUser, final ClientListener listener) {
+    public Client(final User clientUser, final ClientListener listener, final ClientConfiguration configuration) throws IOException {
         this.clientUser = clientUser;
         this.listener = listener;
+        this.peerRegistry = new PeerRegistry(() -> this.clientUser.getSocketAddress());
+        this.eventLoop = new ClientEventLoop(ClientEventLoop.DEFAULT_CAPACITY, this::handleMessage);
+
+        RoomLink roomLink = new RoomLink() {
+            @Override
+            public void sendToAll(Message message) {
+                sendMessageToAll(message);
+            }
+
+            @Override
+            public void sendToHost(Message message) {
+                // During an election the host is gone, what is not sent is sent again once the new host is known.
+                if (hostClientUser != null && !electionMode) {
+                    sendMessage(message, hostClientUser.getSocketAddress(), true);
+                }
+            }
+
+            @Override
+            public void sendTo(InetSocketAddress recipientSocketAddress, Message message) {
+                sendMessage(message, recipientSocketAddress, true);
+            }
+
+            @Override
+            public boolean isHost() {
+                return isHost;
+            }
+
+            @Override
+            public User getSelf() {
+                return Client.this.clientUser;
+            }
+        };
+        switch (configuration.getOrderingMode()) {
+            case CAUSAL:
+                this.messageOrdering = new CausalOrdering(listener::messageReceived, roomLink, eventLoop);
+                break;
+            case SEQUENCED:
+                this.messageOrdering = new SequencedOrdering(listener::messageReceived, roomLink);
+                break;
+            default:
+                this.messageOrdering = new LamportOrdering(listener::messageReceived, roomLink);
+                break;
+        }
+
+        this.roomTopology = configuration.getRoomTopology();
+        this.treeDegree = configuration.getTreeDegree();
+        this.gossipBroadcast = new GossipBroadcast(() -> this.clientUser.getSocketAddress(), this::sendToNeighbor, eventLoop);
+        this.multicast = configuration.isMulticast();
+        this.multicastInterface = configuration.getMulticastInterface();
+        this.heartbeatInterval = configuration.getHeartbeatInterval();
+        this.failureDetector = new PhiAccrualFailureDetector(configuration.getPhiThreshold(),
+                TimeUnit.MILLISECONDS.toNanos(heartbeatInterval));
+        this.multicastLane = new MulticastLane(() -> this.clientUser.getSocketAddress(), this::sendToMember,
+                this::handleMulticastMessage, eventLoop);
+
+        switch (configuration.getTransportMode()) {
+            case NIO:
+                this.socketTransport = new SelectorSocketTransport(configuration.getSelectorThreads(),
+                        configuration.getOutboundQueueCapacity(), configuration.getSlowConsumerPolicy());
+                break;
+            default:
+                this.socketTransport = new BlockingSocketTransport(configuration.getExecutionMode().newExecutor(),
+                        configuration.getOutboundQueueCapacity(), configuration.getSlowConsumerPolicy());
+                break;
+        }
+        this.peerConnector = new PeerConnector(configuration.getExecutionMode().newExecutor(),
+                (socketAddress, connectTimeout) -> openSocketConnection(socketAddress, false, connectTimeout), eventLoop);
 
         // Add the user to the ranking list. This gets updated when connected to a room.
         this.userRankingOrderList.add(clientUser);
@@ -136,7 +324,7 @@ public class Client implements Runnable, SocketHandlerListener {
      * @return List of known Users.
      */
     public List<User> getKnownUsersList() {
-        return new ArrayList<>(socketHandlerUserMap.values());
+        return peerRegistry.getUsers();
     }
 
     /**
@@ -158,45 +346,195 @@ public class Client implements Runnable, SocketHandlerListener {
     }
 
     /**
-     * Starts listening for incoming connections. Creates a new SocketHandler for every new connection.
+     * Starts listening for incoming connections through the transport, then runs the event loop.
+     * Held back messages are delivered as soon as the messages they wait for are, so nothing polls.
      */
     @Override
     public void run() {
-        socketHandlerThreadPool = Executors.newCachedThreadPool();
-
+        eventLoop.bindToCurrentThread();
         try {
-            // Server socket for incoming connections.
-            ServerSocket serverSocket = new ServerSocket(clientUser.getPort());
-            serverSocket.setSoTimeout(SERVER_SOCKET_TIMEOUT);
+            socketTransport.listen(new InetSocketAddress(clientUser.getPort()), this);
+            if (heartbeatInterval > 0) {
+                lastHeartbeatTime = System.nanoTime();
+                eventLoop.schedule(this::sendHeartbeats, heartbeatInterval, TimeUnit.MILLISECONDS);
+            }
 
             while (continueRunning) {
-                try{
-                    Socket socket = serverSocket.accept();
-                    SocketHandler socketHandler = new SocketHandler(socket, this, encryptionEngine);
-                    socketHandlerThreadPool.execute(socketHandler);
-                }catch (SocketTimeoutException ste){
-                    //simply means no connection came in that time.
-                    // Allow messages to dequeue then resume blocking
+                if (!eventLoop.runPendingEvents()) {
+                    eventLoop.awaitEvents();
                 }
-                dequeueMessages();
             }
-
-            socketHandlerThreadPool.shutdown();
-            serverSocket.close();
         } catch (IOException e) {
-            // TODO Auto-generated catch block
             e.printStackTrace();
+        } finally {
+            multicastLane.leaveGroup();
+            peerConnector.shutdown();
+            socketTransport.shutdown();
         }
     }
 
+    /**
+     * Prepares a SocketHandler for an incoming connection before it starts reading.
+     *
+     * @param socketHandler The SocketHandler of the accepted connection.
+     */
+    @Override
+    public void socketAccepted(SocketHandler socketHandler) {
+        socketHandler.setEncryptionEngine(encryptionEngine);
+        socketHandler.registerListener(this);
+        peerRegistry.addConnection(socketHandler);
+    }
+
+    /**
+     * Runs a task on the event loop thread, after the events published before it.
+     * Messages the task makes deliverable, e.g. by stamping, are delivered right after it.
+     *
+     * @param task The task to run.
+     */
+    public void execute(Runnable task) {
+        eventLoop.execute(() -> {
+            task.run();
+            messageOrdering.deliverReady();
+        });
+    }
+
+    /**
+     * Stamps a chat message and sends it to the room as the message ordering requires,
+     * e.g. straight to all known recipients or through the host.
+     * Stamping happens on the event loop thread, so it cannot race with received messages.
+     *
+     * @param text The text of the chat message.
+     */
+    public void sendChatMessage(String text) {
+        execute(() -> sendChatMessage(createChatMessage(text)));
+    }
+
+    /**
+     * Sends a chat message created by createChatMessage to the room as the message ordering requires.
+     * Only call this on the event loop thread, e.g. from a task passed to execute.
+     *
+     * @param message The stamped chat message.
+     */
+    public void sendChatMessage(ChatMessage message) {
+        messageOrdering.send(message);
+    }
+
+    /**
+     * Creates a chat message stamped for the message ordering of the room.
+     * NOTE: This message must be sent ASAP after it is stamped. Only call this on the event loop thread,
+     * e.g. from a task passed to execute.
+     *
+     * @param text The text of the chat message.
+     * @return The stamped chat message.
+     */
+    public ChatMessage createChatMessage(String text) {
+        return messageOrdering.stamp(clientUser.getSocketAddress(), text);
+    }
+
+    /**
+     * Returns how many received chat messages were held back and for how long.
+     * Only call this on the event loop thread, e.g. from a task passed to execute.
+     *
+     * @return The holdback metrics.
+     */
+    public HoldbackMetrics getHoldbackMetrics() {
+        return messageOrdering.getMetrics();
+    }
+
     /**
      * Sends a message to all known recipients through their SocketHandlers.
+     * The message is encrypted once and the same immutable EncryptedMessage is queued on every SocketHandler,
+     * so the cost of encryption does not grow with the size of the room.
+     * Recipients are a snapshot of the room, so peers that die while sending are removed safely.
      *
-     * @param message The message as a String.
+     * In a star room, messages for the room are sealed into a BroadcastMessage instead. Members send it
+     * to the host only, which forwards it to the rest of the room. In gossip and tree rooms, they are sealed
+     * into a GossipMessage spread by the GossipBroadcast.
+     *
+     * Once the multicast group of the room is joined, chat messages are multicast to it instead, whatever the topology.
+     *
+     * @param message The message to send.
      */
     public void sendMessageToAll(Message message) {
-        for (SocketHandler recipientSocketHandler : socketHandlerUserMap.keySet()) {
-            sendMessage(message, recipientSocketHandler, true);
+        if (!eventLoop.inLoopThread()) {
+            eventLoop.execute(() -> sendMessageToAll(message));
+            return;
+        }
+        EncryptedMessage encryptedMessage = encryptMessage(message);
+        if (message instanceof ChatMessage && multicastLane.send(encryptedMessage.getCiphertext())) {
+            return;
+        }
+        if (message instanceof ByeMessage) {
+            // Leaving the room, so stop hearing it too.
+            multicastLane.leaveGroup();
+            leavingRoom = true;
+        }
+        if (roomTopology.isGossip() && !(message instanceof ByeMessage)) {
+            gossipBroadcast.broadcast(encryptedMessage.getCiphertext());
+            return;
+        }
+        if (roomTopology == RoomTopology.STAR && !(message instanceof ByeMessage)) {
+            BroadcastMessage broadcastMessage = new BroadcastMessage(clientUser.getSocketAddress(), encryptedMessage.getCiphertext());
+            if (isHost) {
+                forwardMessage(broadcastMessage, null);
+            } else if (hostClientUser != null) {
+                SocketHandler hostSocketHandler = peerRegistry.find(hostClientUser.getSocketAddress());
+                if (hostSocketHandler != null) {
+                    sendMessage(broadcastMessage, hostSocketHandler, false);
+                }
+            }
+            return;
+        }
+        for (SocketHandler recipientSocketHandler : peerRegistry.getPeers()) {
+            sendMessage(encryptedMessage, recipientSocketHandler, false);
+        }
+    }
+
+    /**
+     * Sends a message to a neighbor in a gossip room. Sealed gossip messages are sent as is, the rest is encrypted.
+     * Nothing is sent to a user that is not a peer.
+     *
+     * @param neighborSocketAddress The socket address of the neighbor.
+     * @param message The message to send.
+     */
+    private void sendToNeighbor(InetSocketAddress neighborSocketAddress, Message message) {
+        SocketHandler neighborSocketHandler = peerRegistry.find(neighborSocketAddress);
+        if (neighborSocketHandler != null && peerRegistry.getUser(neighborSocketHandler) != null) {
+            sendMessage(message, neighborSocketHandler, !(message instanceof BroadcastMessage));
+        }
+    }
+
+    /**
+     * Sends a message to a member of the room over a connection, opening one if there is none.
+     * Sealed messages are sent as is, the rest is encrypted.
+     *
+     * @param memberSocketAddress The socket address of the member.
+     * @param message The message to send.
+     */
+    private void sendToMember(InetSocketAddress memberSocketAddress, Message message) {
+        SocketHandler memberSocketHandler = findConnection(memberSocketAddress);
+        if (memberSocketHandler == null) {
+            try {
+                memberSocketHandler = openSocketConnection(memberSocketAddress, false);
+            } catch (IOException e) {
+                e.printStackTrace();
+                return;
+            }
+        }
+        sendMessage(message, memberSocketHandler, !(message instanceof BroadcastMessage));
+    }
+
+    /**
+     * Forwards a BroadcastMessage as is to every peer except the one it came from.
+     *
+     * @param message The message to forward.
+     * @param senderSocketHandler The SocketHandler the message came from, or null if written by this client.
+     */
+    private void forwardMessage(BroadcastMessage message, SocketHandler senderSocketHandler) {
+        for (SocketHandler recipientSocketHandler : peerRegistry.getPeers()) {
+            if (recipientSocketHandler != senderSocketHandler) {
+                sendMessage(message, recipientSocketHandler, false);
+            }
         }
     }
 
@@ -208,18 +546,43 @@ public class Client implements Runnable, SocketHandlerListener {
      * @param encrypt True if the message should be encrypted first
      */
     public void sendMessage(Message message, SocketHandler recipientSocketHandler, boolean encrypt) {
+        if (!eventLoop.inLoopThread()) {
+            Message queuedMessage = message;
+            eventLoop.execute(() -> sendMessage(queuedMessage, recipientSocketHandler, encrypt));
+            return;
+        }
         if(encrypt){message = encryptMessage(message);}
         try{
-            recipientSocketHandler.sendMessage(message);
+            // The event loop only waits for writers of their own. A selector thread that writes may be waiting for the loop.
+            recipientSocketHandler.sendMessage(message, !recipientSocketHandler.writesOnReaderThread());
         } catch (IOException ioe) {
-            System.out.println("User "+socketHandlerUserMap.get(recipientSocketHandler).toString()+" is dead!");
+            User recipient = peerRegistry.getUser(recipientSocketHandler);
+            if (recipient != null) {
+                System.out.println("User "+recipient.toString()+" is dead!");
+            }
             handleDeadUser(recipientSocketHandler, true);
         }
     }
 
+    /**
+     * Finds the connection to send to a socket address through.
+     * A closed connection to a room peer is returned, so sending through it fails and the peer is handled
+     * as dead like any other; other closed connections are forgotten, so a new one is opened instead.
+     * @param socketAddress The socket address of a room member or connection
+     * @return The SocketHandler, or null if a new connection is needed
+     */
+    private SocketHandler findConnection(InetSocketAddress socketAddress) {
+        SocketHandler socketHandler = peerRegistry.find(socketAddress);
+        if (socketHandler != null && socketHandler.isConnectionClosed() && peerRegistry.getUser(socketHandler) == null) {
+            peerRegistry.remove(socketHandler);
+            return null;
+        }
+        return socketHandler;
+    }
+
     /**
      * Sends a message to the given socket address.
-     * Tries to find an existing socket handler in the socketHandlerUserMap.
+     * Tries to find an existing socket handler in the peerRegistry.
      * If it does not find one, open a new socket connection.
      *
      * @param message The message to send.
@@ -227,17 +590,13 @@ public class Client implements Runnable, SocketHandlerListener {
      * @param encrypt True if this message should be encrypted (is to a client)
      */
     public void sendMessage(Message message, InetSocketAddress recipientSocketAddress, boolean encrypt) {
+        if (!eventLoop.inLoopThread()) {
+            eventLoop.execute(() -> sendMessage(message, recipientSocketAddress, encrypt));
+            return;
+        }
         try {
-            SocketHandler recipientSocketHandler = null;
-
-            // Find matching socket handler with the recipientSocketAddress.
-            for (SocketHandler socketHandler : socketHandlerUserMap.keySet()) {
-                // Compare IP address and ports.
-                if (socketHandler.getRemoteSocketAddress().equals(recipientSocketAddress)) {
-                    recipientSocketHandler = socketHandler;
-                    break;
-                }
-            }
+            // Find the socket handler of the user or connection at the recipientSocketAddress.
+            SocketHandler recipientSocketHandler = findConnection(recipientSocketAddress);
 
             // If there was no match, open a new socket handler connection.
             if (recipientSocketHandler == null) {
@@ -259,21 +618,48 @@ public class Client implements Runnable, SocketHandlerListener {
      */
     @Override
     public void messageSent(SocketHandler recipientSocketHandler, Message message) {
-        User recipient = socketHandlerUserMap.get(recipientSocketHandler);
+        User recipient = peerRegistry.getUser(recipientSocketHandler);
         // Notify listener that a message was sent.
         listener.messageSent(recipient, message);
     }
 
     /**
-     * Responds to different types of received messages and notifies listeners about the message.
+     * Hands a received message to the event loop. Called on the thread of the SocketHandler.
      *
      * @param senderSocketHandler The SocketHandler that the message was received from.
      * @param message The received message.
      */
     @Override
     public void messageReceived(SocketHandler senderSocketHandler, Message message) {
+        eventLoop.publish(senderSocketHandler, message);
+    }
+
+    /**
+     * Responds to different types of received messages and notifies listeners about the message.
+     * Runs on the event loop thread.
+     *
+     * @param senderSocketHandler The SocketHandler that the message was received from, or null for the multicast group.
+     * @param message The received message.
+     */
+    private void handleMessage(SocketHandler senderSocketHandler, Message message) {
+        User sender = senderSocketHandler != null ? peerRegistry.getUser(senderSocketHandler) : null;
+        if (sender != null && (message instanceof HeartbeatMessage || failureDetector.isMonitored(sender.getSocketAddress()))) {
+            // Anything a peer sends shows it is alive, but only peers sending heartbeats are monitored.
+            failureDetector.heartbeat(sender.getSocketAddress(), System.nanoTime());
+        }
+        handleMessage(senderSocketHandler, sender, message);
+    }
+
+    /**
+     * Responds to different types of received messages and notifies listeners about the message.
+     * Runs on the event loop thread.
+     *
+     * @param senderSocketHandler The SocketHandler that the message was received from.
+     * @param sender The User that sent the message, which differs from the peer of the SocketHandler for broadcasts.
+     * @param message The received message.
+     */
+    private void handleMessage(SocketHandler senderSocketHandler, User sender, Message message) {
         boolean notify = DEBUG;
-        User sender = socketHandlerUserMap.get(senderSocketHandler);
         if (message instanceof HelloMessage) {
             handleHelloMessage(senderSocketHandler, (HelloMessage) message);
         }
@@ -287,12 +673,15 @@ public class Client implements Runnable, SocketHandlerListener {
             handleYourInfoMessage((YourInfoMessage) message);
         }
         else if (message instanceof ChatMessage) {
-            notify = handleChatMessage((ChatMessage) message, sender);
+            handleChatMessage((ChatMessage) message, sender);
         }
         else if (message instanceof AckMessage) {
             //get token from server
             handleAckMessage((AckMessage) message);
         }
+        else if (message instanceof OrderStateMessage) {
+            messageOrdering.sync((OrderStateMessage) message);
+        }
         else if (message instanceof UserRankOrderMessage) {
             handleUserRankOrderMessage((UserRankOrderMessage) message);
         }
@@ -300,13 +689,41 @@ public class Client implements Runnable, SocketHandlerListener {
             handleDeadUserMessage((DeadUserMessage) message);
         }
         else if (message instanceof ByeMessage) {
-            handleByeMessage((ByeMessage) message, sender);
+            handleByeMessage((ByeMessage) message, senderSocketHandler);
         }
         else if (message instanceof LeaderVoteMessage) {
-            handleLeaderVoteMessage((LeaderVoteMessage) message);
+            handleLeaderVoteMessage((LeaderVoteMessage) message, senderSocketHandler);
         }
         else if (message instanceof LeaderMessage) {
-            handleLeaderMessage((LeaderMessage) message);
+            handleLeaderMessage((LeaderMessage) message, senderSocketHandler);
+        }
+        else if (message instanceof NakMessage) {
+            if (MulticastLane.isMulticastNak((NakMessage) message)) {
+                multicastLane.repairRequested((NakMessage) message);
+            } else {
+                messageOrdering.repairRequested(sender, (NakMessage) message);
+            }
+        }
+        else if (message instanceof MulticastMessage) {
+            multicastLane.receive((MulticastMessage) message);
+        }
+        else if (message instanceof BroadcastMessage) {
+            handleBroadcastMessage((BroadcastMessage) message, senderSocketHandler, sender);
+        }
+        else if (message instanceof IHaveMessage) {
+            gossipBroadcast.iHave((IHaveMessage) message);
+        }
+        else if (message instanceof GraftMessage) {
+            gossipBroadcast.graft((GraftMessage) message);
+        }
+        else if (message instanceof PruneMessage) {
+            gossipBroadcast.prune((PruneMessage) message);
+        }
+        else if (message instanceof DisconnectMessage) {
+            handleDisconnectMessage(senderSocketHandler);
+        }
+        else if (message instanceof HeartbeatMessage) {
+            // Already recorded by the failure detector.
         }
 
         if(notify){
@@ -325,44 +742,56 @@ public class Client implements Runnable, SocketHandlerListener {
      */
     private void handleHelloMessage(SocketHandler senderSocketHandler, HelloMessage message) {
         User sender = message.getSender();
+        if (roomTopology.isGossip() && userRankingOrderList.contains(sender)) {
+            // A member that picked this client as a neighbor, rather than one joining.
+            addPeer(senderSocketHandler, sender);
+            return;
+        }
         if (isHost) {
             // Send new client information to all clients.
             sendMessageToAll(new UserInfoMessage(clientUser, sender));
             // Add sender to ranking order list.
+            departedMembers.remove(sender.getSocketAddress());
             userRankingOrderList.add(sender);
-            // Send hello, user rank order, and ACK with token messages to the new client.
+            messageOrdering.memberJoined(sender);
+            multicastLane.memberJoined(sender.getSocketAddress());
+            // Send hello, order state, user rank order, and ACK with token messages to the new client.
             sendMessage(new HelloMessage(clientUser), senderSocketHandler, true);
+            sendMessage(messageOrdering.getState(), senderSocketHandler, true);
             sendMessage(new UserRankOrderMessage(clientUser.getSocketAddress(), userRankingOrderList), senderSocketHandler, true);
             sendMessage(new AckMessage(clientUser.getSocketAddress(), "TOKEN " + roomToken), senderSocketHandler, true);
+            if (roomTopology.isGossip() && !isNeighborWanted(sender)) {
+                // The new member finds its own neighbors.
+                sendMessage(new DisconnectMessage(clientUser.getSocketAddress()), senderSocketHandler, true);
+                senderSocketHandler.shutdown();
+                peerRegistry.remove(senderSocketHandler);
+                return;
+            }
         } else {
             // The first hello will be from the host. Set it.
             if (hostClientUser == null) {
                 hostClientUser = message.getSender();
             }
         }
-        socketHandlerUserMap.put(senderSocketHandler, sender);
+        addPeer(senderSocketHandler, sender);
     }
 
     /**
      * Handles UserInfoMessages.
      * Ignores the message if it is from this client.
-     * Otherwise, opens a new connection to the user specified in the message.
+     * Otherwise, adds the user specified in the message to the room. The new user connects to the members
+     * it needs, all at once, so members do not connect to it.
      *
      * @param message The message to handle.
      */
     private void handleUserInfoMessage(UserInfoMessage message) {
         User messageUser = message.getUser();
         if (!clientUser.equals(messageUser)) {
-            try {
-                SocketHandler newSocketHandler = openSocketConnection(messageUser.getSocketAddress(), false);
-                socketHandlerUserMap.put(newSocketHandler, messageUser);
-                sendMessage(new HelloMessage(clientUser), newSocketHandler, true);
-
-                // Add user to ranking order list.
-                userRankingOrderList.add(messageUser);
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+            // Add user to ranking order list. It may be a member that left before and came back.
+            departedMembers.remove(messageUser.getSocketAddress());
+            userRankingOrderList.add(messageUser);
+            messageOrdering.memberJoined(messageUser);
+            multicastLane.memberJoined(messageUser.getSocketAddress());
         }
     }
 
@@ -386,7 +815,8 @@ public class Client implements Runnable, SocketHandlerListener {
             listener.listProcessed(true);
         }
         else {
-            String[] splitString = decryptedEntry.replace("/","").split(":");
+            // Entries are InetSocketAddress strings, "hostname/ip:port". Only the IP address is used.
+            String[] splitString = decryptedEntry.substring(decryptedEntry.lastIndexOf('/') + 1).split(":");
             String decryptedInetAddress = splitString[0];
             int decryptedPort = Integer.parseInt(splitString[1]);
             printLog(decryptedInetAddress+":"+decryptedPort);
@@ -407,24 +837,70 @@ public class Client implements Runnable, SocketHandlerListener {
         this.clientUser = message.getUser();
     }
 
+    /**
+     * Handles BroadcastMessages and GossipMessages.
+     *
+     * The host forwards a broadcast to the rest of the room first, while gossip is forwarded by the
+     * GossipBroadcast, which also drops gossip seen before. Then the message inside is handled
+     * as if it was received from the member that wrote it. Messages tied to the connection they arrive on
+     * are never broadcast, so they are ignored.
+     * @param message Incoming message
+     * @param senderSocketHandler The SocketHandler of the sender
+     * @param sender The peer that forwarded the message
+     */
+    private void handleBroadcastMessage(BroadcastMessage message, SocketHandler senderSocketHandler, User sender) {
+        if (message instanceof GossipMessage) {
+            if (!gossipBroadcast.receive(sender != null ? sender.getSocketAddress() : null, (GossipMessage) message)) {
+                return;
+            }
+        } else if (isHost) {
+            forwardMessage(message, senderSocketHandler);
+        }
+        Message roomMessage = message.getMessage();
+        if (roomMessage instanceof HelloMessage || roomMessage instanceof ByeMessage || roomMessage instanceof LeaderVoteMessage) {
+            return;
+        }
+        handleMessage(senderSocketHandler, findRoomMember(message.getSenderSocketAddress()), roomMessage);
+    }
+
+    /**
+     * Handles a multicast message once its turn comes, as if it was received from the member that wrote it.
+     * Only chat messages are multicast.
+     * @param message The delivered multicast message
+     */
+    private void handleMulticastMessage(MulticastMessage message) {
+        if (message.getMessage() instanceof ChatMessage) {
+            handleMessage(null, findRoomMember(message.getSenderSocketAddress()), message.getMessage());
+        }
+    }
+
+    /**
+     * Handles DisconnectMessages.
+     *
+     * The peer stays in the room, only the connection to it is closed. In a gossip room, another neighbor
+     * is found in its place. In a tree room, the peer is no longer a neighbor in its own view of the tree.
+     * @param senderSocketHandler The SocketHandler of the sender
+     */
+    private void handleDisconnectMessage(SocketHandler senderSocketHandler) {
+        senderSocketHandler.shutdown();
+        User neighbor = peerRegistry.remove(senderSocketHandler);
+        if (neighbor != null && roomTopology.isGossip()) {
+            gossipBroadcast.neighborDown(neighbor.getSocketAddress());
+            if (roomTopology == RoomTopology.GOSSIP) {
+                fillGossipView();
+            }
+        }
+    }
+
     /**
      * Handles ChatMessages.
      *
-     * Compares timestamp on incoming message with current time.
-     * If message is equal or lower, send as normal. Else put into queue.
+     * The message ordering delivers the message to the listener, now or once the messages it follows arrive.
      * @param message Incoming message
      * @param sender Sender of message
-     * @return boolean True if the message is allowed to continue, false otherwise
      */
-    private boolean handleChatMessage(ChatMessage message, User sender) {
-        if(timestamp==-1){timestamp = message.getTimestamp();} //If timestamp is non-synced, sync it
-        if(message.getTimestamp() > peekTimestamp()){
-            //Put it into a queue to be taken off when timestamp is higher
-            queuedMessages.offer(new SenderMessageTuple(sender, message));
-            return false;
-        }
-        timestamp(); //increment the timestamp
-        return true;
+    private void handleChatMessage(ChatMessage message, User sender) {
+        messageOrdering.receive(sender, message);
     }
 
     /**
@@ -438,9 +914,14 @@ public class Client implements Runnable, SocketHandlerListener {
     private boolean handleAckMessage(AckMessage message) {
         String[] splitMessage = message.getInformation().split(" ");
         if(splitMessage[0].equals("TOKEN")){
+            String previousRoomToken = roomToken;
             roomToken = splitMessage[1];
             disconnectFromServer();
             printLog("Token updated: "+roomToken);
+            // A new host is sent the token of its room again, the group stays the same.
+            if (multicast && !roomToken.equals(previousRoomToken)) {
+                joinMulticastGroup();
+            }
         }
         return DEBUG;
     }
@@ -452,62 +933,166 @@ public class Client implements Runnable, SocketHandlerListener {
      */
     private void handleUserRankOrderMessage(UserRankOrderMessage message) {
         userRankingOrderList = message.getUserRankOrderList();
+        // Sent when joining, so this is the first time the members are known.
+        if (roomTopology == RoomTopology.MESH) {
+            for (User member : userRankingOrderList) {
+                if (!member.equals(clientUser) && !isPeer(member)) {
+                    connectMember(member);
+                }
+            }
+        }
+        updateNeighbors();
+
+        joinPeers = new ArrayList<>();
+        for (User member : userRankingOrderList) {
+            if (isPeer(member) || peerConnector.isConnecting(member.getSocketAddress())) {
+                joinPeers.add(member);
+            }
+        }
+        checkRoomReady();
     }
 
     /*
      * Handles DeadUserMessage.
+     * Notices are idempotent: members already known to have left are skipped, and a notice that is not ahead of
+     * the membership version of this client and names no one new is a duplicate. Notices are never passed on,
+     * since they travel the way all room messages do.
      *
      * @param message Incoming message
      * @return boolean True if the message is allowed to continue, false otherwise
      */
     private boolean handleDeadUserMessage(DeadUserMessage message) {
-        handleDeadUser(message.getDeadUser().getSocketAddress(), false);
+        // Reported by someone else, so this client does not have to.
+        unreportedDeaths.removeAll(message.getDeadUsers());
+        if (message.getMembershipVersion() <= membershipVersion && isDeparted(message.getDeadUsers())) {
+            return DEBUG;
+        }
+        for (User deadUser : message.getDeadUsers()) {
+            if (!deadUser.equals(clientUser) && !departedMembers.contains(deadUser.getSocketAddress())) {
+                handleDeadUser(deadUser.getSocketAddress(), false);
+            }
+        }
         return DEBUG;
     }
 
+    /**
+     * Returns whether all the given users are known to have left the room.
+     * @param users The users
+     * @return boolean True if every user departed
+     */
+    private boolean isDeparted(List<User> users) {
+        for (User user : users) {
+            if (!departedMembers.contains(user.getSocketAddress())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Handles ByeMessage.
      *
      * @param message Incoming message
+     * @param senderSocketHandler The SocketHandler of the sender
      * @return boolean True if the message is allowed to continue, false otherwise
      */
-    private boolean handleByeMessage(ByeMessage message, User sender) {
-        //Replicates a dead user message
-        handleDeadUser(sender.getSocketAddress(), false);
+    private boolean handleByeMessage(ByeMessage message, SocketHandler senderSocketHandler) {
+        //Replicates a dead user message. Outside a mesh room, the bye did not reach everyone, so it is reported.
+        handleDeadUser(senderSocketHandler, roomTopology != RoomTopology.MESH);
         return DEBUG;
     }
 
     /**
      * Replies with its own vote. Counts leader votes.
      *
+     * In a star room, voters are only connected to the new host through their vote, so they are made peers.
+     * In star and gossip rooms, votes are counted against the members of the room, since no member but the
+     * host of a star room was connected to all of them.
+     *
+     * A vote reaching the deputy means the voter saw the host leave before the deputy did,
+     * so the deputy takes over right away instead of joining an election for the old host.
+     *
      * @param message
+     * @param senderSocketHandler The SocketHandler of the voter, or null for a vote of this client
      */
-    private void handleLeaderVoteMessage(LeaderVoteMessage message) {
-        if(isHost) return; //Ignore votes from last election
+    private void handleLeaderVoteMessage(LeaderVoteMessage message, SocketHandler senderSocketHandler) {
+        boolean starVoter = roomTopology == RoomTopology.STAR && senderSocketHandler != null
+                && peerRegistry.getUser(senderSocketHandler) == null;
+        if (starVoter) {
+            addPeer(senderSocketHandler, message.getSender());
+        }
+        if (isDeputy()) {
+            User host = hostClientUser;
+            handleDeadUser(host.getSocketAddress(), true);
+            if (!isHost) {
+                //No connection to the host was left to tell it is gone
+                removeRoomMember(host);
+            }
+        }
+        if(isHost) {
+            //Ignore votes from last election, but tell a late voter who won, the announcement may have missed it
+            if (senderSocketHandler != null) {
+                sendMessage(new LeaderMessage(clientUser, messageOrdering.getEpoch()), senderSocketHandler, true);
+            }
+            return;
+        }
         if (!electionMode) startElection();
 
         // Increment vote counts for self.
         leaderElectionVotesReceived++;
 
         // Check if there are enough votes for myself.
-        int numVotesNeeded = (int) Math.floor(socketHandlerUserMap.size() / 2) + 1;
+        int numVoters = roomTopology != RoomTopology.MESH ? userRankingOrderList.size() - 1 : peerRegistry.size();
+        int numVotesNeeded = (int) Math.floor(numVoters / 2) + 1;
         if (leaderElectionVotesReceived >= numVotesNeeded) {
-            isHost = true; // Become the host.
-            sendMessageToAll(new LeaderMessage(clientUser));
-            // Notify server.
-            byte[] encryptedInfo = encryptionEngine.encrypt(clientUser.getSocketAddress().toString().getBytes());
-            sendMessage(new HostUpdatedMessage(clientUser.getSocketAddress(),this.roomToken,encryptedInfo),serverManagerAddress, false);
-            endElection();
+            becomeHost();
         }
     }
 
+    /**
+     * Makes this client the host: announces it to the room and the server in one step, then ends any election.
+     */
+    private void becomeHost() {
+        isHost = true; // Become the host.
+        hostClientUser = clientUser;
+        // The new epoch is above that of the replaced host, and every member takes it over.
+        int epoch = messageOrdering.getEpoch() + 1;
+        sendMessageToAll(new LeaderMessage(clientUser, epoch));
+        messageOrdering.hostChanged(epoch);
+        // Notify server.
+        byte[] encryptedInfo = encryptionEngine.encrypt(clientUser.getSocketAddress().toString().getBytes());
+        sendMessage(new HostUpdatedMessage(clientUser.getSocketAddress(),this.roomToken,encryptedInfo),serverManagerAddress, false);
+        endElection();
+    }
+
+    /**
+     * Returns whether this client is the deputy host: the member ranked right after the host.
+     * Every member holds the room token and ranking order, and sees the sequence numbers of the host,
+     * so the deputy mirrors the state of the host and takes over as soon as the host leaves, without an election.
+     * @return boolean True if this client takes over when the host leaves
+     */
+    private boolean isDeputy() {
+        return !isHost && hostClientUser != null && userRankingOrderList.size() > 1
+                && userRankingOrderList.get(0).equals(hostClientUser) && userRankingOrderList.get(1).equals(clientUser);
+    }
+
     /**
      * Handles leader message. Stops the election.
+     * In a star room, the connection the vote was sent on becomes the peer connection to the new host.
      * @param message
+     * @param senderSocketHandler The SocketHandler of the new host
      */
-    private void handleLeaderMessage(LeaderMessage message) {
+    private void handleLeaderMessage(LeaderMessage message, SocketHandler senderSocketHandler) {
+        if (roomTopology == RoomTopology.STAR && peerRegistry.getUser(senderSocketHandler) == null) {
+            addPeer(senderSocketHandler, message.getSender());
+        }
+        if (!electionMode && message.getSender().equals(hostClientUser)) {
+            //Already announced, the new host also answers votes that may have crossed its announcement
+            return;
+        }
         hostClientUser = message.getSender();
         endElection();
+        messageOrdering.hostChanged(message.getEpoch());
     }
 
     /**
@@ -526,7 +1111,7 @@ public class Client implements Runnable, SocketHandlerListener {
             }
             else {
                 //simulate recieving a vote from self
-                handleLeaderVoteMessage(vote);
+                handleLeaderVoteMessage(vote, null);
             }
         }
     }
@@ -547,44 +1132,21 @@ public class Client implements Runnable, SocketHandlerListener {
      */
     private SocketHandler openSocketConnection(InetSocketAddress userSocketAddress, boolean serverMode) throws IOException
     {
-        Socket socket = new Socket(userSocketAddress.getAddress(), userSocketAddress.getPort());
-        SocketHandler socketHandler = new SocketHandler(socket, this, encryptionEngine);
-        socketHandler.setServerMode(serverMode);
-        socketHandlerThreadPool.execute(socketHandler);
-        return socketHandler;
-    }
-
-    /**
-     * Peeks at the current Lamport timestamp without incrementing it.
-     * @return int The current timestamp
-     */
-    public int peekTimestamp(){
-        return timestamp;
+        return openSocketConnection(userSocketAddress, serverMode, 0);
     }
 
     /**
-     * Stamps a message with a timestamp, incrementing the timestamp.
-     * NOTE: This message must be sent ASAP after it is stamped.
-     * @return int The timestamp before incremented
-     */
-    public int timestamp(){
-        //Dont increment if timestamp is unsynced
-        if(timestamp==-1){return timestamp;}
-        return timestamp++;
-    }
-
-    /**
-     * Dequeues all queued messages with a timestamp lower than current timestamp
+     * Opens a socket connection, waiting at most a timeout for it to be established.
+     * @param userSocketAddress The address to connect to
+     * @param serverMode True if this connection will be with the server
+     * @param connectTimeout Time to wait for the connection in milliseconds, or 0 for the system default
+     * @return SocketHandler The new SocketHandler
      */
-    public void dequeueMessages(){
-        while(queuedMessages.peek() != null && queuedMessages.peek().message.getTimestamp() <= peekTimestamp())
-        {
-            SenderMessageTuple popped = queuedMessages.poll();
-            ChatMessage poppedMessage = popped.message;
-            timestamp(); //increment timestamp
-            User poppedSender = popped.sender; //TODO: get sender using message.getSenderSocketAddress()
-            listener.messageReceived(poppedSender, poppedMessage);
-        }
+    private SocketHandler openSocketConnection(InetSocketAddress userSocketAddress, boolean serverMode, int connectTimeout) throws IOException
+    {
+        SocketHandler socketHandler = socketTransport.connect(userSocketAddress, this, encryptionEngine, serverMode, connectTimeout);
+        peerRegistry.addOpenedConnection(socketHandler);
+        return socketHandler;
     }
 
     /**
@@ -599,17 +1161,20 @@ public class Client implements Runnable, SocketHandlerListener {
     }
 
     /**
-     * Transforms a message into an EncryptedMessage. First the message body is encrypted,
-     * then the bytes are turned into a Base64 encoded string.
+     * Transforms a message into an EncryptedMessage. The message data is encoded once into a pooled
+     * buffer and encrypted straight from it.
      * @param message The message to encrypt
      * @return EncryptedMessage The encrypted message ready to send
      */    
     public EncryptedMessage encryptMessage(Message message) {
-        byte[] plaintext = new byte[message.toByteArray().length - Message.BYTE_HEADER_SIZE];
-        System.arraycopy(message.toByteArray(),Message.BYTE_HEADER_SIZE, plaintext,0,plaintext.length);
-        byte[] data;
-        data = encryptionEngine.encrypt(plaintext);
-        return new EncryptedMessage(message.getSenderSocketAddress(), data);
+        ByteBuffer plaintext = BufferPool.acquire(message.getDataSize());
+        try {
+            message.writeData(plaintext);
+            plaintext.flip();
+            return new EncryptedMessage(message.getSenderSocketAddress(), encryptionEngine.encrypt(plaintext));
+        } finally {
+            BufferPool.release(plaintext);
+        }
     }
 
     /**
@@ -623,13 +1188,35 @@ public class Client implements Runnable, SocketHandlerListener {
         sendMessage(new HostRoomMessage(clientUser.getSocketAddress(), encryptedInfo), serverManagerAddress, false);
     }
 
+    /**
+     * Joins the multicast group derived from the room token. If it cannot be joined, chat messages keep
+     * going over the connections of the topology.
+     */
+    private void joinMulticastGroup() {
+        InetSocketAddress groupSocketAddress = MulticastGroup.getGroupSocketAddress(roomToken);
+        try {
+            NetworkInterface networkInterface = multicastInterface != null
+                    ? NetworkInterface.getByName(multicastInterface)
+                    : NetworkInterface.getByInetAddress(clientUser.getSocketAddress().getAddress());
+            if (networkInterface == null) {
+                System.out.println("No network interface to multicast on, chat messages are sent over connections.");
+                return;
+            }
+            multicastLane.joinGroup(new MulticastGroup(groupSocketAddress, networkInterface, encryptionEngine,
+                    message -> eventLoop.publish(null, message)));
+            printLog("Joined multicast group " + groupSocketAddress);
+        } catch (IOException e) {
+            System.out.println("Could not join multicast group " + groupSocketAddress + ", chat messages are sent over connections: " + e.getMessage());
+        }
+    }
+
     /**
      * Sends a HLO message to existing room host
      */   
     private void joinExistingRoom(InetSocketAddress roomAddress) {
         sendMessage(new HelloMessage(clientUser), roomAddress, true);
-        //prep timestamp to be overwritten by new messages
-        this.timestamp = -1;
+        //prep message ordering to be synced by new messages
+        messageOrdering.joinRoom();
 
     }
 
@@ -637,14 +1224,8 @@ public class Client implements Runnable, SocketHandlerListener {
      * Sends a bye message to the server
      */  
     private void disconnectFromServer() {
-        SocketHandler serverSocketHandler = null;
         printLog("SENDING BYE MESSAGE TO SERVER.");
-        for(SocketHandler socketHandler : socketHandlerUserMap.keySet()) {
-            if(socketHandler.getRemoteSocketAddress().equals(serverManagerAddress)) {
-                serverSocketHandler = socketHandler;
-                break;
-            }
-        }
+        SocketHandler serverSocketHandler = peerRegistry.find(serverManagerAddress);
         if(serverSocketHandler == null){return;}
         disconnectFromSocketHandler(serverSocketHandler);
     }
@@ -654,9 +1235,9 @@ public class Client implements Runnable, SocketHandlerListener {
      * @param serverSocketAddress The SocketHandler to be shutdown
      */  
     private void disconnectFromSocketHandler(SocketHandler socketHandler) {
-        sendMessage(new ByeMessage(clientUser.getSocketAddress()), socketHandler, socketHandler.getServerMode());
+        sendMessage(new ByeMessage(clientUser.getSocketAddress()), socketHandler, !socketHandler.getServerMode());
         socketHandler.shutdown();
-        socketHandlerUserMap.remove(socketHandler);
+        peerRegistry.remove(socketHandler);
     }
 
     /**
@@ -691,37 +1272,323 @@ public class Client implements Runnable, SocketHandlerListener {
     private void handleDeadUser(SocketHandler deadSocketHandler, boolean broadcastDead) {
         //shut down socket
         deadSocketHandler.shutdown();
-        //remove user from room map TODO: move this outside somehow so it does not happen 
-        //while SendMessageToAll is active, which causes concurrent modifiction exception
-        int totalUsers = socketHandlerUserMap.size();
-        User deadUser = socketHandlerUserMap.remove(deadSocketHandler);
-        while(socketHandlerUserMap.size() == totalUsers){}//wait for user to be removed?
-        //broadcast DED message if this was a new discovery
-        if(broadcastDead){sendMessageToAll(new DeadUserMessage(clientUser.getSocketAddress(),deadUser));}
+        //remove user from room map, broadcasts iterate a snapshot so this is safe while sending
+        User deadUser = peerRegistry.remove(deadSocketHandler);
+        if(deadUser == null){return;} //Already handled
+        if(roomTopology.isGossip()){gossipBroadcast.neighborDown(deadUser.getSocketAddress());}
+        failureDetector.remove(deadUser.getSocketAddress());
+        removeRoomMember(deadUser);
+        //report the departure if this was a new discovery
+        if(broadcastDead){reportDeath(deadUser);}
+    }
+
+    /**
+     * Reports a departure noticed by this client to the room, together with those noticed shortly after.
+     * Every member that noticed it waits a little longer the lower it ranks, and does not report what
+     * was reported meanwhile, so a departure is usually reported once rather than by everyone that noticed it.
+     * @param deadUser The user that left or died
+     */
+    private void reportDeath(User deadUser) {
+        unreportedDeaths.add(deadUser);
+        if (deathReportScheduled) {
+            return;
+        }
+        deathReportScheduled = true;
+        long rank = Math.max(0, userRankingOrderList.indexOf(clientUser));
+        eventLoop.schedule(this::sendDeathReport, DEATH_REPORT_WINDOW + rank * DEATH_REPORT_STAGGER, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Sends one DeadUserMessage naming every departure noticed by this client that nobody else reported.
+     */
+    private void sendDeathReport() {
+        deathReportScheduled = false;
+        if (unreportedDeaths.isEmpty() || leavingRoom) {
+            unreportedDeaths.clear();
+            return;
+        }
+        sendMessageToAll(new DeadUserMessage(clientUser.getSocketAddress(), membershipVersion, new ArrayList<>(unreportedDeaths)));
+        unreportedDeaths.clear();
+    }
+
+    /**
+     * Sends a heartbeat to every peer, and handles peers whose heartbeats stopped arriving as dead.
+     * Runs every heartbeat interval until this client leaves the room. If this client itself was paused, e.g. for garbage collection,
+     * nobody is suspected until the heartbeats that arrived meanwhile are handled.
+     */
+    private void sendHeartbeats() {
+        if (leavingRoom) {
+            return;
+        }
+        long now = System.nanoTime();
+        boolean paused = now - lastHeartbeatTime > TimeUnit.MILLISECONDS.toNanos(2L * heartbeatInterval);
+        lastHeartbeatTime = now;
+        for (SocketHandler peerSocketHandler : peerRegistry.getPeers()) {
+            User peer = peerRegistry.getUser(peerSocketHandler);
+            if (peer == null) {
+                continue;
+            }
+            if (!paused && failureDetector.isSuspected(peer.getSocketAddress(), now)) {
+                System.out.println("User "+peer.toString()+" is dead!");
+                handleDeadUser(peerSocketHandler, true);
+                continue;
+            }
+            sendMessage(new HeartbeatMessage(clientUser.getSocketAddress()), peerSocketHandler, true);
+        }
+        eventLoop.schedule(this::sendHeartbeats, heartbeatInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Removes a user that left from the state of the room.
+     * @param deadUser The user that left
+     */
+    private void removeRoomMember(User deadUser) {
+        if (departedMembers.add(deadUser.getSocketAddress())) {
+            membershipVersion++;
+        }
+        boolean deputy = isDeputy();
         //Remove from user ordering
         removeUserFromRankingOrder(deadUser);
-        //If host, trigger election
+        //Stop waiting for messages of the dead user, handing over what was multicast first
+        multicastLane.memberLeft(deadUser.getSocketAddress());
+        messageOrdering.memberLeft(deadUser);
+        //Replace the neighbor, or rebuild the tree
+        updateNeighbors();
+        //If host, the deputy takes over right away. Others still vote for it, which tells the host of a star room to connect to them.
         if(hostClientUser != null && deadUser.equals(hostClientUser)) {
-            startElection();
+            if (deputy) {
+                becomeHost();
+            } else {
+                startElection();
+            }
         }
     }
 
     /**
-     * Sets the address of the server manager
-     * @param serverSocketAddress The address of the server
-     */  
+     * Handles a member as dead, whether or not this client has a connection to it.
+     * @param userAddress The socket address of the member
+     * @param broadcastDead True to report the death to the room
+     */
     private void handleDeadUser(InetSocketAddress userAddress, boolean broadcastDead) {
-        SocketHandler userSocketHandler = null;
-        for(SocketHandler socketHandler : socketHandlerUserMap.keySet()) {
-            if(socketHandler.getRemoteSocketAddress().equals(userAddress)) {
-                userSocketHandler = socketHandler;
-                break;
-            }
+        SocketHandler userSocketHandler = peerRegistry.find(userAddress);
+        if(userSocketHandler == null){
+            //Connection is already closed, is still being opened, or in a star or gossip room there never was one
+            User deadUser = findRoomMember(userAddress);
+            if(deadUser == null){return;} //Already handled
+            failureDetector.remove(userAddress);
+            removeRoomMember(deadUser);
+            if(broadcastDead){reportDeath(deadUser);}
+            return;
         }
-        if(userSocketHandler == null){return;} //Connection is already closed
         handleDeadUser(userSocketHandler, broadcastDead);
     }
 
+    /**
+     * Makes a connection a room peer, which in gossip and tree rooms is also a neighbor to gossip with.
+     * If this client and the peer connected to each other, the duplicate connection this client opened is closed
+     * once what was queued on it is written.
+     * @param socketHandler The SocketHandler of the connection
+     * @param user The User of the peer
+     */
+    private void addPeer(SocketHandler socketHandler, User user) {
+        // Arrivals on an earlier connection to the peer say nothing about this one.
+        failureDetector.remove(user.getSocketAddress());
+        SocketHandler duplicateSocketHandler = peerRegistry.putPeer(socketHandler, user);
+        if (duplicateSocketHandler != null) {
+            duplicateSocketHandler.shutdown();
+            peerRegistry.remove(duplicateSocketHandler);
+        }
+        if (roomTopology.isGossip()) {
+            gossipBroadcast.neighborUp(user.getSocketAddress());
+        }
+    }
+
+    /**
+     * Connects to neighbors after the members of the room changed: random ones in a gossip room,
+     * or the parent in the tree of a tree room.
+     */
+    private void updateNeighbors() {
+        if (roomTopology == RoomTopology.GOSSIP) {
+            fillGossipView();
+        } else if (roomTopology == RoomTopology.TREE) {
+            rebuildTree();
+        }
+    }
+
+    /**
+     * Returns whether a member joining through this host becomes one of its neighbors in gossip and tree rooms.
+     * @param user The joining member, already in the ranking order
+     * @return boolean True if the connection of the member is kept
+     */
+    private boolean isNeighborWanted(User user) {
+        if (roomTopology == RoomTopology.TREE) {
+            return getTreeNeighbors().contains(user);
+        }
+        return peerRegistry.size() < getGossipViewSize();
+    }
+
+    /**
+     * Returns the number of neighbors each member of a gossip room connects to, log2 of the room size plus one.
+     * @return int The number of neighbors
+     */
+    private int getGossipViewSize() {
+        return 32 - Integer.numberOfLeadingZeros(Math.max(1, userRankingOrderList.size()));
+    }
+
+    /**
+     * Connects to random members of a gossip room until this client has enough neighbors.
+     * The host is left out, since every member joins through it and it keeps no more neighbors than the others.
+     */
+    private void fillGossipView() {
+        List<User> candidates = new ArrayList<>(userRankingOrderList);
+        Collections.shuffle(candidates);
+        for (User candidate : candidates) {
+            if (peerRegistry.size() + peerConnector.getPendingCount() >= getGossipViewSize()) {
+                return;
+            }
+            if (candidate.equals(clientUser) || candidate.equals(hostClientUser) || isPeer(candidate)
+                    || peerConnector.isConnecting(candidate.getSocketAddress())) {
+                continue;
+            }
+            connectNeighbor(candidate);
+        }
+    }
+
+    /**
+     * Returns the neighbors of this client in the tree of a tree room, parent first.
+     * The member ranked at i is the parent of the members ranked at i*k+1 to i*k+k, so the lowest ranked
+     * member, which wins elections, is the root.
+     * @return List of neighbors, empty if this client is not in the room
+     */
+    private List<User> getTreeNeighbors() {
+        List<User> neighbors = new ArrayList<>();
+        int index = userRankingOrderList.indexOf(clientUser);
+        if (index < 0) {
+            return neighbors;
+        }
+        if (index > 0) {
+            neighbors.add(userRankingOrderList.get((index - 1) / treeDegree));
+        }
+        int lastChild = Math.min(index * treeDegree + treeDegree, userRankingOrderList.size() - 1);
+        for (int child = index * treeDegree + 1; child <= lastChild; child++) {
+            neighbors.add(userRankingOrderList.get(child));
+        }
+        return neighbors;
+    }
+
+    /**
+     * Disconnects from peers of a tree room that are no longer neighbors, and connects to the parent.
+     * Children connect to their parent themselves. Connections to the host are dropped by the host,
+     * so the replies to a join are not cut short.
+     */
+    private void rebuildTree() {
+        List<User> neighbors = getTreeNeighbors();
+        for (SocketHandler peerSocketHandler : peerRegistry.getPeers()) {
+            User peer = peerRegistry.getUser(peerSocketHandler);
+            if (peer != null && !neighbors.contains(peer) && (isHost || !peer.equals(hostClientUser))) {
+                sendMessage(new DisconnectMessage(clientUser.getSocketAddress()), peerSocketHandler, true);
+                peerSocketHandler.shutdown();
+                peerRegistry.remove(peerSocketHandler);
+                gossipBroadcast.neighborDown(peer.getSocketAddress());
+            }
+        }
+        if (!neighbors.isEmpty() && userRankingOrderList.indexOf(clientUser) > 0 && !isPeer(neighbors.get(0))) {
+            connectNeighbor(neighbors.get(0));
+        }
+    }
+
+    /**
+     * Returns whether a user is a room peer.
+     * @param user The user
+     * @return boolean True if there is a peer connection to the user
+     */
+    private boolean isPeer(User user) {
+        SocketHandler socketHandler = peerRegistry.find(user.getSocketAddress());
+        return socketHandler != null && peerRegistry.getUser(socketHandler) != null;
+    }
+
+    /**
+     * Makes a member a neighbor, reusing an open connection to it if there is one, and says hello.
+     * @param neighbor The member
+     */
+    private void connectNeighbor(User neighbor) {
+        SocketHandler neighborSocketHandler = findConnection(neighbor.getSocketAddress());
+        if (neighborSocketHandler == null) {
+            connectMember(neighbor);
+            return;
+        }
+        addPeer(neighborSocketHandler, neighbor);
+        sendMessage(new HelloMessage(clientUser), neighborSocketHandler, true);
+    }
+
+    /**
+     * Starts connecting to a member in the background. Once connected, the member becomes a peer and is said hello.
+     * A member that cannot be reached in any attempt is handled as dead, unless it connected to this client meanwhile.
+     * @param member The member
+     */
+    private void connectMember(User member) {
+        peerConnector.connect(member, socketHandler -> {
+            if (findRoomMember(member.getSocketAddress()) == null) {
+                // Left the room while connecting.
+                socketHandler.shutdown();
+                peerRegistry.remove(socketHandler);
+                return;
+            }
+            addPeer(socketHandler, member);
+            sendMessage(new HelloMessage(clientUser), socketHandler, true);
+            checkRoomReady();
+        }, e -> {
+            System.out.println("Could not connect to " + member + ": " + e.getMessage());
+            User unreachableMember = findRoomMember(member.getSocketAddress());
+            if (unreachableMember != null && !isPeer(unreachableMember)) {
+                failureDetector.remove(unreachableMember.getSocketAddress());
+                removeRoomMember(unreachableMember);
+                reportDeath(unreachableMember);
+            }
+            checkRoomReady();
+        });
+    }
+
+    /**
+     * Tells the listener the room is ready once this client is connected to most of the members it connects to
+     * when joining, or once every connection attempt has settled, whether connected or failed.
+     * Connections are opened all at once, so this takes as long as the slowest of that majority.
+     */
+    private void checkRoomReady() {
+        if (joinPeers == null) {
+            return;
+        }
+        int connectedPeers = 0;
+        int settledPeers = 0;
+        for (User member : joinPeers) {
+            if (isPeer(member)) {
+                connectedPeers++;
+                settledPeers++;
+            } else if (findRoomMember(member.getSocketAddress()) == null) {
+                // Could not be reached, or left the room meanwhile.
+                settledPeers++;
+            }
+        }
+        if (connectedPeers * 2 > joinPeers.size() || settledPeers == joinPeers.size()) {
+            listener.roomReady(connectedPeers, joinPeers.size());
+            joinPeers = null;
+        }
+    }
+
+    /**
+     * Finds a member of the room by its socket address.
+     * @param userAddress The socket address of the member
+     * @return User The member, or null if it is not in the room
+     */
+    private User findRoomMember(InetSocketAddress userAddress) {
+        for (User user : userRankingOrderList) {
+            if (user.getSocketAddress().equals(userAddress)) {
+                return user;
+            }
+        }
+        return null;
+    }
+
     /**
      * Prints a debugging message (or logs it)
      * @param logMessage Debugging message
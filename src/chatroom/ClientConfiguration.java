@@ -0,0 +1,260 @@
+package chatroom;
+
+import models.ExecutionMode;
+import models.OrderingMode;
+import models.RoomTopology;
+import sockets.SlowConsumerPolicy;
+import sockets.TransportMode;
+
+/**
+ * Startup options of a Client.
+ */
+public class ClientConfiguration {
+    /**
+     * How connections to peers and the server manager are handled.
+     */
+    private TransportMode transportMode = TransportMode.BLOCKING;
+
+    /**
+     * Number of selector threads used by the NIO transport.
+     */
+    private int selectorThreads = 1;
+
+    /**
+     * Kind of threads reading connections of the blocking transport.
+     */
+    private ExecutionMode executionMode = ExecutionMode.PLATFORM;
+
+    /**
+     * Number of messages queued per connection before the slow consumer policy applies.
+     */
+    private int outboundQueueCapacity = 1024;
+
+    /**
+     * What connections do when a peer does not keep up with sent messages.
+     */
+    private SlowConsumerPolicy slowConsumerPolicy = SlowConsumerPolicy.BLOCK;
+
+    /**
+     * Order in which chat messages are delivered. Every member of a room should use the same order.
+     */
+    private OrderingMode orderingMode = OrderingMode.LAMPORT;
+
+    /**
+     * How members of a room are connected. Every member of a room should use the same topology.
+     */
+    private RoomTopology roomTopology = RoomTopology.MESH;
+
+    /**
+     * Largest number of children of a member in a tree room. Every member of a room should use the same number.
+     */
+    private int treeDegree = 4;
+
+    /**
+     * Whether chat messages are multicast to the room on the local network. Every member of a room should agree.
+     */
+    private boolean multicast = false;
+
+    /**
+     * Name of the network interface to multicast on, or null for the one holding the client address.
+     */
+    private String multicastInterface;
+
+    /**
+     * Time between heartbeats sent to every peer in milliseconds, or 0 to send none and only notice dead peers
+     * when sending to them fails.
+     */
+    private int heartbeatInterval = 250;
+
+    /**
+     * Suspicion level at which a peer that stopped sending is considered dead.
+     */
+    private double phiThreshold = 8;
+
+    /**
+     * Builds a configuration from command line options of the form --name=value.
+     * Supported options: --transport=blocking|nio, --selector-threads=N, --execution=platform|virtual,
+     * --outbound-queue=N, --slow-consumer=block|drop-oldest|disconnect, --ordering=lamport|causal|sequenced,
+     * --topology=mesh|star|gossip|tree, --tree-degree=N, --multicast=on|off, --multicast-interface=NAME,
+     * --heartbeat-interval=MS, --phi-threshold=PHI
+     *
+     * @param args Command line arguments.
+     * @return The configuration.
+     * @throws IllegalArgumentException Thrown when an option is unknown or its value is invalid.
+     */
+    public static ClientConfiguration fromArgs(String[] args) {
+        ClientConfiguration configuration = new ClientConfiguration();
+        for (String arg : args) {
+            String[] option = arg.split("=", 2);
+            if (option.length != 2 || !option[0].startsWith("--")) {
+                throw new IllegalArgumentException("Options must be of the form --name=value: " + arg);
+            }
+            switch (option[0]) {
+                case "--transport":
+                    configuration.setTransportMode(TransportMode.valueOf(option[1].toUpperCase()));
+                    break;
+                case "--selector-threads":
+                    configuration.setSelectorThreads(Integer.parseInt(option[1]));
+                    break;
+                case "--execution":
+                    configuration.setExecutionMode(ExecutionMode.valueOf(option[1].toUpperCase()));
+                    break;
+                case "--outbound-queue":
+                    configuration.setOutboundQueueCapacity(Integer.parseInt(option[1]));
+                    break;
+                case "--slow-consumer":
+                    configuration.setSlowConsumerPolicy(SlowConsumerPolicy.valueOf(option[1].toUpperCase().replace('-', '_')));
+                    break;
+                case "--ordering":
+                    configuration.setOrderingMode(OrderingMode.valueOf(option[1].toUpperCase()));
+                    break;
+                case "--topology":
+                    configuration.setRoomTopology(RoomTopology.valueOf(option[1].toUpperCase()));
+                    break;
+                case "--tree-degree":
+                    configuration.setTreeDegree(Integer.parseInt(option[1]));
+                    break;
+                case "--multicast":
+                    configuration.setMulticast(parseSwitch(option[1]));
+                    break;
+                case "--multicast-interface":
+                    configuration.setMulticastInterface(option[1]);
+                    break;
+                case "--heartbeat-interval":
+                    configuration.setHeartbeatInterval(Integer.parseInt(option[1]));
+                    break;
+                case "--phi-threshold":
+                    configuration.setPhiThreshold(Double.parseDouble(option[1]));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + option[0]);
+            }
+        }
+        return configuration;
+    }
+
+    /**
+     * Parses the value of an on/off option.
+     */
+    private static boolean parseSwitch(String value) {
+        switch (value.toLowerCase()) {
+            case "on":
+                return true;
+            case "off":
+                return false;
+            default:
+                throw new IllegalArgumentException("Expected on or off: " + value);
+        }
+    }
+
+    public TransportMode getTransportMode() {
+        return transportMode;
+    }
+
+    public void setTransportMode(TransportMode transportMode) {
+        this.transportMode = transportMode;
+    }
+
+    public int getSelectorThreads() {
+        return selectorThreads;
+    }
+
+    public void setSelectorThreads(int selectorThreads) {
+        if (selectorThreads < 1) {
+            throw new IllegalArgumentException("At least one selector thread is required.");
+        }
+        this.selectorThreads = selectorThreads;
+    }
+
+    public ExecutionMode getExecutionMode() {
+        return executionMode;
+    }
+
+    public void setExecutionMode(ExecutionMode executionMode) {
+        this.executionMode = executionMode;
+    }
+
+    public int getOutboundQueueCapacity() {
+        return outboundQueueCapacity;
+    }
+
+    public void setOutboundQueueCapacity(int outboundQueueCapacity) {
+        if (outboundQueueCapacity < 1) {
+            throw new IllegalArgumentException("Outbound queue capacity must be at least 1.");
+        }
+        this.outboundQueueCapacity = outboundQueueCapacity;
+    }
+
+    public SlowConsumerPolicy getSlowConsumerPolicy() {
+        return slowConsumerPolicy;
+    }
+
+    public void setSlowConsumerPolicy(SlowConsumerPolicy slowConsumerPolicy) {
+        this.slowConsumerPolicy = slowConsumerPolicy;
+    }
+
+    public OrderingMode getOrderingMode() {
+        return orderingMode;
+    }
+
+    public void setOrderingMode(OrderingMode orderingMode) {
+        this.orderingMode = orderingMode;
+    }
+
+    public RoomTopology getRoomTopology() {
+        return roomTopology;
+    }
+
+    public void setRoomTopology(RoomTopology roomTopology) {
+        this.roomTopology = roomTopology;
+    }
+
+    public int getTreeDegree() {
+        return treeDegree;
+    }
+
+    public void setTreeDegree(int treeDegree) {
+        if (treeDegree < 1) {
+            throw new IllegalArgumentException("Tree degree must be at least 1.");
+        }
+        this.treeDegree = treeDegree;
+    }
+
+    public boolean isMulticast() {
+        return multicast;
+    }
+
+    public void setMulticast(boolean multicast) {
+        this.multicast = multicast;
+    }
+
+    public String getMulticastInterface() {
+        return multicastInterface;
+    }
+
+    public void setMulticastInterface(String multicastInterface) {
+        this.multicastInterface = multicastInterface;
+    }
+
+    public int getHeartbeatInterval() {
+        return heartbeatInterval;
+    }
+
+    public void setHeartbeatInterval(int heartbeatInterval) {
+        if (heartbeatInterval < 0) {
+            throw new IllegalArgumentException("Heartbeat interval must not be negative.");
+        }
+        this.heartbeatInterval = heartbeatInterval;
+    }
+
+    public double getPhiThreshold() {
+        return phiThreshold;
+    }
+
+    public void setPhiThreshold(double phiThreshold) {
+        if (!(phiThreshold > 0)) {
+            throw new IllegalArgumentException("Phi threshold must be positive.");
+        }
+        this.phiThreshold = phiThreshold;
+    }
+}
@@ -0,0 +1,299 @@
+package chatroom;
+
+import models.messages.Message;
+import sockets.SocketHandler;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
+
+/**
+ * Runs every change to the state of a Client on one thread, in the order the changes arrived.
+ *
+ * Received messages and tasks are published into a preallocated ring of slots by any number of threads
+ * and taken out by the single loop thread. Each slot carries a sequence number that tells producers when
+ * it is free and the loop thread when it is filled, so neither side takes a lock. A producer claims
+ * a slot by advancing the claim position, fills it, then publishes it by setting its sequence.
+ * Messages of one connection are published by one thread at a time, so they are handled in the order
+ * they were read.
+ *
+ * A full ring makes producers wait for the loop thread, which in turn slows down reading from sockets.
+ * The loop thread parks while the ring is empty and is unparked by the next publish, or when the next
+ * scheduled task is due.
+ */
+class ClientEventLoop {
+
+    /**
+     * Default number of slots.
+     */
+    static final int DEFAULT_CAPACITY = 4096;
+
+    /**
+     * Slots holding published events.
+     */
+    private final Slot[] slots;
+
+    /**
+     * Mask turning a position into a slot index.
+     */
+    private final int mask;
+
+    /**
+     * Next position to be claimed by a producer.
+     */
+    private final AtomicLong claimPosition = new AtomicLong();
+
+    /**
+     * Next position to be taken by the loop thread. Only used by the loop thread.
+     */
+    private long takePosition;
+
+    /**
+     * Handles received messages on the loop thread.
+     */
+    private final BiConsumer<SocketHandler, Message> messageHandler;
+
+    /**
+     * Thread running the loop, set once it starts.
+     */
+    private volatile Thread loopThread;
+
+    /**
+     * True while the loop thread is parked or about to park.
+     */
+    private volatile boolean parked;
+
+    /**
+     * Scheduled tasks in the order they are due. Only used by the loop thread.
+     */
+    private final PriorityQueue<ScheduledTask> scheduledTasks = new PriorityQueue<>();
+
+    /**
+     * Number of tasks scheduled so far, which keeps tasks due at the same time in scheduling order.
+     */
+    private long scheduledCount;
+
+    /**
+     * Creates an event loop with a number of slots.
+     *
+     * @param capacity Number of slots, rounded up to a power of two.
+     * @param messageHandler Handles received messages on the loop thread.
+     */
+    ClientEventLoop(int capacity, BiConsumer<SocketHandler, Message> messageHandler) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.slots = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot(i);
+        }
+        this.mask = size - 1;
+        this.messageHandler = messageHandler;
+    }
+
+    /**
+     * Makes the calling thread the loop thread. Must be called before it runs events.
+     */
+    void bindToCurrentThread() {
+        loopThread = Thread.currentThread();
+    }
+
+    /**
+     * Returns whether the calling thread is the loop thread.
+     *
+     * @return True if called on the loop thread.
+     */
+    boolean inLoopThread() {
+        return Thread.currentThread() == loopThread;
+    }
+
+    /**
+     * Publishes a received message to be handled on the loop thread.
+     *
+     * @param socketHandler The SocketHandler the message was received from.
+     * @param message The received message.
+     */
+    void publish(SocketHandler socketHandler, Message message) {
+        publish(socketHandler, message, null);
+    }
+
+    /**
+     * Publishes a task to be run on the loop thread.
+     *
+     * @param task The task to run.
+     */
+    void execute(Runnable task) {
+        publish(null, null, task);
+    }
+
+    /**
+     * Schedules a task to run on the loop thread once a delay has passed. Only call this on the loop thread.
+     *
+     * @param task The task to run.
+     * @param delay The delay.
+     * @param unit The unit of the delay.
+     */
+    void schedule(Runnable task, long delay, TimeUnit unit) {
+        scheduledTasks.add(new ScheduledTask(System.nanoTime() + unit.toNanos(delay), scheduledCount++, task));
+    }
+
+    /**
+     * Runs published events until none are left, then the scheduled tasks that are due.
+     *
+     * @return True if at least one event or task was run.
+     */
+    boolean runPendingEvents() {
+        boolean ran = false;
+        while (true) {
+            Slot slot = slots[(int) takePosition & mask];
+            if (slot.sequence != takePosition + 1) {
+                return runDueTasks() || ran;
+            }
+            SocketHandler socketHandler = slot.socketHandler;
+            Message message = slot.message;
+            Runnable task = slot.task;
+            slot.socketHandler = null;
+            slot.message = null;
+            slot.task = null;
+            // Frees the slot for the producer that wraps around to it.
+            slot.sequence = takePosition + slots.length;
+            takePosition++;
+            ran = true;
+
+            try {
+                if (task != null) {
+                    task.run();
+                } else {
+                    messageHandler.accept(socketHandler, message);
+                }
+            } catch (RuntimeException e) {
+                // One bad event must not stop the loop.
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Parks the loop thread until an event is published or the next scheduled task is due.
+     * May return early, so callers check for events again.
+     */
+    void awaitEvents() {
+        parked = true;
+        try {
+            // Checked after announcing the park, so a publish in between is not missed.
+            if (slots[(int) takePosition & mask].sequence == takePosition + 1) {
+                return;
+            }
+            ScheduledTask nextTask = scheduledTasks.peek();
+            if (nextTask == null) {
+                LockSupport.park(this);
+            } else {
+                LockSupport.parkNanos(this, nextTask.dueTime - System.nanoTime());
+            }
+        } finally {
+            parked = false;
+        }
+    }
+
+    /**
+     * Runs the scheduled tasks that are due. Tasks they schedule run on a later call at the earliest.
+     *
+     * @return True if at least one task was run.
+     */
+    private boolean runDueTasks() {
+        if (scheduledTasks.isEmpty()) {
+            return false;
+        }
+        long now = System.nanoTime();
+        long lastCount = scheduledCount;
+        boolean ran = false;
+        while (!scheduledTasks.isEmpty() && scheduledTasks.peek().dueTime - now <= 0
+                && scheduledTasks.peek().count < lastCount) {
+            ScheduledTask scheduledTask = scheduledTasks.poll();
+            ran = true;
+            try {
+                scheduledTask.task.run();
+            } catch (RuntimeException e) {
+                // One bad task must not stop the loop.
+                e.printStackTrace();
+            }
+        }
+        return ran;
+    }
+
+    /**
+     * Claims a slot, waiting for the loop thread if the ring is full, fills it and publishes it.
+     */
+    private void publish(SocketHandler socketHandler, Message message, Runnable task) {
+        long position;
+        Slot slot;
+        while (true) {
+            position = claimPosition.get();
+            slot = slots[(int) position & mask];
+            long difference = slot.sequence - position;
+            if (difference == 0) {
+                if (claimPosition.compareAndSet(position, position + 1)) {
+                    break;
+                }
+            } else if (difference < 0) {
+                // Full, the slot has not been taken since the last lap.
+                wakeLoopThread();
+                LockSupport.parkNanos(this, 1000);
+            } else {
+                Thread.onSpinWait();
+            }
+        }
+        slot.socketHandler = socketHandler;
+        slot.message = message;
+        slot.task = task;
+        slot.sequence = position + 1;
+        if (parked) {
+            wakeLoopThread();
+        }
+    }
+
+    /**
+     * Unparks the loop thread.
+     */
+    private void wakeLoopThread() {
+        Thread thread = loopThread;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * A task waiting for the time it is due.
+     */
+    private static class ScheduledTask implements Comparable<ScheduledTask> {
+        private final long dueTime;
+        private final long count;
+        private final Runnable task;
+
+        ScheduledTask(long dueTime, long count, Runnable task) {
+            this.dueTime = dueTime;
+            this.count = count;
+            this.task = task;
+        }
+
+        @Override
+        public int compareTo(ScheduledTask other) {
+            int order = Long.compare(dueTime - other.dueTime, 0);
+            return order != 0 ? order : Long.compare(count, other.count);
+        }
+    }
+
+    /**
+     * A preallocated event. The fields are written before the sequence is published and read after it is seen.
+     */
+    private static class Slot {
+        private volatile long sequence;
+        private SocketHandler socketHandler;
+        private Message message;
+        private Runnable task;
+
+        Slot(long sequence) {
+            this.sequence = sequence;
+        }
+    }
+}
@@ -41,4 +41,13 @@ public interface ClientListener {
      * @param isHosting True if room did not already exist
      */
     void listProcessed(boolean isHosting);
+
+    /**
+     * To be called when this client joined a room and is connected to most of the members it connects to,
+     * or once every connection attempt has settled. Members that could not be reached were removed from the room.
+     *
+     * @param connectedPeers Number of those members connected to.
+     * @param joinPeers Number of members connected to when joining.
+     */
+    void roomReady(int connectedPeers, int joinPeers);
 }
@@ -0,0 +1,288 @@
+package chatroom;
+
+import models.messages.GossipMessage;
+import models.messages.GraftMessage;
+import models.messages.IHaveMessage;
+import models.messages.Message;
+import models.messages.PruneMessage;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Spreads room messages over the few neighbors of every member, following the Plumtree epidemic broadcast tree.
+ *
+ * Neighbors start out eager: new messages are pushed to them in full. A message that arrives a second time
+ * tells that its sender is a redundant path, so that neighbor is pruned and becomes lazy. Lazy neighbors
+ * only get an IHAVE announcing the message. The eager links left form a spanning tree of the room.
+ * A member that hears of a message through an IHAVE but does not get it within a timeout grafts the announcer:
+ * it asks for the message with a GRAFT, which also makes that link eager again, repairing the tree.
+ * Recent messages are kept to answer grafts and to recognize duplicates.
+ *
+ * Neighbors are random members in a gossip room. In a tree room they are the parent and children in the tree,
+ * which is a spanning tree already, so pushes only turn out redundant while the tree is rebuilt.
+ *
+ * Only used on the event loop thread of the Client.
+ */
+class GossipBroadcast {
+
+    /**
+     * Number of recent messages kept.
+     */
+    static final int RECENT_MESSAGES = 4096;
+
+    /**
+     * Time to wait for an announced message before grafting an announcer, in milliseconds.
+     */
+    static final long GRAFT_TIMEOUT = 400;
+
+    /**
+     * Time to wait for a grafted message before grafting the next announcer, in milliseconds.
+     */
+    static final long GRAFT_RETRY_TIMEOUT = 200;
+
+    /**
+     * Neighbors new messages are pushed to.
+     */
+    private final Set<InetSocketAddress> eagerPeers = new LinkedHashSet<>();
+
+    /**
+     * Neighbors new messages are announced to.
+     */
+    private final Set<InetSocketAddress> lazyPeers = new LinkedHashSet<>();
+
+    /**
+     * Recently seen messages, oldest first.
+     */
+    private final Map<MessageId, GossipMessage> recentMessages = new LinkedHashMap<MessageId, GossipMessage>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<MessageId, GossipMessage> eldest) {
+            return size() > RECENT_MESSAGES;
+        }
+    };
+
+    /**
+     * Neighbors that announced each message that has not arrived yet, in announcement order.
+     */
+    private final Map<MessageId, ArrayDeque<InetSocketAddress>> missingMessages = new HashMap<>();
+
+    /**
+     * Number of messages this client has broadcast.
+     */
+    private int sentMessages;
+
+    /**
+     * Socket address of this client.
+     */
+    private final Supplier<InetSocketAddress> selfAddress;
+
+    /**
+     * Sends a message to a neighbor.
+     */
+    private final BiConsumer<InetSocketAddress, Message> peerSender;
+
+    /**
+     * Runs the graft timeouts.
+     */
+    private final ClientEventLoop eventLoop;
+
+    /**
+     * Creates a gossip broadcast without neighbors.
+     *
+     * @param selfAddress Returns the socket address of this client.
+     * @param peerSender Sends a message to the neighbor at a socket address.
+     * @param eventLoop Event loop of the Client.
+     */
+    GossipBroadcast(Supplier<InetSocketAddress> selfAddress, BiConsumer<InetSocketAddress, Message> peerSender,
+                    ClientEventLoop eventLoop) {
+        this.selfAddress = selfAddress;
+        this.peerSender = peerSender;
+        this.eventLoop = eventLoop;
+    }
+
+    /**
+     * Adds a neighbor, which starts out eager.
+     *
+     * @param peer The socket address of the neighbor.
+     */
+    void neighborUp(InetSocketAddress peer) {
+        if (!lazyPeers.contains(peer)) {
+            eagerPeers.add(peer);
+        }
+    }
+
+    /**
+     * Removes a neighbor, which no longer announces missing messages either.
+     *
+     * @param peer The socket address of the neighbor.
+     */
+    void neighborDown(InetSocketAddress peer) {
+        eagerPeers.remove(peer);
+        lazyPeers.remove(peer);
+        for (ArrayDeque<InetSocketAddress> announcers : missingMessages.values()) {
+            announcers.remove(peer);
+        }
+    }
+
+    /**
+     * Broadcasts a sealed message written by this client to the room.
+     *
+     * @param ciphertext The sealed bytes of the message.
+     */
+    void broadcast(byte[] ciphertext) {
+        GossipMessage message = new GossipMessage(selfAddress.get(), ++sentMessages, ciphertext);
+        recentMessages.put(new MessageId(message), message);
+        push(message, null);
+    }
+
+    /**
+     * Handles a gossip message pushed by a neighbor, forwarding it if it is new.
+     * A neighbor that pushed a message already seen is pruned.
+     *
+     * @param sender The socket address of the neighbor, or null if it is not a neighbor.
+     * @param message The received message.
+     * @return True if the message is new and should be handled, false if it was seen before.
+     */
+    boolean receive(InetSocketAddress sender, GossipMessage message) {
+        MessageId messageId = new MessageId(message);
+        if (recentMessages.containsKey(messageId)) {
+            if (sender != null && eagerPeers.remove(sender)) {
+                lazyPeers.add(sender);
+                peerSender.accept(sender, new PruneMessage(selfAddress.get()));
+            }
+            return false;
+        }
+        recentMessages.put(messageId, message);
+        missingMessages.remove(messageId);
+        if (sender != null && lazyPeers.remove(sender)) {
+            eagerPeers.add(sender);
+        }
+        push(message, sender);
+        return true;
+    }
+
+    /**
+     * Notes a neighbor that announced a message. A message that does not arrive in time is grafted.
+     *
+     * @param message The announcement, sent by the neighbor.
+     */
+    void iHave(IHaveMessage message) {
+        MessageId messageId = new MessageId(message.getOriginSocketAddress(), message.getSequence());
+        if (recentMessages.containsKey(messageId)) {
+            return;
+        }
+        ArrayDeque<InetSocketAddress> announcers = missingMessages.get(messageId);
+        if (announcers == null) {
+            announcers = new ArrayDeque<>();
+            missingMessages.put(messageId, announcers);
+            eventLoop.schedule(() -> graftMissing(messageId), GRAFT_TIMEOUT, TimeUnit.MILLISECONDS);
+        }
+        announcers.add(message.getSenderSocketAddress());
+    }
+
+    /**
+     * Makes the neighbor that sent a graft eager, and sends it the message it asked for if still kept.
+     *
+     * @param message The graft, sent by the neighbor.
+     */
+    void graft(GraftMessage message) {
+        InetSocketAddress sender = message.getSenderSocketAddress();
+        lazyPeers.remove(sender);
+        eagerPeers.add(sender);
+        GossipMessage graftedMessage = recentMessages.get(new MessageId(message.getOriginSocketAddress(), message.getSequence()));
+        if (graftedMessage != null) {
+            peerSender.accept(sender, graftedMessage);
+        }
+    }
+
+    /**
+     * Makes the neighbor that sent a prune lazy.
+     *
+     * @param message The prune, sent by the neighbor.
+     */
+    void prune(PruneMessage message) {
+        if (eagerPeers.remove(message.getSenderSocketAddress())) {
+            lazyPeers.add(message.getSenderSocketAddress());
+        }
+    }
+
+    /**
+     * Pushes a message to the eager neighbors and announces it to the lazy ones, except to the one it came from.
+     */
+    private void push(GossipMessage message, InetSocketAddress sender) {
+        for (InetSocketAddress peer : eagerPeers.toArray(new InetSocketAddress[0])) {
+            if (!peer.equals(sender)) {
+                peerSender.accept(peer, message);
+            }
+        }
+        if (lazyPeers.isEmpty()) {
+            return;
+        }
+        IHaveMessage announcement = new IHaveMessage(selfAddress.get(), message.getSenderSocketAddress(), message.getSequence());
+        for (InetSocketAddress peer : lazyPeers.toArray(new InetSocketAddress[0])) {
+            if (!peer.equals(sender)) {
+                peerSender.accept(peer, announcement);
+            }
+        }
+    }
+
+    /**
+     * Grafts the next announcer of a message that has not arrived, and waits for it again.
+     * Gives up once no announcer is left, until the message is announced again.
+     */
+    private void graftMissing(MessageId messageId) {
+        ArrayDeque<InetSocketAddress> announcers = missingMessages.get(messageId);
+        if (announcers == null) {
+            return;
+        }
+        InetSocketAddress announcer = announcers.poll();
+        if (announcer == null) {
+            missingMessages.remove(messageId);
+            return;
+        }
+        lazyPeers.remove(announcer);
+        eagerPeers.add(announcer);
+        peerSender.accept(announcer, new GraftMessage(selfAddress.get(), messageId.origin, messageId.sequence));
+        eventLoop.schedule(() -> graftMissing(messageId), GRAFT_RETRY_TIMEOUT, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Identifies a message in the room by its writer and the number the writer gave it.
+     */
+    private static final class MessageId {
+        private final InetSocketAddress origin;
+        private final int sequence;
+
+        MessageId(InetSocketAddress origin, int sequence) {
+            this.origin = origin;
+            this.sequence = sequence;
+        }
+
+        MessageId(GossipMessage message) {
+            this(message.getSenderSocketAddress(), message.getSequence());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof MessageId)) {
+                return false;
+            }
+            MessageId other = (MessageId) o;
+            return sequence == other.sequence && origin.equals(other.origin);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(origin, sequence);
+        }
+    }
+}
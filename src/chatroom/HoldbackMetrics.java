@@ -0,0 +1,119 @@
+package chatroom;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counts how many chat messages are held back before delivery, and for how long.
+ * Only updated and read on the event loop thread of the Client.
+ */
+public class HoldbackMetrics {
+
+    /**
+     * Number of delivered chat messages.
+     */
+    private long deliveredMessages;
+
+    /**
+     * Number of delivered chat messages that were held back first.
+     */
+    private long heldBackMessages;
+
+    /**
+     * Number of chat messages currently held back.
+     */
+    private int depth;
+
+    /**
+     * Largest number of chat messages held back at once.
+     */
+    private int maxDepth;
+
+    /**
+     * Total time delivered messages were held back, in nanoseconds.
+     */
+    private long totalDelay;
+
+    /**
+     * Longest time a delivered message was held back, in nanoseconds.
+     */
+    private long maxDelay;
+
+    /**
+     * Records a chat message that was delivered without being held back.
+     */
+    void messageDelivered() {
+        deliveredMessages++;
+    }
+
+    /**
+     * Records a chat message being held back.
+     */
+    void messageHeld() {
+        depth++;
+        maxDepth = Math.max(maxDepth, depth);
+    }
+
+    /**
+     * Records a held back chat message being delivered.
+     *
+     * @param queuedTime The System.nanoTime() at which the message was held back.
+     */
+    void messageReleased(long queuedTime) {
+        long delay = System.nanoTime() - queuedTime;
+        depth--;
+        deliveredMessages++;
+        heldBackMessages++;
+        totalDelay += delay;
+        maxDelay = Math.max(maxDelay, delay);
+    }
+
+    /**
+     * Records a held back chat message being discarded without delivery.
+     */
+    void messageDiscarded() {
+        depth--;
+    }
+
+    public long getDeliveredMessages() {
+        return deliveredMessages;
+    }
+
+    public long getHeldBackMessages() {
+        return heldBackMessages;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * Returns the average time held back messages waited before delivery.
+     *
+     * @param unit The unit of the result.
+     * @return The average delay, or 0 if no message was held back.
+     */
+    public long getAverageDelay(TimeUnit unit) {
+        return heldBackMessages == 0 ? 0 : unit.convert(totalDelay / heldBackMessages, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the longest time a held back message waited before delivery.
+     *
+     * @param unit The unit of the result.
+     * @return The longest delay.
+     */
+    public long getMaxDelay(TimeUnit unit) {
+        return unit.convert(maxDelay, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("delivered=%d heldBack=%d depth=%d maxDepth=%d avgDelay=%dus maxDelay=%dus",
+                deliveredMessages, heldBackMessages, depth, maxDepth,
+                getAverageDelay(TimeUnit.MICROSECONDS), getMaxDelay(TimeUnit.MICROSECONDS));
+    }
+}
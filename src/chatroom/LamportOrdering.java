@@ -0,0 +1,161 @@
+package chatroom;
+
+import models.SenderMessageTuple;
+import models.User;
+import models.messages.ChatMessage;
+import models.messages.NakMessage;
+import models.messages.OrderStateMessage;
+
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.BiConsumer;
+
+/**
+ * Delivers chat messages in the order of a Lamport timestamp shared by the room.
+ * A message stamped later than the current timestamp is held back until the timestamp catches up.
+ * A client that joins a room adopts the timestamp of the first message it receives.
+ */
+class LamportOrdering implements MessageOrdering {
+
+    /**
+     * Lamport timestamp for message ordering, -1 until synced with the room
+     */
+    private int timestamp = 0;
+
+    /**
+     * Priority queue for later-timestamped messages
+     */
+    private final PriorityQueue<SenderMessageTuple> queuedMessages = new PriorityQueue<>();
+
+    /**
+     * Receives delivered messages.
+     */
+    private final BiConsumer<User, ChatMessage> delivery;
+
+    /**
+     * Sends messages to the room.
+     */
+    private final RoomLink room;
+
+    private final HoldbackMetrics metrics = new HoldbackMetrics();
+
+    /**
+     * Creates a Lamport ordering.
+     *
+     * @param delivery Receives delivered messages with their sender.
+     * @param room Sends messages to the room.
+     */
+    LamportOrdering(BiConsumer<User, ChatMessage> delivery, RoomLink room) {
+        this.delivery = delivery;
+        this.room = room;
+    }
+
+    /**
+     * Stamps a message with a timestamp, incrementing the timestamp.
+     */
+    @Override
+    public ChatMessage stamp(InetSocketAddress senderSocketAddress, String text) {
+        return new ChatMessage(senderSocketAddress, timestamp(), text);
+    }
+
+    /**
+     * Compares timestamp on incoming message with current time.
+     * If message is equal or lower, deliver it. Else put into queue.
+     */
+    @Override
+    public void receive(User sender, ChatMessage message) {
+        if(timestamp==-1){timestamp = message.getTimestamp();} //If timestamp is non-synced, sync it
+        if(message.getTimestamp() > timestamp){
+            //Put it into a queue to be taken off when timestamp is higher
+            queuedMessages.offer(new SenderMessageTuple(sender, message));
+            metrics.messageHeld();
+            return;
+        }
+        timestamp(); //increment the timestamp
+        metrics.messageDelivered();
+        delivery.accept(sender, message);
+        deliverReady();
+    }
+
+    /**
+     * Dequeues all queued messages with a timestamp lower than current timestamp
+     */
+    @Override
+    public void deliverReady() {
+        while(queuedMessages.peek() != null && queuedMessages.peek().message.getTimestamp() <= timestamp)
+        {
+            SenderMessageTuple popped = queuedMessages.poll();
+            timestamp(); //increment timestamp
+            metrics.messageReleased(popped.queuedTime);
+            delivery.accept(popped.sender, popped.message);
+        }
+    }
+
+    /**
+     * Prepares the timestamp to be overwritten by new messages.
+     */
+    @Override
+    public void joinRoom() {
+        timestamp = -1;
+    }
+
+    @Override
+    public OrderStateMessage getState() {
+        // The timestamp is taken from the first message instead.
+        return new OrderStateMessage(room.getSelf().getSocketAddress(), 0, 0, Map.of());
+    }
+
+    @Override
+    public void sync(OrderStateMessage message) {
+        // The timestamp is taken from the first message instead.
+    }
+
+    /**
+     * Sends the message straight to every member.
+     */
+    @Override
+    public void send(ChatMessage message) {
+        room.sendToAll(message);
+    }
+
+    @Override
+    public void repairRequested(User sender, NakMessage message) {
+        // Every member sends its own messages, so there is no host to repair from.
+    }
+
+    @Override
+    public int getEpoch() {
+        return 0;
+    }
+
+    @Override
+    public void hostChanged(int epoch) {
+        // The host does not take part in the order.
+    }
+
+    @Override
+    public void memberJoined(User user) {
+        // The shared timestamp does not track members.
+    }
+
+    @Override
+    public void memberLeft(User user) {
+        // The shared timestamp does not track members.
+    }
+
+    @Override
+    public HoldbackMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Increments the timestamp.
+     * @return int The timestamp before incremented
+     */
+    private int timestamp(){
+        //Dont increment if timestamp is unsynced
+        if(timestamp==-1){return timestamp;}
+        return timestamp++;
+    }
+}
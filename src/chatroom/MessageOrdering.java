@@ -0,0 +1,107 @@
+package chatroom;
+
+import models.User;
+import models.messages.ChatMessage;
+import models.messages.NakMessage;
+import models.messages.OrderStateMessage;
+
+import java.net.InetSocketAddress;
+
+/**
+ * Decides when received chat messages of a room are delivered, holding back those that arrived early.
+ * Only used on the event loop thread of the Client.
+ */
+interface MessageOrdering {
+
+    /**
+     * Creates an outgoing chat message stamped with what the order needs. It must be sent right away.
+     *
+     * @param senderSocketAddress The socket address of this client.
+     * @param text The text of the message.
+     * @return The stamped message.
+     */
+    ChatMessage stamp(InetSocketAddress senderSocketAddress, String text);
+
+    /**
+     * Sends a stamped chat message to the room.
+     *
+     * @param message The stamped message.
+     */
+    void send(ChatMessage message);
+
+    /**
+     * Delivers a received chat message, or holds it back until the messages it follows have been delivered.
+     * Delivering it may release held back messages too.
+     *
+     * @param sender The User the message was received from.
+     * @param message The received message.
+     */
+    void receive(User sender, ChatMessage message);
+
+    /**
+     * Handles a request to send sequenced messages again, or the answer that they are gone.
+     *
+     * @param sender The User the request was received from.
+     * @param message The request.
+     */
+    void repairRequested(User sender, NakMessage message);
+
+    /**
+     * Delivers held back messages that stamping outgoing messages made deliverable.
+     */
+    void deliverReady();
+
+    /**
+     * Starts over for a room this client joins rather than hosts.
+     */
+    void joinRoom();
+
+    /**
+     * Returns where the order of the room stands, for a client that joins it. Only called on the host.
+     *
+     * @return The state to send to the joining client.
+     */
+    OrderStateMessage getState();
+
+    /**
+     * Takes over where the order of the room stands after joining it.
+     *
+     * @param message The state sent by the host.
+     */
+    void sync(OrderStateMessage message);
+
+    /**
+     * Returns the epoch of the host the order currently follows.
+     *
+     * @return The epoch, 0 if the order does not depend on the host.
+     */
+    int getEpoch();
+
+    /**
+     * Takes over from a host that left, either as the new host or as a member of the new host.
+     *
+     * @param epoch The epoch announced by the new host, above the epoch of the host it replaces.
+     */
+    void hostChanged(int epoch);
+
+    /**
+     * Notes a user that joined the room after this client, so none of its messages were missed.
+     *
+     * @param user The user that joined.
+     */
+    void memberJoined(User user);
+
+    /**
+     * Stops waiting for messages of a user that left the room.
+     *
+     * @param user The user that left.
+     */
+    void memberLeft(User user);
+
+    /**
+     * Returns how many messages were held back and for how long.
+     *
+     * @return The metrics.
+     */
+    HoldbackMetrics getMetrics();
+}
@@ -0,0 +1,306 @@
+package chatroom;
+
+import models.messages.Message;
+import models.messages.MulticastMessage;
+import models.messages.NakMessage;
+import sockets.MulticastGroup;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Sends the chat messages of this client once to the multicast group of the room, however many members it has,
+ * and delivers the multicast messages of the other members in the order each of them sent them.
+ *
+ * Every client numbers the messages it multicasts within a session, a random number below -1 picked at startup.
+ * A member that sees the number of a sender skip ahead holds the later messages back and sends the sender a NAK
+ * over their connection, asking for the missing ones. The sender keeps its most recent messages for that,
+ * sends them again over the connection, and answers that older ones are gone so the member skips them.
+ * A message that was the last one sent for a while is multicast once more, so a lost last message is noticed too.
+ * Sessions never overlap the epochs of the sequenced ordering, so both share the NAK message.
+ *
+ * Only used on the event loop thread of the Client.
+ */
+class MulticastLane {
+
+    /**
+     * Number of recent messages that can be sent again.
+     */
+    static final int HISTORY_SIZE = 1024;
+
+    /**
+     * Time without sending after which the last message is multicast once more, in milliseconds.
+     */
+    static final long TAIL_RESEND_DELAY = 100;
+
+    /**
+     * Session of a sender that has not multicast anything yet. Sessions are below -1, so it is never a real one.
+     */
+    private static final int UNKNOWN_SESSION = 0;
+
+    /**
+     * Session of the messages this client multicasts.
+     */
+    private final int session = Integer.MIN_VALUE + new SecureRandom().nextInt(Integer.MAX_VALUE);
+
+    /**
+     * Number of messages this client has multicast in its session.
+     */
+    private int sentMessages;
+
+    /**
+     * Recent messages multicast by this client, indexed by sequence number.
+     */
+    private final MulticastMessage[] history = new MulticastMessage[HISTORY_SIZE];
+
+    /**
+     * What was received of every member that multicast to this client.
+     */
+    private final Map<InetSocketAddress, SenderWindow> senderWindows = new HashMap<>();
+
+    /**
+     * Group of the room, or null while not joined.
+     */
+    private MulticastGroup group;
+
+    /**
+     * Socket address of this client.
+     */
+    private final Supplier<InetSocketAddress> selfAddress;
+
+    /**
+     * Sends a message to a member over its connection.
+     */
+    private final BiConsumer<InetSocketAddress, Message> memberSender;
+
+    /**
+     * Receives delivered messages.
+     */
+    private final Consumer<MulticastMessage> delivery;
+
+    /**
+     * Runs the tail resends.
+     */
+    private final ClientEventLoop eventLoop;
+
+    /**
+     * Creates a multicast lane that is not joined to a group yet.
+     *
+     * @param selfAddress Returns the socket address of this client.
+     * @param memberSender Sends a message to the member at a socket address over its connection.
+     * @param delivery Receives delivered messages, in the order their sender multicast them.
+     * @param eventLoop Event loop of the Client.
+     */
+    MulticastLane(Supplier<InetSocketAddress> selfAddress, BiConsumer<InetSocketAddress, Message> memberSender,
+                  Consumer<MulticastMessage> delivery, ClientEventLoop eventLoop) {
+        this.selfAddress = selfAddress;
+        this.memberSender = memberSender;
+        this.delivery = delivery;
+        this.eventLoop = eventLoop;
+    }
+
+    /**
+     * Starts multicasting to a group, leaving the previous one.
+     *
+     * @param group The joined group of the room.
+     */
+    void joinGroup(MulticastGroup group) {
+        leaveGroup();
+        this.group = group;
+    }
+
+    /**
+     * Stops multicasting and leaves the group, if joined.
+     */
+    void leaveGroup() {
+        if (group != null) {
+            group.close();
+            group = null;
+        }
+    }
+
+    /**
+     * Multicasts a sealed message written by this client to the room.
+     *
+     * @param ciphertext The sealed bytes of the message.
+     * @return True if the message was multicast, false if it must be sent another way, e.g. because
+     * no group is joined or it does not fit in a datagram.
+     */
+    boolean send(byte[] ciphertext) {
+        if (group == null) {
+            return false;
+        }
+        int sequence = sentMessages + 1;
+        MulticastMessage message = new MulticastMessage(selfAddress.get(), session, sequence, ciphertext);
+        if (message.getEncodedSize() > MulticastGroup.MAX_DATAGRAM_SIZE) {
+            return false;
+        }
+        try {
+            group.send(message);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+        // Only numbered once sent, so members never ask for a message that went another way.
+        sentMessages = sequence;
+        history[sequence % HISTORY_SIZE] = message;
+        eventLoop.schedule(() -> resendTail(sequence), TAIL_RESEND_DELAY, TimeUnit.MILLISECONDS);
+        return true;
+    }
+
+    /**
+     * Delivers a multicast message, received from the group or sent again over a connection,
+     * or holds it back and asks its sender for the ones missing before it.
+     *
+     * @param message The received message.
+     */
+    void receive(MulticastMessage message) {
+        InetSocketAddress sender = message.getSenderSocketAddress();
+        if (sender.equals(selfAddress.get())) {
+            // Looped back from the group.
+            return;
+        }
+        SenderWindow window = senderWindows.get(sender);
+        if (window != null && window.session == UNKNOWN_SESSION) {
+            // Joined after this client, so none of its messages were missed.
+            window.session = message.getSession();
+        } else if (window == null || window.session != message.getSession()) {
+            // In the room before this client, or restarted. Messages of the sender from before are not waited for.
+            window = new SenderWindow(message.getSession(), message.getSequence());
+            senderWindows.put(sender, window);
+        }
+
+        int sequence = message.getSequence();
+        if (sequence < window.nextSequence || window.heldMessages.containsKey(sequence)) {
+            return;
+        }
+        if (sequence == window.nextSequence) {
+            window.nextSequence++;
+            delivery.accept(message);
+            deliverReady(window);
+            return;
+        }
+
+        window.heldMessages.put(sequence, message);
+        if (sequence - 1 > window.requestedSequence) {
+            int firstMissing = Math.max(window.nextSequence, window.requestedSequence + 1);
+            memberSender.accept(sender, new NakMessage(selfAddress.get(), window.session, firstMissing, sequence - 1));
+            window.requestedSequence = sequence - 1;
+        }
+    }
+
+    /**
+     * Returns whether a NAK is about multicast messages rather than sequenced ones.
+     *
+     * @param message The NAK.
+     * @return True if the NAK should be handled by repairRequested of this lane.
+     */
+    static boolean isMulticastNak(NakMessage message) {
+        return message.getEpoch() < -1;
+    }
+
+    /**
+     * Sends the messages a member asked for again over its connection, and answers that those no longer kept are gone.
+     * An answer of a sender that messages are gone makes them skipped instead.
+     *
+     * @param message The NAK.
+     */
+    void repairRequested(NakMessage message) {
+        InetSocketAddress requester = message.getSenderSocketAddress();
+        if (message.getEpoch() == session) {
+            int lastSequence = Math.min(message.getLastSequence(), sentMessages);
+            int firstKept = Math.max(message.getFirstSequence(), sentMessages - HISTORY_SIZE + 1);
+            if (message.getFirstSequence() < firstKept) {
+                memberSender.accept(requester, new NakMessage(selfAddress.get(), session,
+                        message.getFirstSequence(), Math.min(firstKept - 1, lastSequence)));
+            }
+            for (int sequence = firstKept; sequence <= lastSequence; sequence++) {
+                memberSender.accept(requester, history[sequence % HISTORY_SIZE]);
+            }
+            return;
+        }
+        SenderWindow window = senderWindows.get(requester);
+        if (window != null && window.session == message.getEpoch()
+                && message.getFirstSequence() <= window.nextSequence && message.getLastSequence() >= window.nextSequence) {
+            window.nextSequence = message.getLastSequence() + 1;
+            deliverReady(window);
+        }
+    }
+
+    /**
+     * Notes a member that joined the room after this client, so it waits for its messages from the first one.
+     *
+     * @param member The socket address of the member.
+     */
+    void memberJoined(InetSocketAddress member) {
+        senderWindows.putIfAbsent(member, new SenderWindow(UNKNOWN_SESSION, 1));
+    }
+
+    /**
+     * Stops waiting for messages of a member that left. Its held back messages are delivered in order,
+     * skipping the missing ones.
+     *
+     * @param member The socket address of the member.
+     */
+    void memberLeft(InetSocketAddress member) {
+        SenderWindow window = senderWindows.remove(member);
+        if (window == null) {
+            return;
+        }
+        while (!window.heldMessages.isEmpty()) {
+            window.nextSequence = window.heldMessages.firstKey();
+            deliverReady(window);
+        }
+    }
+
+    /**
+     * Delivers the held back messages of a sender while they are next in sequence, dropping copies of delivered ones.
+     */
+    private void deliverReady(SenderWindow window) {
+        while (!window.heldMessages.isEmpty() && window.heldMessages.firstKey() <= window.nextSequence) {
+            MulticastMessage released = window.heldMessages.pollFirstEntry().getValue();
+            if (released.getSequence() == window.nextSequence) {
+                window.nextSequence++;
+                delivery.accept(released);
+            }
+        }
+    }
+
+    /**
+     * Multicasts the last message once more if nothing was sent after it.
+     */
+    private void resendTail(int sequence) {
+        if (group == null || sequence != sentMessages) {
+            return;
+        }
+        try {
+            group.send(history[sequence % HISTORY_SIZE]);
+        } catch (IOException e) {
+            // Members notice the loss with the next message instead.
+        }
+    }
+
+    /**
+     * What was received of one sender in its current session.
+     */
+    private static final class SenderWindow {
+        private int session;
+        private int nextSequence;
+        private int requestedSequence;
+        private final TreeMap<Integer, MulticastMessage> heldMessages = new TreeMap<>();
+
+        SenderWindow(int session, int firstSequence) {
+            this.session = session;
+            this.nextSequence = firstSequence;
+            this.requestedSequence = firstSequence - 1;
+        }
+    }
+}
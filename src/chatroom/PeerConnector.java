@@ -0,0 +1,159 @@
+package chatroom;
+
+import models.User;
+import sockets.SocketHandler;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Opens connections to members of the room without blocking the event loop, all of them at once,
+ * so connecting to a room takes as long as the slowest member rather than the sum of all of them.
+ *
+ * Every attempt gives up after a timeout. Failed attempts are retried after a growing delay,
+ * and a member that cannot be reached in a few attempts is reported as failed.
+ * Outcomes are handed back on the event loop thread.
+ *
+ * Only used on the event loop thread of the Client.
+ */
+class PeerConnector {
+
+    /**
+     * Time to wait for a connection to be established, in milliseconds.
+     */
+    static final int CONNECT_TIMEOUT = 2000;
+
+    /**
+     * Number of attempts to connect to a member before giving up.
+     */
+    static final int CONNECT_ATTEMPTS = 3;
+
+    /**
+     * Delay before the first retry, in milliseconds. Doubles with every retry.
+     */
+    static final long RETRY_DELAY = 250;
+
+    /**
+     * Opens a connection, blocking until it is established.
+     */
+    interface Opener {
+        /**
+         * Opens a connection to a member.
+         *
+         * @param socketAddress The socket address of the member.
+         * @param connectTimeout Time to wait for the connection to be established, in milliseconds.
+         * @return SocketHandler managing the new connection.
+         * @throws IOException Thrown when the connection cannot be opened, or is not established in time.
+         */
+        SocketHandler open(InetSocketAddress socketAddress, int connectTimeout) throws IOException;
+    }
+
+    /**
+     * Socket addresses of the members being connected to.
+     */
+    private final Set<InetSocketAddress> pendingMembers = new HashSet<>();
+
+    /**
+     * Runs the blocking connection attempts.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * Opens the connections.
+     */
+    private final Opener opener;
+
+    /**
+     * Receives the outcomes and runs the retries.
+     */
+    private final ClientEventLoop eventLoop;
+
+    /**
+     * Creates a connector that is not connecting to anyone yet.
+     *
+     * @param executor Runs the blocking connection attempts.
+     * @param opener Opens a connection to a socket address.
+     * @param eventLoop Event loop of the Client.
+     */
+    PeerConnector(ExecutorService executor, Opener opener, ClientEventLoop eventLoop) {
+        this.executor = executor;
+        this.opener = opener;
+        this.eventLoop = eventLoop;
+    }
+
+    /**
+     * Starts connecting to a member, unless already connecting to it.
+     *
+     * @param member The member to connect to.
+     * @param connected Receives the connection once established, on the event loop thread.
+     * @param failed Receives the error of the last attempt if all attempts failed, on the event loop thread.
+     * @return True if connecting was started, false if a connection to the member was already being opened.
+     */
+    boolean connect(User member, Consumer<SocketHandler> connected, Consumer<IOException> failed) {
+        if (!pendingMembers.add(member.getSocketAddress())) {
+            return false;
+        }
+        attempt(member, 1, connected, failed);
+        return true;
+    }
+
+    /**
+     * Returns whether a connection to a member is being opened.
+     *
+     * @param socketAddress The socket address of the member.
+     * @return True if connecting to the member.
+     */
+    boolean isConnecting(InetSocketAddress socketAddress) {
+        return pendingMembers.contains(socketAddress);
+    }
+
+    /**
+     * Returns the number of members being connected to.
+     *
+     * @return Number of pending connections.
+     */
+    int getPendingCount() {
+        return pendingMembers.size();
+    }
+
+    /**
+     * Stops connecting. Attempts already running finish, but start no others.
+     */
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Runs one connection attempt off the event loop, and retries or reports the outcome on it.
+     */
+    private void attempt(User member, int attempt, Consumer<SocketHandler> connected, Consumer<IOException> failed) {
+        if (executor.isShutdown()) {
+            return;
+        }
+        InetSocketAddress socketAddress = member.getSocketAddress();
+        executor.execute(() -> {
+            try {
+                SocketHandler socketHandler = opener.open(socketAddress, CONNECT_TIMEOUT);
+                eventLoop.execute(() -> {
+                    pendingMembers.remove(socketAddress);
+                    connected.accept(socketHandler);
+                });
+            } catch (IOException e) {
+                eventLoop.execute(() -> {
+                    if (attempt < CONNECT_ATTEMPTS) {
+                        eventLoop.schedule(() -> attempt(member, attempt + 1, connected, failed),
+                                RETRY_DELAY << (attempt - 1), TimeUnit.MILLISECONDS);
+                    } else {
+                        pendingMembers.remove(socketAddress);
+                        failed.accept(e);
+                    }
+                });
+            }
+        });
+    }
+}
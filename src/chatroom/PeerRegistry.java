@@ -0,0 +1,302 @@
+package chatroom;
+
+import models.User;
+import sockets.SocketHandler;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Indexes the open connections of a Client, so peers are found in constant time
+ * by SocketHandler, by remote socket address, or by the listening address of their User.
+ *
+ * Every open connection is indexed by its remote socket address, including connections to the server manager
+ * and connections whose User is not known yet. Connections become room peers once their User is known.
+ * Lookups read concurrent maps without locking. Changes take a lock so the indexes stay consistent
+ * with each other, and publish a new array of peers, so a broadcast iterates a snapshot that later
+ * changes cannot disturb.
+ *
+ * Each pair of peers keeps one connection. When both connect to each other, e.g. because both picked
+ * the other as a neighbor at once, the connection opened by the peer with the lower socket address is kept.
+ * Both ends break the tie the same way without talking about it. The other connection stops being used
+ * for sending, and the peer that opened it closes it once what was queued on it is written, while the
+ * other end keeps reading from it until then.
+ */
+class PeerRegistry {
+
+    /**
+     * Empty array of peers.
+     */
+    private static final SocketHandler[] NO_PEERS = new SocketHandler[0];
+
+    /**
+     * Maps the SocketHandlers of room peers to their Users.
+     */
+    private final Map<SocketHandler, User> usersByHandler = new ConcurrentHashMap<>();
+
+    /**
+     * Maps the listening socket addresses of room peers to their SocketHandlers.
+     */
+    private final Map<InetSocketAddress, SocketHandler> handlersByUserAddress = new ConcurrentHashMap<>();
+
+    /**
+     * Maps the remote socket addresses of all open connections to their SocketHandlers.
+     */
+    private final Map<InetSocketAddress, SocketHandler> handlersByRemoteAddress = new ConcurrentHashMap<>();
+
+    /**
+     * Maps SocketHandlers to the remote socket address they were indexed with.
+     */
+    private final Map<SocketHandler, InetSocketAddress> remoteAddressesByHandler = new ConcurrentHashMap<>();
+
+    /**
+     * Connections this client opened, as opposed to accepted ones.
+     */
+    private final Set<SocketHandler> openedConnections = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Maps connections replaced by another connection to the same peer to the User of the peer.
+     * They are only read from until closed.
+     */
+    private final Map<SocketHandler, User> duplicateUsers = new ConcurrentHashMap<>();
+
+    /**
+     * SocketHandlers of room peers, replaced rather than modified.
+     */
+    private volatile SocketHandler[] peers = NO_PEERS;
+
+    /**
+     * Guards changes to the indexes.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Listening socket address of this client, which decides which of two connections to a peer is kept.
+     */
+    private final Supplier<InetSocketAddress> selfAddress;
+
+    /**
+     * Creates an empty registry.
+     *
+     * @param selfAddress Returns the listening socket address of this client.
+     */
+    PeerRegistry(Supplier<InetSocketAddress> selfAddress) {
+        this.selfAddress = selfAddress;
+    }
+
+    /**
+     * Indexes an open connection by its remote socket address.
+     *
+     * @param socketHandler The SocketHandler of the connection.
+     */
+    void addConnection(SocketHandler socketHandler) {
+        InetSocketAddress remoteSocketAddress = socketHandler.getRemoteSocketAddress();
+        if (remoteSocketAddress == null) {
+            return;
+        }
+        lock.lock();
+        try {
+            if (remoteAddressesByHandler.putIfAbsent(socketHandler, remoteSocketAddress) == null) {
+                handlersByRemoteAddress.put(remoteSocketAddress, socketHandler);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Indexes a connection this client opened by its remote socket address.
+     *
+     * @param socketHandler The SocketHandler of the connection.
+     */
+    void addOpenedConnection(SocketHandler socketHandler) {
+        openedConnections.add(socketHandler);
+        addConnection(socketHandler);
+    }
+
+    /**
+     * Makes a connection a room peer of the given User, indexing the connection if it was not yet.
+     * If the peer already has another open connection, only the one that wins the tie-break stays the peer connection.
+     *
+     * @param socketHandler The SocketHandler of the connection.
+     * @param user The User on the other end.
+     * @return The duplicate connection to the peer if this client opened it and must close it, null otherwise.
+     */
+    SocketHandler putPeer(SocketHandler socketHandler, User user) {
+        addConnection(socketHandler);
+        lock.lock();
+        try {
+            removeClosedDuplicates();
+            SocketHandler existingHandler = handlersByUserAddress.get(user.getSocketAddress());
+            SocketHandler duplicateHandler = null;
+            if (existingHandler != null && existingHandler != socketHandler && existingHandler.isConnectionClosed()) {
+                // The peer is still there over the new connection, so the closed one goes without a word.
+                remove(existingHandler);
+            } else if (existingHandler != null && existingHandler != socketHandler) {
+                if (!isKept(socketHandler, user)) {
+                    duplicateUsers.put(socketHandler, user);
+                    return openedConnections.contains(socketHandler) ? socketHandler : null;
+                }
+                removePeer(existingHandler);
+                duplicateUsers.put(existingHandler, user);
+                duplicateHandler = openedConnections.contains(existingHandler) ? existingHandler : null;
+            }
+            duplicateUsers.remove(socketHandler);
+            User previousUser = usersByHandler.put(socketHandler, user);
+            if (previousUser != null) {
+                handlersByUserAddress.remove(previousUser.getSocketAddress(), socketHandler);
+            }
+            handlersByUserAddress.put(user.getSocketAddress(), socketHandler);
+            if (previousUser == null) {
+                SocketHandler[] newPeers = Arrays.copyOf(peers, peers.length + 1);
+                newPeers[peers.length] = socketHandler;
+                peers = newPeers;
+            }
+            return duplicateHandler;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes a connection from every index.
+     *
+     * @param socketHandler The SocketHandler of the connection.
+     * @return The User of the removed peer, or null if the connection was not a room peer.
+     */
+    User remove(SocketHandler socketHandler) {
+        lock.lock();
+        try {
+            InetSocketAddress remoteSocketAddress = remoteAddressesByHandler.remove(socketHandler);
+            if (remoteSocketAddress != null) {
+                handlersByRemoteAddress.remove(remoteSocketAddress, socketHandler);
+            }
+            openedConnections.remove(socketHandler);
+            duplicateUsers.remove(socketHandler);
+            return removePeer(socketHandler);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the User of a room peer, or of a peer whose duplicate connection it is.
+     *
+     * @param socketHandler The SocketHandler of the peer.
+     * @return The User, or null if the connection is not to a room peer.
+     */
+    User getUser(SocketHandler socketHandler) {
+        User user = usersByHandler.get(socketHandler);
+        return user != null ? user : duplicateUsers.get(socketHandler);
+    }
+
+    /**
+     * Finds the connection to a socket address, which is either the listening address of a room peer
+     * or the remote address of a connection. Closed connections are returned as well, so the caller can
+     * tell a room peer that is gone from one that was never connected.
+     *
+     * @param socketAddress The socket address to look up.
+     * @return The SocketHandler, or null if there is no connection to the address.
+     */
+    SocketHandler find(InetSocketAddress socketAddress) {
+        SocketHandler socketHandler = handlersByUserAddress.get(socketAddress);
+        if (socketHandler == null) {
+            socketHandler = handlersByRemoteAddress.get(socketAddress);
+        }
+        return socketHandler;
+    }
+
+    /**
+     * Returns the SocketHandlers of room peers at the time of the call.
+     *
+     * @return Snapshot of the room peers. It must not be modified.
+     */
+    SocketHandler[] getPeers() {
+        return peers;
+    }
+
+    /**
+     * Returns the Users of room peers.
+     *
+     * @return List of Users.
+     */
+    List<User> getUsers() {
+        return new ArrayList<>(usersByHandler.values());
+    }
+
+    /**
+     * Returns the number of room peers.
+     *
+     * @return Number of room peers.
+     */
+    int size() {
+        return peers.length;
+    }
+
+    /**
+     * Returns whether a connection to a peer is kept over another one: it is if it was opened
+     * by whichever of this client and the peer has the lower socket address.
+     * Must be called while holding the lock.
+     */
+    private boolean isKept(SocketHandler socketHandler, User user) {
+        boolean selfIsLower = compare(selfAddress.get(), user.getSocketAddress()) < 0;
+        return openedConnections.contains(socketHandler) == selfIsLower;
+    }
+
+    /**
+     * Stops a connection from being a room peer. Must be called while holding the lock.
+     *
+     * @return The User of the peer, or null if the connection was not a room peer.
+     */
+    private User removePeer(SocketHandler socketHandler) {
+        User user = usersByHandler.remove(socketHandler);
+        if (user != null) {
+            handlersByUserAddress.remove(user.getSocketAddress(), socketHandler);
+            SocketHandler[] newPeers = new SocketHandler[peers.length - 1];
+            int i = 0;
+            for (SocketHandler peer : peers) {
+                if (peer != socketHandler) {
+                    newPeers[i++] = peer;
+                }
+            }
+            peers = newPeers;
+        }
+        return user;
+    }
+
+    /**
+     * Forgets duplicate connections the peer has closed. Must be called while holding the lock.
+     */
+    private void removeClosedDuplicates() {
+        Iterator<SocketHandler> duplicates = duplicateUsers.keySet().iterator();
+        while (duplicates.hasNext()) {
+            SocketHandler duplicate = duplicates.next();
+            if (duplicate.isConnectionClosed()) {
+                duplicates.remove();
+                InetSocketAddress remoteSocketAddress = remoteAddressesByHandler.remove(duplicate);
+                if (remoteSocketAddress != null) {
+                    handlersByRemoteAddress.remove(remoteSocketAddress, duplicate);
+                }
+                openedConnections.remove(duplicate);
+            }
+        }
+    }
+
+    /**
+     * Orders socket addresses by IP address, byte by byte, then by port.
+     */
+    static int compare(InetSocketAddress a, InetSocketAddress b) {
+        byte[] addressA = a.getAddress().getAddress();
+        byte[] addressB = b.getAddress().getAddress();
+        int comparison = Arrays.compareUnsigned(addressA, addressB);
+        return comparison != 0 ? comparison : Integer.compare(a.getPort(), b.getPort());
+    }
+}
@@ -0,0 +1,168 @@
+package chatroom;
+
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Suspects peers that stopped sending, following the phi accrual failure detector.
+ *
+ * Rather than giving up on a peer after a fixed timeout, the detector learns how far apart the messages of
+ * every peer arrive, and computes phi: how unlikely it is, given those intervals, that nothing arrived for as long
+ * as it has. A phi of 1 means a chance of 10% of being wrong in suspecting the peer, a phi of 2 a chance of 1%,
+ * and so on. A peer is suspected once phi reaches the threshold. Peers whose messages arrive irregularly,
+ * e.g. because of pauses for garbage collection, are given more time, and regular ones less.
+ *
+ * One missed heartbeat is always tolerated, and the standard deviation of the intervals is kept at a quarter
+ * of the heartbeat interval at least, so a few very regular heartbeats do not make the detector nervous.
+ *
+ * Only used on the event loop thread of the Client.
+ */
+class PhiAccrualFailureDetector {
+
+    /**
+     * Number of recent intervals the arrival times of a peer are estimated from.
+     */
+    static final int WINDOW_SIZE = 100;
+
+    /**
+     * Phi at which a peer is suspected.
+     */
+    private final double threshold;
+
+    /**
+     * Expected time between heartbeats, in nanoseconds.
+     */
+    private final long heartbeatInterval;
+
+    /**
+     * Smallest standard deviation of the intervals, in nanoseconds.
+     */
+    private final double minStdDeviation;
+
+    /**
+     * Arrival times of the monitored peers.
+     */
+    private final Map<InetSocketAddress, ArrivalWindow> arrivalWindows = new HashMap<>();
+
+    /**
+     * Creates a detector without monitored peers.
+     *
+     * @param threshold Phi at which a peer is suspected.
+     * @param heartbeatInterval Expected time between heartbeats, in nanoseconds.
+     */
+    PhiAccrualFailureDetector(double threshold, long heartbeatInterval) {
+        this.threshold = threshold;
+        this.heartbeatInterval = heartbeatInterval;
+        this.minStdDeviation = heartbeatInterval / 4.0;
+    }
+
+    /**
+     * Records something that arrived from a peer, which starts to be monitored if it was not.
+     *
+     * @param peer The socket address of the peer.
+     * @param now The System.nanoTime() of the arrival.
+     */
+    void heartbeat(InetSocketAddress peer, long now) {
+        ArrivalWindow window = arrivalWindows.get(peer);
+        if (window == null) {
+            window = new ArrivalWindow();
+            // Pretend the heartbeats so far were a little irregular, until real intervals are known.
+            window.add(heartbeatInterval - heartbeatInterval / 4);
+            window.add(heartbeatInterval + heartbeatInterval / 4);
+            arrivalWindows.put(peer, window);
+        } else {
+            window.add(now - window.lastArrival);
+        }
+        window.lastArrival = now;
+    }
+
+    /**
+     * Returns whether a peer is monitored, i.e. has sent a heartbeat since it was last removed.
+     *
+     * @param peer The socket address of the peer.
+     * @return True if the peer is monitored.
+     */
+    boolean isMonitored(InetSocketAddress peer) {
+        return arrivalWindows.containsKey(peer);
+    }
+
+    /**
+     * Returns the suspicion level of a peer.
+     *
+     * @param peer The socket address of the peer.
+     * @param now The current System.nanoTime().
+     * @return Phi, or 0 if the peer is not monitored.
+     */
+    double phi(InetSocketAddress peer, long now) {
+        ArrivalWindow window = arrivalWindows.get(peer);
+        if (window == null) {
+            return 0;
+        }
+        double mean = window.mean() + heartbeatInterval;
+        double stdDeviation = Math.max(window.stdDeviation(), minStdDeviation);
+        long sinceLastArrival = now - window.lastArrival;
+        // Logistic approximation of the cumulative normal distribution.
+        double y = (sinceLastArrival - mean) / stdDeviation;
+        double e = Math.exp(-y * (1.5976 + 0.070566 * y * y));
+        if (sinceLastArrival > mean) {
+            return -Math.log10(e / (1.0 + e));
+        }
+        return -Math.log10(1.0 - 1.0 / (1.0 + e));
+    }
+
+    /**
+     * Returns whether a peer is suspected to have failed.
+     *
+     * @param peer The socket address of the peer.
+     * @param now The current System.nanoTime().
+     * @return True if phi of the peer reached the threshold, false if it did not or the peer is not monitored.
+     */
+    boolean isSuspected(InetSocketAddress peer, long now) {
+        return phi(peer, now) >= threshold;
+    }
+
+    /**
+     * Stops monitoring a peer, forgetting its arrival times.
+     *
+     * @param peer The socket address of the peer.
+     */
+    void remove(InetSocketAddress peer) {
+        arrivalWindows.remove(peer);
+    }
+
+    /**
+     * Recent intervals between arrivals of one peer, with their running sums.
+     */
+    private static final class ArrivalWindow {
+        private final long[] intervals = new long[WINDOW_SIZE];
+        private int count;
+        private int next;
+        private double sum;
+        private double sumOfSquares;
+        private long lastArrival;
+
+        void add(long interval) {
+            if (count == WINDOW_SIZE) {
+                long dropped = intervals[next];
+                sum -= dropped;
+                sumOfSquares -= (double) dropped * dropped;
+            } else {
+                count++;
+            }
+            intervals[next] = interval;
+            next = (next + 1) % WINDOW_SIZE;
+            sum += interval;
+            sumOfSquares += (double) interval * interval;
+        }
+
+        double mean() {
+            return sum / count;
+        }
+
+        double stdDeviation() {
+            double mean = mean();
+            return Math.sqrt(Math.max(0, sumOfSquares / count - mean * mean));
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package chatroom;
+
+import models.User;
+import models.messages.Message;
+
+import java.net.InetSocketAddress;
+
+/**
+ * Sends messages to the room of a Client on behalf of its message ordering.
+ * Messages are encrypted for the room. Only used on the event loop thread of the Client.
+ */
+interface RoomLink {
+
+    /**
+     * Sends a message to every other member of the room.
+     *
+     * @param message The message to send.
+     */
+    void sendToAll(Message message);
+
+    /**
+     * Sends a message to the host of the room.
+     *
+     * @param message The message to send.
+     */
+    void sendToHost(Message message);
+
+    /**
+     * Sends a message to one member of the room.
+     *
+     * @param userSocketAddress The socket address of the member.
+     * @param message The message to send.
+     */
+    void sendTo(InetSocketAddress userSocketAddress, Message message);
+
+    /**
+     * Returns whether this client hosts the room.
+     *
+     * @return True if this client is the host.
+     */
+    boolean isHost();
+
+    /**
+     * Returns the user of this client.
+     *
+     * @return The user.
+     */
+    User getSelf();
+}
@@ -0,0 +1,365 @@
+package chatroom;
+
+import models.SenderMessageTuple;
+import models.User;
+import models.messages.ChatMessage;
+import models.messages.NakMessage;
+import models.messages.OrderStateMessage;
+import models.messages.SequencedChatMessage;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.BiConsumer;
+
+/**
+ * Delivers chat messages in one order agreed by the whole room, set by the host.
+ *
+ * Members submit their chat messages to the host, numbering them as they go. The host gives every submitted
+ * message the next room sequence number, delivers it and sends it to every member, who deliver strictly in
+ * sequence. A member that sees a sequence number skip ahead holds the later messages back and asks the host
+ * to send the missing ones again. The host keeps its most recent messages for that, and answers that older
+ * ones are gone so members skip them instead of waiting.
+ *
+ * A client that joins a room takes the epoch, the next sequence number and the delivered submissions from
+ * the host, so it follows the order even if nothing was sent since.
+ *
+ * A host that takes over after an election starts a new epoch, numbering from 1 again. It announces the epoch
+ * in its LeaderMessage and every member switches to it, so its messages are never mistaken for ones of a
+ * replaced host. Messages of the previous epoch still held back are delivered in order, skipping ones that
+ * never arrived, and members submit again the messages that were not sequenced back to them. The submission
+ * numbers make sure a message sequenced in both epochs is delivered once.
+ */
+class SequencedOrdering implements MessageOrdering {
+
+    /**
+     * Number of recent sequenced messages the host can send again.
+     */
+    static final int HISTORY_SIZE = 1024;
+
+    /**
+     * Epoch of the host the sequence numbers belong to, -1 until synced with the room.
+     */
+    private int epoch = 0;
+
+    /**
+     * Sequence number of the next message to deliver, -1 until synced with the room.
+     */
+    private int nextSequence = 1;
+
+    /**
+     * Highest sequence number already asked to be sent again in this epoch.
+     */
+    private int requestedSequence;
+
+    /**
+     * Messages that arrived ahead of the next sequence number.
+     */
+    private final PriorityQueue<SenderMessageTuple> heldMessages = new PriorityQueue<>();
+
+    /**
+     * Number of messages this client has submitted.
+     */
+    private int submittedMessages;
+
+    /**
+     * Messages this client submitted that were not sequenced back to it yet, in submission order.
+     */
+    private final ArrayDeque<ChatMessage> pendingSubmissions = new ArrayDeque<>();
+
+    /**
+     * Highest submission number delivered of each member.
+     */
+    private final Map<InetSocketAddress, Integer> deliveredSubmissions = new HashMap<>();
+
+    /**
+     * Last sequence number given out while hosting.
+     */
+    private int assignedSequence;
+
+    /**
+     * Recent messages sequenced while hosting, indexed by sequence number.
+     */
+    private final SequencedChatMessage[] history = new SequencedChatMessage[HISTORY_SIZE];
+
+    /**
+     * Receives delivered messages.
+     */
+    private final BiConsumer<User, ChatMessage> delivery;
+
+    /**
+     * Sends messages to the room.
+     */
+    private final RoomLink room;
+
+    private final HoldbackMetrics metrics = new HoldbackMetrics();
+
+    /**
+     * Creates a host-sequenced ordering.
+     *
+     * @param delivery Receives delivered messages with their writer.
+     * @param room Sends messages to the room.
+     */
+    SequencedOrdering(BiConsumer<User, ChatMessage> delivery, RoomLink room) {
+        this.delivery = delivery;
+        this.room = room;
+    }
+
+    /**
+     * Creates the message unnumbered. It is numbered when sent, so submissions are numbered in sending order.
+     */
+    @Override
+    public ChatMessage stamp(InetSocketAddress senderSocketAddress, String text) {
+        return new ChatMessage(senderSocketAddress, 0, text);
+    }
+
+    /**
+     * Submits the message to the host, or sequences it right away when hosting.
+     */
+    @Override
+    public void send(ChatMessage message) {
+        ChatMessage submission = new ChatMessage(message.getSenderSocketAddress(), ++submittedMessages, message.getMessage());
+        pendingSubmissions.add(submission);
+        if (room.isHost()) {
+            sequence(room.getSelf(), submission);
+        } else {
+            room.sendToHost(submission);
+        }
+    }
+
+    @Override
+    public void receive(User sender, ChatMessage message) {
+        if (!(message instanceof SequencedChatMessage)) {
+            if (room.isHost()) {
+                // A submission, possibly from a member whose hello was not handled yet.
+                sequence(sender != null ? sender : new User("", message.getSenderSocketAddress()), message);
+            } else {
+                // A submission meant for a previous host, or a member not sequencing. There is no order to keep.
+                metrics.messageDelivered();
+                delivery.accept(sender, message);
+            }
+            return;
+        }
+        SequencedChatMessage sequencedMessage = (SequencedChatMessage) message;
+        if (sequencedMessage.getEpoch() < epoch) {
+            // From a host that was replaced.
+            return;
+        }
+        if (sequencedMessage.getEpoch() > epoch || nextSequence == -1) {
+            startEpoch(sequencedMessage.getEpoch(), nextSequence == -1 ? sequencedMessage.getSequence() : 1);
+        }
+
+        int sequence = sequencedMessage.getSequence();
+        if (sequence < nextSequence) {
+            // Already delivered, e.g. sent again after a repair request crossed the original.
+            return;
+        }
+        if (sequence == nextSequence) {
+            deliver(sequencedMessage);
+            metrics.messageDelivered();
+            deliverReady();
+            return;
+        }
+
+        heldMessages.offer(new SenderMessageTuple(sender, sequencedMessage));
+        metrics.messageHeld();
+        if (sequence - 1 > requestedSequence) {
+            int firstMissing = Math.max(nextSequence, requestedSequence + 1);
+            room.sendToHost(new NakMessage(room.getSelf().getSocketAddress(), epoch, firstMissing, sequence - 1));
+            requestedSequence = sequence - 1;
+        }
+    }
+
+    /**
+     * As the host, sends the requested messages again and answers that those no longer kept are gone.
+     * As a member, skips the messages the host answered are gone.
+     */
+    @Override
+    public void repairRequested(User sender, NakMessage message) {
+        if (message.getEpoch() != epoch) {
+            return;
+        }
+        if (room.isHost()) {
+            InetSocketAddress requester = sender != null ? sender.getSocketAddress() : message.getSenderSocketAddress();
+            int lastSequence = Math.min(message.getLastSequence(), assignedSequence);
+            int firstKept = Math.max(message.getFirstSequence(), assignedSequence - HISTORY_SIZE + 1);
+            if (message.getFirstSequence() < firstKept) {
+                room.sendTo(requester, new NakMessage(room.getSelf().getSocketAddress(), epoch,
+                        message.getFirstSequence(), Math.min(firstKept - 1, lastSequence)));
+            }
+            for (int sequence = firstKept; sequence <= lastSequence; sequence++) {
+                room.sendTo(requester, history[sequence % HISTORY_SIZE]);
+            }
+        } else if (message.getLastSequence() >= nextSequence && message.getFirstSequence() <= nextSequence) {
+            nextSequence = message.getLastSequence() + 1;
+            deliverReady();
+        }
+    }
+
+    /**
+     * Delivers held back messages while they are next in sequence, dropping copies of delivered ones.
+     */
+    @Override
+    public void deliverReady() {
+        while (!heldMessages.isEmpty() && heldMessages.peek().message.getTimestamp() <= nextSequence) {
+            SenderMessageTuple released = heldMessages.poll();
+            if (released.message.getTimestamp() < nextSequence) {
+                metrics.messageDiscarded();
+                continue;
+            }
+            deliver((SequencedChatMessage) released.message);
+            metrics.messageReleased(released.queuedTime);
+        }
+    }
+
+    /**
+     * Prepares the epoch and sequence number to be synced by the host, or by the first message if that comes first.
+     */
+    @Override
+    public void joinRoom() {
+        discardHeldMessages();
+        epoch = -1;
+        nextSequence = -1;
+        requestedSequence = 0;
+        deliveredSubmissions.clear();
+    }
+
+    /**
+     * Returns the epoch, the next sequence number and the highest delivered submission of every member.
+     */
+    @Override
+    public OrderStateMessage getState() {
+        return new OrderStateMessage(room.getSelf().getSocketAddress(), epoch, nextSequence, new HashMap<>(deliveredSubmissions));
+    }
+
+    /**
+     * Continues numbering from where the host is, and skips submissions it delivered already.
+     */
+    @Override
+    public void sync(OrderStateMessage message) {
+        if (nextSequence == -1 || message.getEpoch() > epoch) {
+            startEpoch(message.getEpoch(), message.getNextSequence());
+        }
+        InetSocketAddress self = room.getSelf().getSocketAddress();
+        for (Map.Entry<InetSocketAddress, Integer> delivered : message.getDeliveredMessages().entrySet()) {
+            if (!delivered.getKey().equals(self)) {
+                deliveredSubmissions.merge(delivered.getKey(), delivered.getValue(), Math::max);
+            }
+        }
+        deliverReady();
+    }
+
+    @Override
+    public int getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * Delivers what is left of the previous epoch and moves to the epoch of the new host. Then either sequences
+     * unsequenced messages again as the new host or submits them again to the new host.
+     */
+    @Override
+    public void hostChanged(int newEpoch) {
+        deliverHeldMessages();
+        List<ChatMessage> resubmissions = new ArrayList<>(pendingSubmissions);
+        if (room.isHost()) {
+            pendingSubmissions.clear();
+            startEpoch(newEpoch, 1);
+            assignedSequence = 0;
+            for (ChatMessage submission : resubmissions) {
+                pendingSubmissions.add(submission);
+                sequence(room.getSelf(), submission);
+            }
+        } else {
+            if (newEpoch != epoch) {
+                // Unless messages of the new host arrived before its announcement.
+                startEpoch(newEpoch, 1);
+            }
+            for (ChatMessage submission : resubmissions) {
+                room.sendToHost(submission);
+            }
+        }
+    }
+
+    @Override
+    public void memberJoined(User user) {
+        // Members are ordered by the host.
+    }
+
+    @Override
+    public void memberLeft(User user) {
+        // Members are ordered by the host, and a host leaving is handled by hostChanged.
+    }
+
+    @Override
+    public HoldbackMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Gives a submitted message the next sequence number, sends it to every member and delivers it.
+     */
+    private void sequence(User origin, ChatMessage submission) {
+        SequencedChatMessage sequencedMessage = new SequencedChatMessage(room.getSelf().getSocketAddress(), epoch,
+                ++assignedSequence, origin, submission.getTimestamp(), submission.getMessage());
+        history[assignedSequence % HISTORY_SIZE] = sequencedMessage;
+        room.sendToAll(sequencedMessage);
+        deliver(sequencedMessage);
+        metrics.messageDelivered();
+    }
+
+    /**
+     * Moves past a message, handing it over unless its writer's submission was delivered already.
+     * Messages written by this client are not handed over, they only stop being pending.
+     */
+    private void deliver(SequencedChatMessage message) {
+        nextSequence = message.getSequence() + 1;
+        User origin = message.getOrigin();
+        Integer deliveredSubmission = deliveredSubmissions.get(origin.getSocketAddress());
+        if (deliveredSubmission != null && message.getSubmission() <= deliveredSubmission) {
+            return;
+        }
+        deliveredSubmissions.put(origin.getSocketAddress(), message.getSubmission());
+        if (origin.equals(room.getSelf())) {
+            while (!pendingSubmissions.isEmpty() && pendingSubmissions.peek().getTimestamp() <= message.getSubmission()) {
+                pendingSubmissions.poll();
+            }
+            return;
+        }
+        delivery.accept(origin, message);
+    }
+
+    /**
+     * Starts numbering a new epoch from a sequence number.
+     */
+    private void startEpoch(int newEpoch, int firstSequence) {
+        deliverHeldMessages();
+        epoch = newEpoch;
+        nextSequence = firstSequence;
+        requestedSequence = firstSequence - 1;
+    }
+
+    /**
+     * Delivers all held back messages in sequence order, skipping missing ones. Used when they cannot be repaired.
+     */
+    private void deliverHeldMessages() {
+        while (!heldMessages.isEmpty()) {
+            nextSequence = Math.max(nextSequence, heldMessages.peek().message.getTimestamp());
+            deliverReady();
+        }
+    }
+
+    /**
+     * Discards all held back messages.
+     */
+    private void discardHeldMessages() {
+        for (int i = heldMessages.size(); i > 0; i--) {
+            metrics.messageDiscarded();
+        }
+        heldMessages.clear();
+    }
+}
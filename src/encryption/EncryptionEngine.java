@@ -4,22 +4,43 @@ import javax.crypto.KeyGenerator;
 import javax.crypto.Cipher;
 import java.security.SecureRandom;
 import java.security.Key;
-import javax.crypto.SecretKey;
 import javax.crypto.spec.SecretKeySpec;
-import javax.crypto.spec.IvParameterSpec;
-import javax.crypto.IllegalBlockSizeException;
-import javax.crypto.BadPaddingException;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.AEADBadTagException;
 import java.security.GeneralSecurityException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
 
 
 /**
  * This class sets up and operates a stream that
  * takes in bytes and returns them in and AES encrypted form
  * this class sets up a key that cannot be changed afterwards.
+ *
+ * Bytes are sealed with AES-GCM, which authenticates them as well as hiding them, so tampered bytes
+ * or bytes sealed with another key are rejected instead of decrypting to garbage.
+ * Sealed bytes are laid out as <nonce><ciphertext><tag>. Every message gets a fresh 12 byte nonce
+ * made of a random 8 byte prefix and a 4 byte counter, so no nonce repeats under a key. The prefix
+ * is random because everyone in a room derives the same key, and it is picked again whenever the
+ * counter wraps around.
+ *
+ * Ciphers are not thread-safe, so every operation borrows a cipher from a pool and returns it
+ * afterwards. Pooled ciphers keep their expanded key, so only the nonce changes per message.
+ * A pool rather than a ThreadLocal keeps the number of ciphers bounded by the number of concurrent
+ * operations, which matters when callers run on virtual threads.
  */
 public class EncryptionEngine {
 
+    /*
+     * Maximum number of idle ciphers kept per pool
+     */
+    private static final int MAX_POOLED_CIPHERS = 64;
+
     /*
      * Holds the size of the keys to use
      */
@@ -28,17 +49,22 @@ public class EncryptionEngine {
     /*
      * Holds the operation mode of the ciphers
      */
-    public static final String ALGORITHM = "AES/CBC/PKCS5Padding";
+    public static final String ALGORITHM = "AES/GCM/NoPadding";
+
+    /*
+     * Number of bytes in the nonce that starts sealed bytes
+     */
+    public static final int NONCE_SIZE = 12;
 
     /*
-     * The bytes of the initialization vector of the encryption
+     * Number of bytes in the authentication tag that ends sealed bytes
      */
-    protected static final byte[] ivBytes = {10, 10, 19, 94, 3, 56, 19, 120, 20, 1, 77, 69, 9, 14, 99, 111};
+    public static final int TAG_SIZE = 16;
 
     /*
-     * The initialization vector of the encryption
+     * Number of bytes sealing adds to the plaintext
      */
-    protected static final IvParameterSpec iv = new IvParameterSpec(ivBytes);
+    public static final int OVERHEAD = NONCE_SIZE + TAG_SIZE;
 
     /*
      * Key to encrypt/decrypt with
@@ -46,19 +72,39 @@ public class EncryptionEngine {
     protected Key key;
 
     /*
-     * The cipher to encrypt with
+     * Source of nonce prefixes
+     */
+    private final SecureRandom nonceRandom = new SecureRandom();
+
+    /*
+     * Guards the nonce prefix and counter
+     */
+    private final ReentrantLock nonceLock = new ReentrantLock();
+
+    /*
+     * Random first 8 bytes of the nonce, picked again whenever the counter wraps
      */
-    protected Cipher encryptionCipher;
+    private long noncePrefix;
 
     /*
-     * The cipher to decrypt with
+     * Last 4 bytes of the next nonce
      */
-    protected Cipher decryptionCipher;
+    private int nonceCounter;
+
+    /*
+     * Idle ciphers to encrypt with the key
+     */
+    private final CipherPool encryptionCiphers = new CipherPool(Cipher.ENCRYPT_MODE);
+
+    /*
+     * Idle ciphers to decrypt with the key
+     */
+    private final CipherPool decryptionCiphers = new CipherPool(Cipher.DECRYPT_MODE);
 
     /**
      * Creates a new EncryptionEngine. A key is created, seeded with the given userKey.
      * Then an encryption and decryption cipher are set up with that key and the given 
-     * mode of operation.
+     * mode of operation, so that an unusable key or mode fails here rather than on first use.
      * @param userKey The string to seed the pseudorandom key generator with
      * @throws GeneralSecurityException if a fatal error occurs
      * @throws IOException if a fatal error occurs
@@ -70,20 +116,34 @@ public class EncryptionEngine {
         KeyGenerator keygen = KeyGenerator.getInstance("AES"); //Make a generator of AES keys
         keygen.init(KEY_SIZE, rng); //Set key size and source of randomness to the key
         key = new SecretKeySpec(keygen.generateKey().getEncoded(), "AES");
-        encryptionCipher = Cipher.getInstance(ALGORITHM);
-        encryptionCipher.init(Cipher.ENCRYPT_MODE, key, iv);
-        decryptionCipher = Cipher.getInstance(ALGORITHM);
-        decryptionCipher.init(Cipher.DECRYPT_MODE, key, iv);
+        encryptionCiphers.release(encryptionCiphers.acquire());
+        decryptionCiphers.release(decryptionCiphers.acquire());
     }
 
     /**
      * Takes in a byte array and returns it after encrypting it with the set key
      * @param plaintext the bytes to encrypt
-     * @return byte[] the bytes after encryption
+     * @return byte[] the sealed bytes, or an empty array if encryption failed
      */
     public byte[] encrypt(byte[] plaintext){
+        return encrypt(ByteBuffer.wrap(plaintext));
+    }
+
+    /**
+     * Encrypts the remaining bytes of the buffer with the set key, consuming them.
+     * The ciphertext and tag are written straight after the nonce in the returned array.
+     * @param plaintext the buffer holding the bytes to encrypt
+     * @return byte[] the sealed bytes, or an empty array if encryption failed
+     */
+    public byte[] encrypt(ByteBuffer plaintext){
+        byte[] sealed = new byte[OVERHEAD + plaintext.remaining()];
+        nextNonce(sealed);
         try{
-            return encryptionCipher.doFinal(plaintext);
+            Cipher cipher = encryptionCiphers.acquire();
+            cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_SIZE * Byte.SIZE, sealed, 0, NONCE_SIZE));
+            cipher.doFinal(plaintext, ByteBuffer.wrap(sealed, NONCE_SIZE, sealed.length - NONCE_SIZE));
+            encryptionCiphers.release(cipher);
+            return sealed;
         } catch (GeneralSecurityException gse){
             gse.printStackTrace();
             return new byte[0];
@@ -92,19 +152,117 @@ public class EncryptionEngine {
 
     /**
      * Takes in an encrypted byte array and returns it after decrypting it with the set key
-     * @param plaintext the bytes to decrypt
-     * @return byte[] the bytes after decryption
+     * @param ciphertext the sealed bytes to decrypt
+     * @return byte[] the bytes after decryption, or an empty array if they were not sealed with the set key
      */
     public byte[] decrypt(byte[] ciphertext){
-        try {
-            return decryptionCipher.doFinal(ciphertext);
-        } catch (IllegalBlockSizeException ibse){
-            ibse.printStackTrace();
+        return decrypt(ByteBuffer.wrap(ciphertext));
+    }
+
+    /**
+     * Decrypts the remaining sealed bytes of the buffer with the set key, consuming them.
+     * Reading straight from a received frame avoids copying the ciphertext out first.
+     * Bytes sealed with another key fail authentication, which is expected when looking for a room,
+     * so that failure is not reported.
+     * @param ciphertext the buffer holding the sealed bytes to decrypt
+     * @return byte[] the bytes after decryption, or an empty array if they were not sealed with the set key
+     */
+    public byte[] decrypt(ByteBuffer ciphertext){
+        if (ciphertext.remaining() < OVERHEAD) {
             return new byte[0];
-        } catch (BadPaddingException bpe){
-            bpe.printStackTrace();
+        }
+        byte[] nonce = new byte[NONCE_SIZE];
+        ciphertext.get(nonce);
+        try {
+            Cipher cipher = decryptionCiphers.acquire();
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_SIZE * Byte.SIZE, nonce));
+            byte[] plaintext = new byte[ciphertext.remaining() - TAG_SIZE];
+            try {
+                cipher.doFinal(ciphertext, ByteBuffer.wrap(plaintext));
+            } catch (AEADBadTagException abte){
+                // The cipher resets after a failed tag check, so it can still be reused.
+                decryptionCiphers.release(cipher);
+                return new byte[0];
+            }
+            decryptionCiphers.release(cipher);
+            return plaintext;
+        } catch (GeneralSecurityException gse){
+            gse.printStackTrace();
             return new byte[0];
         }
     }
- 
+
+    /**
+     * Writes the next nonce to the start of the array.
+     * @param sealed the array to write the nonce to
+     */
+    private void nextNonce(byte[] sealed) {
+        long prefix;
+        int counter;
+        nonceLock.lock();
+        try {
+            if (nonceCounter == 0) {
+                // First use, or the counter wrapped around.
+                noncePrefix = nonceRandom.nextLong();
+            }
+            prefix = noncePrefix;
+            counter = nonceCounter++;
+        } finally {
+            nonceLock.unlock();
+        }
+        ByteBuffer.wrap(sealed, 0, NONCE_SIZE).putLong(prefix).putInt(counter);
+    }
+
+    /**
+     * Pool of ciphers for one direction. Callers initialize a borrowed cipher with the nonce of each message.
+     * A cipher that failed an operation is not returned.
+     * The last returned cipher is kept in a single slot, so uncontended use does not touch the queue.
+     */
+    private class CipherPool {
+        private final int mode;
+        private final AtomicReference<Cipher> lastCipher = new AtomicReference<>();
+        private final Queue<Cipher> ciphers = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pooledCiphers = new AtomicInteger();
+
+        CipherPool(int mode) {
+            this.mode = mode;
+        }
+
+        /**
+         * Takes an idle cipher, or creates one if none are idle.
+         * @return Cipher initialized with the key
+         * @throws GeneralSecurityException if a cipher cannot be created
+         */
+        Cipher acquire() throws GeneralSecurityException {
+            Cipher cipher = lastCipher.getAndSet(null);
+            if (cipher != null) {
+                return cipher;
+            }
+            cipher = ciphers.poll();
+            if (cipher == null) {
+                cipher = Cipher.getInstance(ALGORITHM);
+                byte[] nonce = new byte[NONCE_SIZE];
+                nonceRandom.nextBytes(nonce);
+                cipher.init(mode, key, new GCMParameterSpec(TAG_SIZE * Byte.SIZE, nonce));
+                return cipher;
+            }
+            pooledCiphers.decrementAndGet();
+            return cipher;
+        }
+
+        /**
+         * Returns a cipher after a completed operation.
+         * @param cipher The cipher to return
+         */
+        void release(Cipher cipher) {
+            if (lastCipher.compareAndSet(null, cipher)) {
+                return;
+            }
+            if (pooledCiphers.incrementAndGet() <= MAX_POOLED_CIPHERS) {
+                ciphers.offer(cipher);
+            } else {
+                pooledCiphers.decrementAndGet();
+            }
+        }
+    }
 }
\ No newline at end of file
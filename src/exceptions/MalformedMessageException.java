@@ -0,0 +1,12 @@
+package exceptions;
+
+import java.io.IOException;
+
+/**
+ * Exception created when the data of a message does not match the binary protocol.
+ */
+public class MalformedMessageException extends IOException {
+    public MalformedMessageException(String message) {
+        super(message);
+    }
+}
@@ -6,4 +6,8 @@ public class MessageTypeNotSupportedException extends IOException {
     public MessageTypeNotSupportedException() {
         super();
     }
+
+    public MessageTypeNotSupportedException(String message) {
+        super(message);
+    }
 }
@@ -0,0 +1,68 @@
+package helpers;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of reusable direct buffers that messages are encoded into before they are written to a socket.
+ * Buffers are shared by every thread, so a buffer must only be used by one thread between acquire and release.
+ */
+public class BufferPool {
+
+    /**
+     * Capacity of every pooled buffer. Larger requests are served by one-off heap buffers.
+     */
+    public static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Maximum number of idle buffers kept in the pool.
+     */
+    private static final int MAX_POOLED_BUFFERS = 64;
+
+    /**
+     * Idle buffers.
+     */
+    private static final Queue<ByteBuffer> pool = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Number of idle buffers, tracked separately because ConcurrentLinkedQueue.size() is not constant time.
+     */
+    private static final AtomicInteger pooledBuffers = new AtomicInteger();
+
+    /**
+     * Returns a cleared buffer with room for at least size bytes.
+     *
+     * @param size Minimum number of bytes the buffer must hold.
+     * @return A buffer ready to be written to.
+     */
+    public static ByteBuffer acquire(int size) {
+        if (size > BUFFER_SIZE) {
+            return ByteBuffer.allocate(size);
+        }
+        ByteBuffer buffer = pool.poll();
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(BUFFER_SIZE);
+        }
+        pooledBuffers.decrementAndGet();
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Returns a buffer to the pool. Buffers that did not come from the pool are ignored.
+     *
+     * @param buffer The buffer to return. It must not be used after it is released.
+     */
+    public static void release(ByteBuffer buffer) {
+        if (!buffer.isDirect() || buffer.isReadOnly() || buffer.capacity() != BUFFER_SIZE) {
+            return;
+        }
+        if (pooledBuffers.incrementAndGet() <= MAX_POOLED_BUFFERS) {
+            pool.offer(buffer);
+        } else {
+            pooledBuffers.decrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package helpers;
+
+import exceptions.MalformedMessageException;
+import models.Frame;
+import models.messages.Message;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+
+/**
+ * Splits a stream of bytes into frames. The decoder keeps the partially read header
+ * and data between calls, so it can be fed whatever bytes have arrived so far, either
+ * from a blocking InputStream or from the buffer a non-blocking channel was read into.
+ * One decoder must be used per connection.
+ */
+public class FrameDecoder {
+
+    /**
+     * Largest data size accepted in a header. Anything larger is treated as a corrupt stream.
+     */
+    public static final int MAX_DATA_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * Header of the frame being read.
+     */
+    private final ByteBuffer header = ByteBuffer.allocate(Message.BYTE_HEADER_SIZE);
+
+    /**
+     * Sender of the frame being read, set once the header is complete.
+     */
+    private InetSocketAddress senderSocketAddress;
+
+    /**
+     * Data of the frame being read, null until the header is complete.
+     */
+    private ByteBuffer data;
+
+    /**
+     * Consumes bytes from the input until a frame is complete or the input runs out.
+     *
+     * @param input Bytes received so far. Its position is advanced past the consumed bytes.
+     * @return The completed frame, or null if more bytes are needed.
+     * @throws IOException Thrown when the header is invalid.
+     */
+    public Frame decode(ByteBuffer input) throws IOException {
+        if (data == null) {
+            transfer(input, header);
+            if (header.hasRemaining()) {
+                return null;
+            }
+            startData();
+        }
+        transfer(input, data);
+        return data.hasRemaining() ? null : completeFrame();
+    }
+
+    /**
+     * Reads from the input stream until a frame is complete, blocking while no bytes are available.
+     * If the read is interrupted by a socket timeout the bytes read so far are kept and the next call resumes.
+     *
+     * @param inputStream The input stream to read from.
+     * @return The completed frame.
+     * @throws EOFException Thrown when the stream ends.
+     * @throws IOException Thrown when there is an issue reading or the header is invalid.
+     */
+    public Frame readFrame(InputStream inputStream) throws IOException {
+        if (data == null) {
+            readFully(inputStream, header);
+            startData();
+        }
+        readFully(inputStream, data);
+        return completeFrame();
+    }
+
+    /**
+     * Parses the header and prepares the data buffer.
+     *
+     * @throws IOException Thrown when the header is invalid.
+     */
+    private void startData() throws IOException {
+        int dataSize = header.getInt(8);
+        if (dataSize < 0 || dataSize > MAX_DATA_SIZE) {
+            throw new MalformedMessageException("Invalid data size " + dataSize + ".");
+        }
+        senderSocketAddress = parseHeaderSocketAddress(header);
+        data = ByteBuffer.allocate(dataSize);
+    }
+
+    /**
+     * Builds the completed frame and resets the decoder for the next one.
+     *
+     * @return The completed frame.
+     */
+    private Frame completeFrame() {
+        data.flip();
+        Frame frame = new Frame(senderSocketAddress, data);
+        header.clear();
+        senderSocketAddress = null;
+        data = null;
+        return frame;
+    }
+
+    /**
+     * Parses the sender socket address from the header.
+     *
+     * @param header Message header.
+     * @return InetSocketAddress from the header.
+     * @throws UnknownHostException
+     */
+    private static InetSocketAddress parseHeaderSocketAddress(ByteBuffer header) throws UnknownHostException {
+        byte[] address = new byte[4];
+        System.arraycopy(header.array(), 0, address, 0, address.length);
+        return new InetSocketAddress(InetAddress.getByAddress(address), header.getInt(4));
+    }
+
+    /**
+     * Copies as many bytes as fit from the input to the target.
+     *
+     * @param input The buffer to copy from.
+     * @param target The buffer to copy to.
+     */
+    private static void transfer(ByteBuffer input, ByteBuffer target) {
+        int inputLimit = input.limit();
+        input.limit(input.position() + Math.min(input.remaining(), target.remaining()));
+        target.put(input);
+        input.limit(inputLimit);
+    }
+
+    /**
+     * Reads from the input stream until the heap buffer is full. Honours the number of bytes each read returns.
+     *
+     * @param inputStream The input stream to read from.
+     * @param target The heap buffer to fill.
+     * @throws IOException Thrown when the stream ends or there is an issue reading.
+     */
+    private static void readFully(InputStream inputStream, ByteBuffer target) throws IOException {
+        while (target.hasRemaining()) {
+            int bytesRead = inputStream.read(target.array(), target.arrayOffset() + target.position(), target.remaining());
+            if (bytesRead < 0) {
+                throw new EOFException("Connection closed.");
+            }
+            target.position(target.position() + bytesRead);
+        }
+    }
+}
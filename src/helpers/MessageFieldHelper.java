@@ -0,0 +1,269 @@
+package helpers;
+
+import models.User;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * Reads and writes the individual fields of a binary message body.
+ *
+ * Field encodings:
+ * int = 4 bytes, big endian
+ * string = <length><bytes>, length = int, bytes = UTF-8
+ * bytes = <length><bytes>, length = int
+ * uuid = 16 bytes, most significant bits first
+ * socket address = <addressLength><address><port>, addressLength = 1 byte (4 or 16), port = 2 bytes unsigned
+ * user = <username><socket address>
+ */
+public class MessageFieldHelper {
+
+    /**
+     * Number of bytes used by a length prefix.
+     */
+    public static final int LENGTH_PREFIX_SIZE = 4;
+
+    /**
+     * Number of bytes used by a UUID.
+     */
+    public static final int UUID_SIZE = 16;
+
+    /**
+     * Returns the number of bytes the string occupies once written, including its length prefix.
+     *
+     * @param value The string to measure.
+     * @return Encoded size in bytes.
+     */
+    public static int sizeOf(String value) {
+        return LENGTH_PREFIX_SIZE + utf8Length(value);
+    }
+
+    /**
+     * Writes a length-prefixed UTF-8 string without creating an intermediate byte array.
+     *
+     * @param buffer The buffer to write to.
+     * @param value The string to write.
+     */
+    public static void putString(ByteBuffer buffer, String value) {
+        buffer.putInt(utf8Length(value));
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                    buffer.put((byte) (0xF0 | (codePoint >> 18)));
+                    buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                    buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                    buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+                } else {
+                    // Unpaired surrogate, replaced the same way String.getBytes does.
+                    buffer.put((byte) '?');
+                }
+            } else {
+                buffer.put((byte) (0xE0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+    /**
+     * Reads a length-prefixed UTF-8 string.
+     *
+     * @param buffer The buffer to read from.
+     * @return The read string.
+     */
+    public static String getString(ByteBuffer buffer) {
+        int length = getLength(buffer);
+        String value;
+        if (buffer.hasArray()) {
+            value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+        } else {
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return value;
+    }
+
+    /**
+     * Returns the number of bytes the byte array occupies once written, including its length prefix.
+     *
+     * @param value The byte array to measure.
+     * @return Encoded size in bytes.
+     */
+    public static int sizeOf(byte[] value) {
+        return LENGTH_PREFIX_SIZE + value.length;
+    }
+
+    /**
+     * Writes a length-prefixed byte array.
+     *
+     * @param buffer The buffer to write to.
+     * @param value The bytes to write.
+     */
+    public static void putBytes(ByteBuffer buffer, byte[] value) {
+        buffer.putInt(value.length);
+        buffer.put(value);
+    }
+
+    /**
+     * Reads a length-prefixed byte array.
+     *
+     * @param buffer The buffer to read from.
+     * @return The read bytes.
+     */
+    public static byte[] getBytes(ByteBuffer buffer) {
+        byte[] value = new byte[getLength(buffer)];
+        buffer.get(value);
+        return value;
+    }
+
+    /**
+     * Writes a UUID as 16 bytes.
+     *
+     * @param buffer The buffer to write to.
+     * @param value The UUID to write.
+     */
+    public static void putUuid(ByteBuffer buffer, UUID value) {
+        buffer.putLong(value.getMostSignificantBits());
+        buffer.putLong(value.getLeastSignificantBits());
+    }
+
+    /**
+     * Reads a 16 byte UUID.
+     *
+     * @param buffer The buffer to read from.
+     * @return The read UUID.
+     */
+    public static UUID getUuid(ByteBuffer buffer) {
+        long mostSignificantBits = buffer.getLong();
+        long leastSignificantBits = buffer.getLong();
+        return new UUID(mostSignificantBits, leastSignificantBits);
+    }
+
+    /**
+     * Returns the number of bytes the socket address occupies once written.
+     *
+     * @param socketAddress The socket address to measure.
+     * @return Encoded size in bytes.
+     */
+    public static int sizeOf(InetSocketAddress socketAddress) {
+        return 1 + socketAddress.getAddress().getAddress().length + 2;
+    }
+
+    /**
+     * Writes a socket address as its raw IP address bytes followed by the port.
+     *
+     * @param buffer The buffer to write to.
+     * @param socketAddress The socket address to write.
+     */
+    public static void putSocketAddress(ByteBuffer buffer, InetSocketAddress socketAddress) {
+        byte[] address = socketAddress.getAddress().getAddress();
+        buffer.put((byte) address.length);
+        buffer.put(address);
+        buffer.putShort((short) socketAddress.getPort());
+    }
+
+    /**
+     * Reads a socket address.
+     *
+     * @param buffer The buffer to read from.
+     * @return The read socket address.
+     * @throws UnknownHostException Thrown when the address length is not a valid IP address length.
+     */
+    public static InetSocketAddress getSocketAddress(ByteBuffer buffer) throws UnknownHostException {
+        byte[] address = new byte[buffer.get() & 0xFF];
+        buffer.get(address);
+        int port = buffer.getShort() & 0xFFFF;
+        return new InetSocketAddress(InetAddress.getByAddress(address), port);
+    }
+
+    /**
+     * Returns the number of bytes the user occupies once written.
+     *
+     * @param user The user to measure.
+     * @return Encoded size in bytes.
+     */
+    public static int sizeOf(User user) {
+        return sizeOf(user.getUsername()) + sizeOf(user.getSocketAddress());
+    }
+
+    /**
+     * Writes a user as its username followed by its socket address.
+     *
+     * @param buffer The buffer to write to.
+     * @param user The user to write.
+     */
+    public static void putUser(ByteBuffer buffer, User user) {
+        putString(buffer, user.getUsername());
+        putSocketAddress(buffer, user.getSocketAddress());
+    }
+
+    /**
+     * Reads a user.
+     *
+     * @param buffer The buffer to read from.
+     * @return The read user.
+     * @throws UnknownHostException Thrown when the user's address is invalid.
+     */
+    public static User getUser(ByteBuffer buffer) throws UnknownHostException {
+        String username = getString(buffer);
+        return new User(username, getSocketAddress(buffer));
+    }
+
+    /**
+     * Returns the number of bytes a string takes up as UTF-8.
+     *
+     * @param value The string to measure.
+     * @return Number of UTF-8 bytes.
+     */
+    private static int utf8Length(String value) {
+        int length = value.length();
+        int utf8Length = 0;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                utf8Length += 1;
+            } else if (c < 0x800) {
+                utf8Length += 2;
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    utf8Length += 4;
+                    i++;
+                } else {
+                    utf8Length += 1;
+                }
+            } else {
+                utf8Length += 3;
+            }
+        }
+        return utf8Length;
+    }
+
+    /**
+     * Reads a length prefix and checks that the buffer holds that many bytes.
+     *
+     * @param buffer The buffer to read from.
+     * @return The length.
+     */
+    private static int getLength(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        return length;
+    }
+}
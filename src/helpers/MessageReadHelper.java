@@ -1,5 +1,7 @@
 package helpers;
+import exceptions.MalformedMessageException;
 import exceptions.MessageTypeNotSupportedException;
+import models.Frame;
 import models.MessageType;
 import models.User;
 import models.messages.*;
@@ -7,297 +9,343 @@ import encryption.*;
 
 import java.io.InputStream;
 import java.io.IOException;
-import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 public class MessageReadHelper{
 
     /**
-     * Reads the next Message in the input stream.
+     * Reads the next Message in the input stream, blocking until it has fully arrived.
      *
      * @param inputStream The input stream to read from.
      * @return The read Message.
      * @throws IOException Thrown when there is an issue reading a message.
      */
 	public static Message readNextMessage(InputStream inputStream) throws IOException{
-        byte[] header = readNextBytes(inputStream, Message.BYTE_HEADER_SIZE);
-        int dataSize = parseHeaderDataSize(header);
-        byte[] data = readNextBytes(inputStream, dataSize);
-        return createMessage(header, data);
+        return readMessage(new FrameDecoder().readFrame(inputStream));
 	}
 
     /**
-     * Reads the next Encrypted Message in the input stream.
+     * Reads the next Encrypted Message in the input stream, blocking until it has fully arrived.
      *
      * @param inputStream The input stream to read from.
      * @return The read Message.
      * @throws IOException Thrown when there is an issue reading a message.
      */
     public static Message readNextEncryptedMessage(InputStream inputStream, EncryptionEngine encryptionEngine) throws IOException{
-        byte[] header = readNextBytes(inputStream, Message.BYTE_HEADER_SIZE);
-        int dataSize = parseHeaderDataSize(header);
-        byte[] data = readNextBytes(inputStream, dataSize);
-        return createMessageFromEncrypted(header, data, encryptionEngine);
+        return readEncryptedMessage(new FrameDecoder().readFrame(inputStream), encryptionEngine);
     }
 
     /**
-     * Reads the next bytesToRead bytes from the input stream.
+     * Creates a Message from a complete frame.
      *
-     * @param inputStream The input stream to read from.
-     * @param bytesToRead The number of bytes to read from the input stream.
-     * @return The read bytes.
-     * @throws IOException Thrown when there is an issue reading the number of bytes.
+     * @param frame The frame to decode.
+     * @return The decoded Message.
+     * @throws IOException Thrown when the frame does not hold a supported message.
      */
-	private static byte[] readNextBytes(InputStream inputStream, int bytesToRead) throws IOException {
-	    while (inputStream.available() < bytesToRead);
-        byte[] bytes = new byte[bytesToRead];
-        inputStream.read(bytes);
-        return bytes;
+    public static Message readMessage(Frame frame) throws IOException {
+        return createMessage(frame.getSenderSocketAddress(), frame.getData());
     }
 
     /**
-     * Parses the data size (in bytes) from the header.
+     * Creates a Message from a complete frame holding a message encrypted with a matching EncryptionEngine.
+     * The sealed bytes are decrypted straight from the frame rather than copied into an EncryptedMessage first.
      *
-     * @param header Message header as bytes.
-     * @return Size (in bytes) of the Message's data.
+     * @param frame The frame to decode.
+     * @param encryptionEngine The EncryptionEngine to decrypt with
+     * @return The decrypted Message.
+     * @throws IOException Thrown when the frame is not encrypted, fails authentication or does not decrypt to a supported message.
      */
-	private static int parseHeaderDataSize(byte[] header) {
-        ByteBuffer buffer = ByteBuffer.allocate(4);
-        return buffer.put(header, 8, 4).getInt(0);
+    public static Message readEncryptedMessage(Frame frame, EncryptionEngine encryptionEngine) throws IOException {
+        InetSocketAddress senderSocketAddress = frame.getSenderSocketAddress();
+        ByteBuffer data = frame.getData();
+
+        if (data.remaining() < Message.BYTE_DATA_PREFIX_SIZE) {
+            throw new MalformedMessageException("Message data is too short.");
+        }
+        byte version = data.get();
+        if (version != Message.PROTOCOL_VERSION) {
+            throw new MessageTypeNotSupportedException("Unsupported protocol version " + version + ".");
+        }
+        MessageType messageType = getDataMessageType(data);
+        if (messageType == MessageType.BROADCAST || messageType == MessageType.GOSSIP || messageType == MessageType.MULTICAST) {
+            // Kept sealed so it can be forwarded to the rest of the room without encrypting it again.
+            int sequenceSize = messageType == MessageType.MULTICAST ? 8 : messageType == MessageType.GOSSIP ? 4 : 0;
+            if (data.remaining() < sequenceSize) {
+                throw new MalformedMessageException("Message data ended before all fields were read.");
+            }
+            int session = messageType == MessageType.MULTICAST ? data.getInt() : 0;
+            int sequence = sequenceSize > 0 ? data.getInt() : 0;
+            byte[] ciphertext = new byte[data.remaining()];
+            data.get(ciphertext);
+            Message message = decryptMessage(senderSocketAddress, ciphertext, encryptionEngine);
+            switch (messageType) {
+                case GOSSIP:
+                    return new GossipMessage(senderSocketAddress, sequence, ciphertext, message);
+                case MULTICAST:
+                    return new MulticastMessage(senderSocketAddress, session, sequence, ciphertext, message);
+                default:
+                    return new BroadcastMessage(senderSocketAddress, ciphertext, message);
+            }
+        }
+        if (messageType != MessageType.ENCRYPTED) {
+            throw new MalformedMessageException("Expected an encrypted message but received " + messageType + ".");
+        }
+        byte[] plaintext = encryptionEngine.decrypt(data);
+        if (plaintext.length == 0) {
+            throw new MalformedMessageException("Encrypted message failed authentication.");
+        }
+        return createMessage(senderSocketAddress, ByteBuffer.wrap(plaintext));
     }
 
     /**
-     * Creates a Message from bytes.
+     * Creates a Message from sealed bytes. Broadcast messages are only read from frames, so they cannot be nested.
      *
-     * @param header Message header as bytes.
-     * @param data Message data as bytes.
+     * @param senderSocketAddress Sender socket address of the message.
+     * @param ciphertext The sealed bytes.
+     * @param encryptionEngine The EncryptionEngine to decrypt with
+     * @return The decrypted Message.
+     * @throws IOException Thrown when the bytes fail authentication or do not decrypt to a supported message.
+     */
+    private static Message decryptMessage(InetSocketAddress senderSocketAddress, byte[] ciphertext, EncryptionEngine encryptionEngine)
+        throws IOException {
+        byte[] plaintext = encryptionEngine.decrypt(ciphertext);
+        if (plaintext.length == 0) {
+            throw new MalformedMessageException("Broadcast message failed authentication.");
+        }
+        return createMessage(senderSocketAddress, ByteBuffer.wrap(plaintext));
+    }
+
+    /**
+     * Creates a Message from its data, which starts with the protocol version and the opcode.
      *
-     * @return Message based on the header and data protocol.
+     * @param senderSocketAddress Sender socket address from the header.
+     * @param data Message data.
+     *
+     * @return Message based on the data protocol.
      * @throws UnknownHostException
-     * @throws IllegalArgumentException Thrown when the message
+     * @throws MessageTypeNotSupportedException Thrown when the version or opcode is not supported.
+     * @throws MalformedMessageException Thrown when the fields do not match the message type.
      */
-    private static Message createMessage(byte[] header, byte[] data) throws UnknownHostException, MessageTypeNotSupportedException, IllegalArgumentException{
-	    InetAddress headerIpAddress = getHeaderIpAddress(header);
-	    int headerPort = getHeaderPort(header);
-        InetSocketAddress senderSocketAddress = new InetSocketAddress(headerIpAddress, headerPort);
-
-        MessageType messageType = getDataMessageType(data);
-        String messageContent = getDataMessageContent(data);
-        return createMessage(senderSocketAddress, messageType, messageContent);
+    private static Message createMessage(InetSocketAddress senderSocketAddress, ByteBuffer data)
+        throws UnknownHostException, MessageTypeNotSupportedException, MalformedMessageException {
+        if (data.remaining() < Message.BYTE_DATA_PREFIX_SIZE) {
+            throw new MalformedMessageException("Message data is too short.");
+        }
+        byte version = data.get();
+        if (version != Message.PROTOCOL_VERSION) {
+            throw new MessageTypeNotSupportedException("Unsupported protocol version " + version + ".");
+        }
+        try {
+            Message message = createMessage(senderSocketAddress, getDataMessageType(data), data);
+            if (data.hasRemaining()) {
+                throw new MalformedMessageException("Unexpected bytes after " + message.getMessageType() + " fields.");
+            }
+            return message;
+        } catch (BufferUnderflowException bue) {
+            throw new MalformedMessageException("Message data ended before all fields were read.");
+        }
     }
-    
+
     /**
-     * Creates a Message from bytes.
+     * Creates a Message from its fields.
      *
-     * @param header Message header as bytes.
-     * @param data Message data as bytes.
+     * @param senderSocketAddress Sender socket address from the header.
+     * @param messageType The type of the message.
+     * @param fields Message fields, positioned after the opcode.
      *
-     * @return Message based on the header and data protocol.
+     * @return Message based on the message type.
      * @throws UnknownHostException
+     * @throws MessageTypeNotSupportedException Thrown when the message type cannot be created.
+     * @throws MalformedMessageException Thrown when a field holds an invalid value.
      */
-    private static Message createMessage(InetSocketAddress senderSocketAddress, MessageType messageType, String messageContent) 
-		throws UnknownHostException, MessageTypeNotSupportedException {
+    private static Message createMessage(InetSocketAddress senderSocketAddress, MessageType messageType, ByteBuffer fields)
+		throws UnknownHostException, MessageTypeNotSupportedException, MalformedMessageException {
         switch (messageType) {
 	        case ACKNOWLEDGEMENT:
-	        	if(messageContent.length() > 1){
-	        		return new AckMessage(senderSocketAddress, messageContent);
-	        	}
-	            return new AckMessage(senderSocketAddress);
+	            return new AckMessage(senderSocketAddress, MessageFieldHelper.getString(fields));
 	        case BYE:
 	            return new ByeMessage(senderSocketAddress);
 	        case MESSAGE:
-                String[] content = splitChatMessage(messageContent);
-                return new ChatMessage(senderSocketAddress, Integer.parseInt(content[0]),content[1]);
+	            int timestamp = fields.getInt();
+	            if (timestamp < -1) {
+	                throw new MalformedMessageException("Timestamp must be at least -1.");
+	            }
+	            return new ChatMessage(senderSocketAddress, timestamp, MessageFieldHelper.getString(fields));
+	        case CAUSAL_MESSAGE:
+	            int sequence = fields.getInt();
+	            if (sequence < 1) {
+	                throw new MalformedMessageException("Sequence number must be at least 1.");
+	            }
+	            Map<InetSocketAddress, Integer> dependencies = getSequences(fields, 1);
+	            return new CausalChatMessage(senderSocketAddress, sequence, dependencies, MessageFieldHelper.getString(fields));
+	        case SEQUENCED_MESSAGE:
+	            int epoch = fields.getInt();
+	            int roomSequence = fields.getInt();
+	            if (roomSequence < 1) {
+	                throw new MalformedMessageException("Sequence number must be at least 1.");
+	            }
+	            User origin = MessageFieldHelper.getUser(fields);
+	            int submission = fields.getInt();
+	            return new SequencedChatMessage(senderSocketAddress, epoch, roomSequence, origin, submission, MessageFieldHelper.getString(fields));
 	        case HELLO:
-	            User sender = getMessageContentUser(messageContent);
-	            return new HelloMessage(sender);
+	            return new HelloMessage(MessageFieldHelper.getUser(fields));
 	        case HOST_ROOM:
-	            // This assumes that the encrypted info is the only thing in the message body.
-	            return new HostRoomMessage(senderSocketAddress, messageContent);
+	            return new HostRoomMessage(senderSocketAddress, MessageFieldHelper.getBytes(fields));
 	        case REQUEST_ROOM_LIST:
 	            return new RequestRoomListMessage(senderSocketAddress);
 	        case ROOM_LIST:
-	            return new RoomListMessage(senderSocketAddress, messageContent);
+	            return new RoomListMessage(senderSocketAddress, getEntryList(fields));
 	        case USER:
-	            User contentUser = getMessageContentUser(messageContent);
-	            return new UserInfoMessage(senderSocketAddress, contentUser);
+	            return new UserInfoMessage(senderSocketAddress, MessageFieldHelper.getUser(fields));
 	        case YOU:
-	            User yourContentUser = getMessageContentUser(messageContent);
-	            return new YourInfoMessage(senderSocketAddress, yourContentUser);
+	            return new YourInfoMessage(senderSocketAddress, MessageFieldHelper.getUser(fields));
 	        case PROCESS:
-	        	UUID messageId = getMessageContentId(messageContent);
-	        	return new ProcessMessage(senderSocketAddress, messageId);
+	        	return new ProcessMessage(senderSocketAddress, MessageFieldHelper.getUuid(fields));
 	        case QUEUE:
-	        	String idString = messageContent.split("\n")[0];
-	        	String dataMessageString = messageContent.split("\n")[1];
-	        	byte[] dataMessageBytes = dataMessageString.getBytes();
-	        	UUID queueMessageId = getMessageContentId(idString);
-	        	Message message = createMessage(senderSocketAddress, 
-	        			getDataMessageType(dataMessageBytes), 
-	        			getDataMessageContent(dataMessageBytes));
+	        	UUID queueMessageId = MessageFieldHelper.getUuid(fields);
+	        	Message message = createMessage(senderSocketAddress, getDataMessageType(fields), fields);
 	        	return new QueueMessage(senderSocketAddress, message, queueMessageId);
 	        case HOST_UPDATED:
-	        	return new HostUpdatedMessage(senderSocketAddress, messageContent);
-	        // TODO: case DISCONNECTED:
+	            String token = MessageFieldHelper.getString(fields);
+	        	return new HostUpdatedMessage(senderSocketAddress, token, MessageFieldHelper.getBytes(fields));
+	        case DISCONNECTED:
+	            return new DisconnectMessage(senderSocketAddress);
+	        case I_HAVE:
+	            InetSocketAddress announcedOrigin = MessageFieldHelper.getSocketAddress(fields);
+	            return new IHaveMessage(senderSocketAddress, announcedOrigin, fields.getInt());
+	        case GRAFT:
+	            InetSocketAddress graftedOrigin = MessageFieldHelper.getSocketAddress(fields);
+	            return new GraftMessage(senderSocketAddress, graftedOrigin, fields.getInt());
+	        case PRUNE:
+	            return new PruneMessage(senderSocketAddress);
+	        case HEARTBEAT:
+	            return new HeartbeatMessage(senderSocketAddress);
+	        case ORDER_STATE:
+	            int stateEpoch = fields.getInt();
+	            int nextSequence = fields.getInt();
+	            return new OrderStateMessage(senderSocketAddress, stateEpoch, nextSequence, getSequences(fields, 0));
             case USER_RANK_ORDER:
-                return new UserRankOrderMessage(senderSocketAddress, getMessageContentUserList(messageContent));
+                return new UserRankOrderMessage(senderSocketAddress, getUserList(fields));
 	        case DEAD_USER:
-                User deadUser = getMessageContentUser(messageContent);
-                return new DeadUserMessage(senderSocketAddress, deadUser);
+                int membershipVersion = fields.getInt();
+                return new DeadUserMessage(senderSocketAddress, membershipVersion, getUserList(fields));
             case LEADER_VOTE:
-                User voterUser = getMessageContentUser(messageContent);
-                return new LeaderVoteMessage(voterUser);
+                return new LeaderVoteMessage(MessageFieldHelper.getUser(fields));
 	        case LEADER:
-                User newLeader = getMessageContentUser(messageContent);
-                return new LeaderMessage(newLeader);
-	        // TODO: case NEGATIVE_ACKNOWLEDGEMENT:
+                User leader = MessageFieldHelper.getUser(fields);
+                return new LeaderMessage(leader, fields.getInt());
+	        case ENCRYPTED:
+	            byte[] ciphertext = new byte[fields.remaining()];
+	            fields.get(ciphertext);
+	            return new EncryptedMessage(senderSocketAddress, ciphertext);
+	        case NEGATIVE_ACKNOWLEDGEMENT:
+	            int nakEpoch = fields.getInt();
+	            int firstSequence = fields.getInt();
+	            int lastSequence = fields.getInt();
+	            if (firstSequence < 1 || lastSequence < firstSequence) {
+	                throw new MalformedMessageException("Sequence range must be ascending and start at 1 or later.");
+	            }
+	            return new NakMessage(senderSocketAddress, nakEpoch, firstSequence, lastSequence);
 	        default:
-	            throw new MessageTypeNotSupportedException();
+	            throw new MessageTypeNotSupportedException("Unsupported message type " + messageType + ".");
 	    }
     }
 
     /**
-     * Creates a Message from bytes which are encrypted with a matching EncryptionEngine.
+     * Reads the opcode and looks up its message type.
      *
-     * @param header Message header as bytes.
-     * @param data Message data as bytes.
-     * @param encryptionEngine The EncryptionEngine to decrypt with
-     *
-     * @return Message based on the header and data protocol.
-     * @throws UnknownHostException
-     * @throws IllegalArgumentException Thrown when the message
-     * @throws MessageTypeNotSupportedException If the message does not match a known format
+     * @param data Message data, positioned at the opcode.
+     * @return MessageType matching the opcode.
+     * @throws MessageTypeNotSupportedException Thrown when the opcode is unknown.
      */
-    private static Message createMessageFromEncrypted(byte[] header, byte[] data, EncryptionEngine encryptionEngine) 
-    throws UnknownHostException, MessageTypeNotSupportedException, IllegalArgumentException{
-        InetAddress headerIpAddress = getHeaderIpAddress(header);
-        int headerPort = getHeaderPort(header);
-        InetSocketAddress senderSocketAddress = new InetSocketAddress(headerIpAddress, headerPort);
-
-        EncryptedMessage encryptedMessage = new EncryptedMessage(senderSocketAddress, new String(data));
-        data = encryptionEngine.decrypt(encryptedMessage.getCiphertext());
-        return createMessage(header, data);
-    }
-
-    /**
-     * Parses the IP address from the header.
-     *
-     * @param header Message header as bytes.
-     * @return InetAddress from the header.
-     * @throws UnknownHostException
-     */
-    private static InetAddress getHeaderIpAddress(byte[] header) throws UnknownHostException {
-        ByteBuffer inetAddressByteBuffer = ByteBuffer.allocate(4);
-        inetAddressByteBuffer.put(header, 0, 4);
-        return InetAddress.getByAddress(inetAddressByteBuffer.array());
-    }
-
-    /**
-     * Parses the port number from the header.
-     *
-     * @param header Message header as bytes.
-     * @return Port number from the header.
-     */
-    private static int getHeaderPort(byte[] header) {
-        ByteBuffer portByteBuffer = ByteBuffer.allocate(4);
-        return portByteBuffer.put(header, 4, 4).getInt(0);
-    }
-
-    /**
-     * Parses the message type from the data.
-     *
-     * @param data Message data as bytes.
-     * @return MessageType based on data protocol.
-     */
-    private static MessageType getDataMessageType(byte[] data) {
-        String dataString = new String(data);
-        for (MessageType messageType : MessageType.values()) {
-            if (dataString.startsWith(messageType.getProtocolCode())) {
-                return messageType;
-            }
+    private static MessageType getDataMessageType(ByteBuffer data) throws MessageTypeNotSupportedException {
+        byte opcode = data.get();
+        MessageType messageType = MessageType.fromOpcode(opcode);
+        if (messageType == null) {
+            throw new MessageTypeNotSupportedException("Unknown opcode " + opcode + ".");
         }
-        return null;
-    }
-
-    /**
-     * Ignores the first 4 bytes of the data which is reserved as the message type.
-     *
-     * @param data Data bytes.
-     * @return Message content.
-     */
-    private static String getDataMessageContent(byte[] data) {
-        String messageContentWithProtocol = new String(data);
-        return messageContentWithProtocol.length() > 4 ? messageContentWithProtocol.substring(4) : "";
+        return messageType;
     }
 
     /**
-     * Creates a user from message content.
+     * Reads a list of users.
      * Expecting the format:
-     * <username> <ipAddress> <port>
+     * <userCount><user1><user2>...
      *
-     * @param messageContent Message content string.
-     * @return User parsed from message content.
+     * @param fields Message fields.
+     * @return List<User> read from the fields.
      */
-    private static User getMessageContentUser(String messageContent) throws UnknownHostException, IllegalArgumentException {
-        String[] messageContentSplit = messageContent.split(" ");
-        if (messageContentSplit.length != 3) {
-            throw new IllegalArgumentException("Argument must be of the form: <username> <ipAddress> <port>.");
+    private static List<User> getUserList(ByteBuffer fields) throws UnknownHostException {
+        int userCount = getCount(fields);
+        List<User> users = new ArrayList<>(userCount);
+        for (int i = 0; i < userCount; i++) {
+            users.add(MessageFieldHelper.getUser(fields));
         }
-
-        String username = messageContentSplit[0];
-        String ipAddress = messageContentSplit[1];
-        int port = Integer.parseInt(messageContentSplit[2]);
-        return new User(username, new InetSocketAddress(ipAddress, port));
+        return users;
     }
 
     /**
-     * Creates a list of users from message content.
+     * Reads sequence numbers of senders, such as the dependencies of a causal chat message.
      * Expecting the format:
-     * <username1> <ipAddress1> <port1>\n<username2> <ipAddress2> <port2>\n...
+     * <senderCount><socket address1><sequence1><socket address2><sequence2>...
      *
-     * @param messageContent Message content string.
-     * @return List<User> parsed from message content.</User>
+     * @param fields Message fields.
+     * @param minimum The lowest valid sequence number.
+     * @return Map of sender socket addresses to sequence numbers.
+     * @throws UnknownHostException Thrown when a socket address is invalid.
+     * @throws MalformedMessageException Thrown when a sequence number is below the minimum.
      */
-    private static List<User> getMessageContentUserList(String messageContent) throws UnknownHostException {
-        List<User> users = new ArrayList<>();
-        if (!messageContent.isEmpty()) {
-            String[] messageContentSplitByNewLine = messageContent.split("\n");
-            for (int i = 0; i < messageContentSplitByNewLine.length; i++) {
-                users.add(getMessageContentUser(messageContentSplitByNewLine[i]));
+    private static Map<InetSocketAddress, Integer> getSequences(ByteBuffer fields, int minimum)
+        throws UnknownHostException, MalformedMessageException {
+        int senderCount = getCount(fields);
+        Map<InetSocketAddress, Integer> sequences = new LinkedHashMap<>(senderCount * 2);
+        for (int i = 0; i < senderCount; i++) {
+            InetSocketAddress sender = MessageFieldHelper.getSocketAddress(fields);
+            int sequence = fields.getInt();
+            if (sequence < minimum) {
+                throw new MalformedMessageException("Sequence number must be at least " + minimum + ".");
             }
+            sequences.put(sender, sequence);
         }
-        return users;
+        return sequences;
     }
 
     /**
-     * Split timestamp and chat message content
+     * Reads a list of room entries.
      * Expecting the format:
-     * <timestamp> <message>
+     * <entryCount><entry1><entry2>...
      *
-     * @param messageContent Message content string.
-     * @return String[] Containing {timestamp, content}
+     * @param fields Message fields.
+     * @return List<byte[]> read from the fields.
      */
-    private static String[] splitChatMessage(String messageContent) throws IllegalArgumentException{
-        //Split at first space (should be after the timestamp)
-        String[] splitContent = messageContent.split(" ",2);
-        if (Integer.parseInt(splitContent[0]) < -1) {
-           throw new IllegalArgumentException("Argument must be of the form: <timestamp> <content>.");
+    private static List<byte[]> getEntryList(ByteBuffer fields) {
+        int entryCount = getCount(fields);
+        List<byte[]> entries = new ArrayList<>(entryCount);
+        for (int i = 0; i < entryCount; i++) {
+            entries.add(MessageFieldHelper.getBytes(fields));
         }
-        return splitContent;
+        return entries;
     }
-    
+
     /**
-     * Creates a UUID from given message content
-     * 
-     * @param messageContent
-     * @return
+     * Reads the number of elements in a list. Each element takes up at least one byte.
+     *
+     * @param fields Message fields.
+     * @return Number of elements.
      */
-    private static UUID getMessageContentId(String messageContent) {
-    	return UUID.fromString(messageContent);
+    private static int getCount(ByteBuffer fields) {
+        int count = fields.getInt();
+        if (count < 0 || count > fields.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        return count;
     }
-}
\ No newline at end of file
+}
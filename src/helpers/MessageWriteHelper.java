@@ -0,0 +1,109 @@
+package helpers;
+
+import models.messages.Message;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class MessageWriteHelper {
+
+    /**
+     * Largest number of bytes copied to a socket output stream at once.
+     */
+    private static final int MAX_STREAM_CHUNK_SIZE = 8 * 1024;
+
+    /**
+     * Returns a channel that writes to the socket. Sockets opened through a SocketChannel are written to directly,
+     * other sockets are written to through their output stream. Unlike Channels.newChannel, the returned channel
+     * guards writes with a lock instead of a monitor, so a virtual thread blocked writing does not pin its carrier.
+     *
+     * @param socket The blocking socket to write to.
+     * @return Channel writing to the socket.
+     * @throws IOException Thrown when the socket's output stream cannot be opened.
+     */
+    public static WritableByteChannel getWritableChannel(Socket socket) throws IOException {
+        if (socket.getChannel() != null) {
+            return socket.getChannel();
+        }
+        return new OutputStreamChannel(socket.getOutputStream());
+    }
+
+    /**
+     * Encodes the message into a pooled buffer and writes it to the channel.
+     *
+     * @param channel The blocking channel to write to.
+     * @param message The message to write.
+     * @throws IOException Thrown when there is an issue writing the message.
+     */
+    public static void writeMessage(WritableByteChannel channel, Message message) throws IOException {
+        ByteBuffer buffer = BufferPool.acquire(message.getEncodedSize());
+        try {
+            message.writeTo(buffer);
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } finally {
+            BufferPool.release(buffer);
+        }
+    }
+
+    /**
+     * Channel writing to an output stream, one whole buffer at a time.
+     */
+    private static class OutputStreamChannel implements WritableByteChannel {
+        private final OutputStream outputStream;
+        private final ReentrantLock writeLock = new ReentrantLock();
+        private byte[] chunk = new byte[0];
+        private volatile boolean open = true;
+
+        OutputStreamChannel(OutputStream outputStream) {
+            this.outputStream = outputStream;
+        }
+
+        @Override
+        public int write(ByteBuffer source) throws IOException {
+            writeLock.lock();
+            try {
+                if (!open) {
+                    throw new ClosedChannelException();
+                }
+                int written = source.remaining();
+                if (source.hasArray()) {
+                    outputStream.write(source.array(), source.arrayOffset() + source.position(), written);
+                    source.position(source.limit());
+                } else {
+                    // Grown on demand so that connections sending small messages keep a small array.
+                    if (chunk.length < Math.min(written, MAX_STREAM_CHUNK_SIZE)) {
+                        chunk = new byte[Math.min(written, MAX_STREAM_CHUNK_SIZE)];
+                    }
+                    while (source.hasRemaining()) {
+                        int length = Math.min(source.remaining(), chunk.length);
+                        source.get(chunk, 0, length);
+                        outputStream.write(chunk, 0, length);
+                    }
+                }
+                outputStream.flush();
+                return written;
+            } finally {
+                writeLock.unlock();
+            }
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() throws IOException {
+            open = false;
+            outputStream.close();
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package helpers;
+
+import java.io.IOException;
+import java.net.BindException;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Parses the addresses of servers. An address with the unix: scheme names the path of a Unix domain socket,
+ * for endpoints on the same host, which skip the TCP/IP stack. Any other address is a TCP socket address.
+ */
+public class SocketAddressHelper {
+
+    /**
+     * Scheme of Unix domain socket addresses, e.g. unix:/tmp/blocktalk-server.sock
+     */
+    public static final String UNIX_SCHEME = "unix:";
+
+    /**
+     * Parses an address of the form unix:PATH, HOST PORT, HOST:PORT or PORT.
+     *
+     * @param address The address to parse.
+     * @return A UnixDomainSocketAddress for the unix: scheme, an InetSocketAddress otherwise.
+     * @throws IllegalArgumentException Thrown when the address has none of the forms.
+     */
+    public static SocketAddress parse(String address) {
+        address = address.trim();
+        if (address.startsWith(UNIX_SCHEME)) {
+            return UnixDomainSocketAddress.of(address.substring(UNIX_SCHEME.length()));
+        }
+        int separator = Math.max(address.lastIndexOf(' '), address.lastIndexOf(':'));
+        try {
+            if (separator < 0) {
+                return new InetSocketAddress(Integer.parseInt(address));
+            }
+            return new InetSocketAddress(address.substring(0, separator).trim(), Integer.parseInt(address.substring(separator + 1)));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Expected unix:PATH, HOST PORT or PORT: " + address);
+        }
+    }
+
+    /**
+     * Returns the protocol family of channels bound or connected to the address.
+     *
+     * @param address The address.
+     * @return UNIX for Unix domain socket addresses, INET otherwise.
+     */
+    public static ProtocolFamily getProtocolFamily(SocketAddress address) {
+        return address instanceof UnixDomainSocketAddress ? StandardProtocolFamily.UNIX : StandardProtocolFamily.INET;
+    }
+
+    /**
+     * Returns the socket address that stands for an address in message headers, which only hold IPv4 socket addresses.
+     * Unix domain sockets are local, so they stand for the loopback address.
+     *
+     * @param address The address.
+     * @return The address itself if it is a TCP socket address, the loopback address with port 0 otherwise.
+     */
+    public static InetSocketAddress getHeaderSocketAddress(SocketAddress address) {
+        if (address instanceof InetSocketAddress) {
+            return (InetSocketAddress) address;
+        }
+        return new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+    }
+
+    /**
+     * Deletes the file of a Unix domain socket address if it was left behind by a server that did not shut down,
+     * which is told by nothing accepting connections on it. Nothing is done for other addresses.
+     *
+     * @param address The address.
+     * @throws BindException Thrown when a server is still listening on the address.
+     * @throws IOException Thrown when the file was left behind but cannot be deleted.
+     */
+    public static void deleteStaleSocketFile(SocketAddress address) throws IOException {
+        if (!(address instanceof UnixDomainSocketAddress)) {
+            return;
+        }
+        Path path = ((UnixDomainSocketAddress) address).getPath();
+        try {
+            if (!Files.readAttributes(path, BasicFileAttributes.class).isOther()) {
+                // Not a socket file, which binding reports rather than it being deleted.
+                return;
+            }
+        } catch (NoSuchFileException e) {
+            return;
+        }
+        try {
+            SocketChannel.open(address).close();
+        } catch (ConnectException e) {
+            Files.deleteIfExists(path);
+            return;
+        }
+        throw new BindException("Address already in use: " + path);
+    }
+
+    /**
+     * Deletes the file of a Unix domain socket address, e.g. once the server listening on it stopped.
+     * Nothing is done for other addresses.
+     *
+     * @param address The address.
+     * @throws IOException Thrown when the file exists but cannot be deleted.
+     */
+    public static void deleteSocketFile(SocketAddress address) throws IOException {
+        if (address instanceof UnixDomainSocketAddress) {
+            Path path = ((UnixDomainSocketAddress) address).getPath();
+            Files.deleteIfExists(path);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package models;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Supported kinds of threads for running blocking connection work.
+ */
+public enum ExecutionMode {
+    /**
+     * A cached pool of platform threads.
+     */
+    PLATFORM,
+
+    /**
+     * A new virtual thread per task. Blocked reads park the virtual thread instead of holding a platform thread.
+     */
+    VIRTUAL;
+
+    /**
+     * Returns an executor that starts a thread per task of this kind.
+     * @return The executor.
+     */
+    public ExecutorService newExecutor() {
+        if (this == VIRTUAL) {
+            return Executors.newVirtualThreadPerTaskExecutor();
+        }
+        return Executors.newCachedThreadPool();
+    }
+
+    /**
+     * Returns an executor for short tasks. Platform threads are capped at the given number, virtual threads are not.
+     * @param platformThreads Number of threads of the pool when running on platform threads.
+     * @return The executor.
+     */
+    public ExecutorService newFixedExecutor(int platformThreads) {
+        if (this == VIRTUAL) {
+            return Executors.newVirtualThreadPerTaskExecutor();
+        }
+        return Executors.newFixedThreadPool(platformThreads);
+    }
+}
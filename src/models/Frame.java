@@ -0,0 +1,49 @@
+package models;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * This class holds a complete frame read off a connection: the sender from
+ * the header and the still encoded data of the message.
+ */
+public class Frame {
+    /**
+     * The socket address of the message sender, taken from the header.
+     */
+    private final InetSocketAddress senderSocketAddress;
+
+    /**
+     * The data of the message, positioned at the protocol version.
+     */
+    private final ByteBuffer data;
+
+    /**
+     * Creates a new Frame.
+     *
+     * @param senderSocketAddress The socket address of the message sender.
+     * @param data The data of the message.
+     */
+    public Frame(final InetSocketAddress senderSocketAddress, final ByteBuffer data) {
+        this.senderSocketAddress = senderSocketAddress;
+        this.data = data;
+    }
+
+    /**
+     * Gets the socket address of the message sender.
+     *
+     * @return SocketAddress of the message sender.
+     */
+    public InetSocketAddress getSenderSocketAddress() {
+        return senderSocketAddress;
+    }
+
+    /**
+     * Gets the data of the message.
+     *
+     * @return Data of the message.
+     */
+    public ByteBuffer getData() {
+        return data;
+    }
+}
@@ -4,32 +4,59 @@ package models;
  * Supported message types.
  */
 public enum MessageType {
-    ACKNOWLEDGEMENT("ACK"),
-    BYE("BYE"),
-    DEAD_USER("DED"),
-    HELLO("HLO"),
-    HOST_ROOM("HST"),
-    LEADER("LDR"),
-    MESSAGE("MSG"),
-    NEGATIVE_ACKNOWLEDGEMENT("NAK"),
-    USER_RANK_ORDER("ORD"),
-    REQUEST_ROOM_LIST("ROM"),
-    ROOM_LIST("LST"),
-    USER("USR"),
-    YOU("YOU"),
-    PROCESS("PRC"),
-    QUEUE("QUE"),
-    HOST_UPDATED("RPL"),
-    LEADER_VOTE("VOT");
+    ACKNOWLEDGEMENT("ACK", 0x01),
+    BYE("BYE", 0x02),
+    DEAD_USER("DED", 0x03),
+    HELLO("HLO", 0x04),
+    HOST_ROOM("HST", 0x05),
+    LEADER("LDR", 0x06),
+    MESSAGE("MSG", 0x07),
+    NEGATIVE_ACKNOWLEDGEMENT("NAK", 0x08),
+    USER_RANK_ORDER("ORD", 0x09),
+    REQUEST_ROOM_LIST("ROM", 0x0A),
+    ROOM_LIST("LST", 0x0B),
+    USER("USR", 0x0C),
+    YOU("YOU", 0x0D),
+    PROCESS("PRC", 0x0E),
+    QUEUE("QUE", 0x0F),
+    HOST_UPDATED("RPL", 0x10),
+    LEADER_VOTE("VOT", 0x11),
+    ENCRYPTED("ENC", 0x12),
+    CAUSAL_MESSAGE("CSL", 0x13),
+    SEQUENCED_MESSAGE("SEQ", 0x14),
+    BROADCAST("BCT", 0x15),
+    GOSSIP("GSP", 0x16),
+    I_HAVE("IHV", 0x17),
+    GRAFT("GFT", 0x18),
+    PRUNE("PRN", 0x19),
+    DISCONNECTED("DIS", 0x1A),
+    MULTICAST("MCT", 0x1B),
+    HEARTBEAT("HBT", 0x1C),
+    ORDER_STATE("OST", 0x1D);
+
+    /**
+     * Lookup table from opcode to MessageType.
+     */
+    private static final MessageType[] OPCODE_TABLE = new MessageType[256];
+
+    static {
+        for (MessageType messageType : values()) {
+            OPCODE_TABLE[messageType.opcode & 0xFF] = messageType;
+        }
+    }
 
     private final String protocolCode;
 
+    private final byte opcode;
+
     /**
-     * Constructs a MessageType enum with the protocol code.
+     * Constructs a MessageType enum with the protocol code and binary opcode.
      * @param protocolCode The protocol code.
+     * @param opcode The one byte opcode used on the wire.
      */
-    MessageType(final String protocolCode) {
+    MessageType(final String protocolCode, final int opcode) {
         this.protocolCode = protocolCode;
+        this.opcode = (byte) opcode;
     }
 
     /**
@@ -39,4 +66,21 @@ public enum MessageType {
     public String getProtocolCode() {
         return protocolCode;
     }
+
+    /**
+     * Returns the one byte opcode identifying this type on the wire.
+     * @return The opcode.
+     */
+    public byte getOpcode() {
+        return opcode;
+    }
+
+    /**
+     * Returns the MessageType with the given opcode.
+     * @param opcode The opcode read from the wire.
+     * @return The matching MessageType, or null if the opcode is unknown.
+     */
+    public static MessageType fromOpcode(final byte opcode) {
+        return OPCODE_TABLE[opcode & 0xFF];
+    }
 }
@@ -0,0 +1,24 @@
+package models;
+
+/**
+ * Supported orders in which chat messages of a room are delivered.
+ * Every member of a room should use the same order.
+ */
+public enum OrderingMode {
+    /**
+     * A single Lamport timestamp shared by the room. Messages are delivered in timestamp order.
+     */
+    LAMPORT,
+
+    /**
+     * Per-sender sequence numbers with the dependencies of each message. A message is delivered once every
+     * message delivered by its sender before sending it has been delivered, and is held back for nothing else.
+     */
+    CAUSAL,
+
+    /**
+     * A room sequence number given out by the host. Messages are submitted to the host and every member
+     * delivers them in sequence order, asking the host again for messages that went missing.
+     */
+    SEQUENCED
+}
@@ -0,0 +1,37 @@
+package models;
+
+/**
+ * Supported ways members of a room are connected to each other.
+ * Every member of a room should use the same topology.
+ */
+public enum RoomTopology {
+    /**
+     * Every member is connected to every other member and sends room messages to each of them.
+     */
+    MESH,
+
+    /**
+     * Members are only connected to the host, which forwards room messages to every other member.
+     */
+    STAR,
+
+    /**
+     * Members are connected to a few random neighbors, about log2 of the room size, and room messages spread
+     * from neighbor to neighbor along an epidemic broadcast tree.
+     */
+    GOSSIP,
+
+    /**
+     * Members form a tree in ranking order, each connected to its parent and a bounded number of children,
+     * and room messages spread from neighbor to neighbor along it.
+     */
+    TREE;
+
+    /**
+     * Returns whether room messages spread from neighbor to neighbor, so members are connected to a few others only.
+     * @return True for gossip and tree rooms.
+     */
+    public boolean isGossip() {
+        return this == GOSSIP || this == TREE;
+    }
+}
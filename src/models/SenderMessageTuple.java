@@ -3,13 +3,16 @@ import models.messages.ChatMessage;
 /**
  * This class is for holding a queued chat message to be released when the timestamp is
  * found to be low enough. It can be compared to others with compareTo to see which is earlier.
+ * It remembers when it was queued, so the time messages are held back can be measured.
  */
 public class SenderMessageTuple implements Comparable<SenderMessageTuple> {
 	public final User sender;
 	public final ChatMessage message;
+	public final long queuedTime;
 	public SenderMessageTuple(User sender, ChatMessage message) {
 		this.sender = sender;
 		this.message = message;
+		this.queuedTime = System.nanoTime();
 	}
 
 	/**
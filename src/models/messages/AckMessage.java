@@ -1,8 +1,10 @@
 package models.messages;
 
+import helpers.MessageFieldHelper;
 import models.MessageType;
 
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
 
 public class AckMessage extends Message {
 
@@ -23,7 +25,17 @@ public class AckMessage extends Message {
     }
 
     @Override
-    protected String getData() {
-        return String.format("%s %s", MessageType.ACKNOWLEDGEMENT.getProtocolCode(), information);
+    public MessageType getMessageType() {
+        return MessageType.ACKNOWLEDGEMENT;
+    }
+
+    @Override
+    protected int getFieldsSize() {
+        return MessageFieldHelper.sizeOf(information);
+    }
+
+    @Override
+    protected void writeFields(ByteBuffer buffer) {
+        MessageFieldHelper.putString(buffer, information);
     }
 }
@@ -0,0 +1,74 @@
+package models.messages;
+
+import models.MessageType;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * A message for the whole room, sealed by the member that wrote it, which the host of a star room
+ * forwards to every other member as is.
+ * The header carries the socket address of the writing member, and the sealed bytes (see EncryptedMessage)
+ * take up the rest of the data. Only the sealed bytes are sent. The message they hold is decrypted when
+ * the broadcast is received, so forwarding never decrypts or encrypts again.
+ * BCT <sealed message>
+ * Instances are immutable, so one instance can be queued on many SocketHandlers at once.
+ */
+public class BroadcastMessage extends Message {
+
+    private final byte[] ciphertext;
+
+    private final Message message;
+
+    /**
+     * Constructs a broadcast message to send.
+     * @param senderSocketAddress The socket address of the member that wrote the message.
+     * @param ciphertext The sealed bytes of the message.
+     */
+    public BroadcastMessage(final InetSocketAddress senderSocketAddress, final byte[] ciphertext) {
+        this(senderSocketAddress, ciphertext, null);
+    }
+
+    /**
+     * Constructs a received broadcast message.
+     * @param senderSocketAddress The socket address of the member that wrote the message.
+     * @param ciphertext The sealed bytes of the message.
+     * @param message The message decrypted from the sealed bytes.
+     */
+    public BroadcastMessage(final InetSocketAddress senderSocketAddress, final byte[] ciphertext, final Message message) {
+        super(senderSocketAddress);
+        this.ciphertext = ciphertext;
+        this.message = message;
+    }
+
+    /**
+     * Returns the sealed bytes of the message. They must not be modified.
+     * @return byte[] The sealed bytes.
+     */
+    public byte[] getCiphertext() {
+        return ciphertext;
+    }
+
+    /**
+     * Returns the message decrypted from the sealed bytes.
+     * @return The message, or null if this broadcast was not received.
+     */
+    public Message getMessage() {
+        return message;
+    }
+
+    @Override
+    public MessageType getMessageType() {
+        return MessageType.BROADCAST;
+    }
+
+    @Override
+    protected int getFieldsSize() {
+        return ciphertext.length;
+    }
+
+    @Override
+    protected void writeFields(ByteBuffer buffer) {
+        buffer.put(ciphertext);
+    }
+}
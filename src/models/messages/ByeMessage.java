@@ -3,6 +3,7 @@ package models.messages;
 import models.MessageType;
 
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
 
 public class ByeMessage extends Message {
 
@@ -11,7 +12,16 @@ public class ByeMessage extends Message {
     }
 
     @Override
-    protected String getData() {
-        return MessageType.BYE.getProtocolCode();
+    public MessageType getMessageType() {
+        return MessageType.BYE;
+    }
+
+    @Override
+    protected int getFieldsSize() {
+        return 0;
+    }
+
+    @Override
+    protected void writeFields(ByteBuffer buffer) {
     }
 }
@@ -0,0 +1,79 @@
+package models.messages;
+
+import helpers.MessageFieldHelper;
+import models.MessageType;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * A chat message ordered causally.
+ * Carries the sequence number of the message among those of its sender, and the dependencies of the message:
+ * the number of messages of every other sender its sender had delivered before sending it.
+ * Senders whose messages had not been delivered are left out, which keeps the message compact.
+ * CSL <sequence><dependencyCount><socket address1><sequence1>...<message>
+ */
+public class CausalChatMessage extends ChatMessage {
+
+    private final Map<InetSocketAddress, Integer> dependencies;
+
+    /**
+     * Constructs a causal chat message.
+     * @param senderSocketAddress The socket address identifying the sender in sequence numbers.
+     * @param sequence The sequence number of this message among those of its sender, starting at 1.
+     * @param dependencies Sender socket addresses mapped to the number of their messages delivered before this one.
+     * @param message The text of the message.
+     */
+    public CausalChatMessage(final InetSocketAddress senderSocketAddress, final int sequence,
+                             final Map<InetSocketAddress, Integer> dependencies, final String message) {
+        super(senderSocketAddress, sequence, message);
+        this.dependencies = Collections.unmodifiableMap(dependencies);
+    }
+
+    /**
+     * Returns the sequence number of this message among those of its sender.
+     * @return The sequence number, which is also the timestamp.
+     */
+    public int getSequence() {
+        return getTimestamp();
+    }
+
+    /**
+     * Returns the number of messages of each other sender delivered before this message was sent.
+     * @return Unmodifiable map of sender socket addresses to sequence numbers.
+     */
+    public Map<InetSocketAddress, Integer> getDependencies() {
+        return dependencies;
+    }
+
+    @Override
+    public MessageType getMessageType() {
+        return MessageType.CAUSAL_MESSAGE;
+    }
+
+    @Override
+    protected int getFieldsSize() {
+        int size = 4 + 4;
+        for (InetSocketAddress sender : dependencies.keySet()) {
+            size += MessageFieldHelper.sizeOf(sender) + 4;
+        }
+        return size + MessageFieldHelper.sizeOf(getMessage());
+    }
+
+    /**
+     * Formats fields as follows:
+     * <sequence><dependencyCount><socket address1><sequence1>...<message>
+     */
+    @Override
+    protected void writeFields(ByteBuffer buffer) {
+        buffer.putInt(getSequence());
+        buffer.putInt(dependencies.size());
+        for (Map.Entry<InetSocketAddress, Integer> dependency : dependencies.entrySet()) {
+            MessageFieldHelper.putSocketAddress(buffer, dependency.getKey());
+            buffer.putInt(dependency.getValue());
+        }
+        MessageFieldHelper.putString(buffer, getMessage());
+    }
+}
@@ -1,8 +1,10 @@
 package models.messages;
 
+import helpers.MessageFieldHelper;
 import models.MessageType;
 
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
 
 public class ChatMessage extends Message {
 
@@ -25,8 +27,19 @@ public class ChatMessage extends Message {
     }
 
     @Override
-    protected String getData() {
-        return String.format("%s %d %s", MessageType.MESSAGE.getProtocolCode(),timestamp, message);
+    public MessageType getMessageType() {
+        return MessageType.MESSAGE;
+    }
+
+    @Override
+    protected int getFieldsSize() {
+        return 4 + MessageFieldHelper.sizeOf(message);
+    }
+
+    @Override
+    protected void writeFields(ByteBuffer buffer) {
+        buffer.putInt(timestamp);
+        MessageFieldHelper.putString(buffer, message);
     }
 
     @Override
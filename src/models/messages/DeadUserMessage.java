@@ -1,42 +1,71 @@
 package models.messages;
 
+import helpers.MessageFieldHelper;
 import models.MessageType;
 import models.User;
 
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.List;
 
 /**
- * Dead user info message:
- * DED <username> <sourceIpAddress> <sourcePort>
+ * Tells the room that members left or died, batching those noticed close together:
+ * DED <membershipVersion><userCount><user1><user2>...
+ *
+ * The membership version is the number of members the sender knows to have left the room, the dead users included.
  */
 public class DeadUserMessage extends Message {
 
-    private final User deadUser;
+    private final int membershipVersion;
 
-    public DeadUserMessage(final User sender, final User deadUser) {
-        super(sender.getSocketAddress());
-        this.deadUser = deadUser;
-    }
+    private final List<User> deadUsers;
 
-    public DeadUserMessage(final InetSocketAddress senderSocketAddress, final User deadUser) {
+    public DeadUserMessage(final InetSocketAddress senderSocketAddress, final int membershipVersion, final List<User> deadUsers) {
         super(senderSocketAddress);
-        this.deadUser = deadUser;
+        this.membershipVersion = membershipVersion;
+        this.deadUsers = deadUsers;
+    }
+
+    /**
+     * Returns the number of members the sender knew to have left the room when sending.
+     * @return The membership version of the sender.
+     */
+    public int getMembershipVersion() {
+        return membershipVersion;
     }
 
     /**
-     * Returns the user whose information was sent.
-     * @return Sent user information.
+     * Returns the users that left or died.
+     * @return Dead users.
      */
-    public User getDeadUser() {
-        return deadUser;
+    public List<User> getDeadUsers() {
+        return deadUsers;
+    }
+
+    @Override
+    public MessageType getMessageType() {
+        return MessageType.DEAD_USER;
+    }
+
+    @Override
+    protected int getFieldsSize() {
+        int size = 8;
+        for (User user : deadUsers) {
+            size += MessageFieldHelper.sizeOf(user);
+        }
+        return size;
     }
 
     /**
-     * @return the payload attached to this message
+     * Formats fields as follows:
+     * <membershipVersion><userCount><user1><user2>...
      */
     @Override
-    public String getData() {
-        return String.format("%s %s %s %d", MessageType.DEAD_USER.getProtocolCode(), deadUser.getUsername(),
-                deadUser.getIpAddress().getHostAddress(), deadUser.getPort());
+    protected void writeFields(ByteBuffer buffer) {
+        buffer.putInt(membershipVersion);
+        buffer.putInt(deadUsers.size());
+        for (User user : deadUsers) {
+            MessageFieldHelper.putUser(buffer, user);
+        }
     }
 }
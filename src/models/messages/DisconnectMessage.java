@@ -0,0 +1,30 @@
+package models.messages;
+
+import models.MessageType;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * Tells a peer that the connection is closed while the sender stays in the room, unlike a ByeMessage.
+ */
+public class DisconnectMessage extends Message {
+
+    public DisconnectMessage(final InetSocketAddress senderSocketAddress) {
+        super(senderSocketAddress);
+    }
+
+    @Override
+    public MessageType getMessageType() {
+        return MessageType.DISCONNECTED;
+    }
+
+    @Override
+    protected int getFieldsSize() {
+        return 0;
+    }
+
+    @Override
+    protected void writeFields(ByteBuffer buffer) {
+    }
+}
@@ -1,11 +1,15 @@
 package models.messages;
 
+import models.MessageType;
+
 import java.net.InetSocketAddress;
-import java.util.Base64;
+import java.nio.ByteBuffer;
 
 /**
 * A message class for storing other messages in an encryted form.
-* Uses Base64 encoding to store the byte[] data as a String.
+* The sealed bytes (nonce, ciphertext and authentication tag, see EncryptionEngine) are written
+* as raw bytes and take up the rest of the data.
+* Instances are immutable, so one instance can be queued on many SocketHandlers at once.
 */
 public class EncryptedMessage extends Message {
 
@@ -14,24 +18,15 @@ public class EncryptedMessage extends Message {
     /**
      * Constructs an encrypted message with the bytes of an encrypted message
      * @param senderSocketAddress The sender information to store in the header
-     * @param ciphertext The bytes of the encrypted data
+     * @param ciphertext The sealed bytes of the encrypted data
      */
     public EncryptedMessage(final InetSocketAddress senderSocketAddress, final byte[] ciphertext) {
         super(senderSocketAddress);
         this.ciphertext = ciphertext;
     }
-    /**
-     * Creates an encrypted message with a Base64 encoded string
-     * @param senderSocketAddress The sender information to store in the header
-     * @param ciphertext The Base64 encoded bytes of the encrypted data
-     */
-    public EncryptedMessage(final InetSocketAddress senderSocketAddress, final String ciphertext) {
-        super(senderSocketAddress);
-        this.ciphertext = Base64.getDecoder().decode(ciphertext);
-    }
 
     /**
-     * Returns the byte[] representing the encrypted data
+     * Returns the byte[] representing the encrypted data. It must not be modified.
      * @return byte[] The encrypted body of the message
      */
     public byte[] getCiphertext() {
@@ -39,7 +34,17 @@ public class EncryptedMessage extends Message {
     }
 
     @Override
-    protected String getData() {
-        return new String(Base64.getEncoder().encode(ciphertext));
+    public MessageType getMessageType() {
+        return MessageType.ENCRYPTED;
+    }
+
+    @Override
+    protected int getFieldsSize() {
+        return ciphertext.length;
+    }
+
+    @Override
+    protected void writeFields(ByteBuffer buffer) {
+        buffer.put(ciphertext);
     }
 }
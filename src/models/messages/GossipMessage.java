@@ -0,0 +1,60 @@
+package models.messages;
+
+import models.MessageType;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * A message for the whole room, sealed by the member that wrote it and spread by gossip from neighbor to neighbor.
+ * The header carries the socket address of the writing member, which together with the sequence number
+ * identifies the message in the room. Neighbors forward the sealed bytes as is, see BroadcastMessage.
+ * GSP <sequence><sealed message>
+ */
+public class GossipMessage extends BroadcastMessage {
+
+    private final int sequence;
+
+    /**
+     * Constructs a gossip message to send.
+     * @param senderSocketAddress The socket address of the member that wrote the message.
+     * @param sequence The number the member gave the message.
+     * @param ciphertext The sealed bytes of the message.
+     */
+    public GossipMessage(final InetSocketAddress senderSocketAddress, final int sequence, final byte[] ciphertext) {
+        this(senderSocketAddress, sequence, ciphertext, null);
+    }
+
+    /**
+     * Constructs a received gossip message.
+     * @param senderSocketAddress The socket address of the member that wrote the message.
+     * @param sequence The number the member gave the message.
+     * @param ciphertext The sealed bytes of the message.
+     * @param message The message decrypted from the sealed bytes.
+     */
+    public GossipMessage(final InetSocketAddress senderSocketAddress, final int sequence, final byte[] ciphertext,
+                         final Message message) {
+        super(senderSocketAddress, ciphertext, message);
+        this.sequence = sequence;
+    }
+
+    public int getSequence() {
+        return sequence;
+    }
+
+    @Override
+    public MessageType getMessageType() {
+        return MessageType.GOSSIP;
+    }
+
+    @Override
+    protected int getFieldsSize() {
+        return 4 + super.getFieldsSize();
+    }
+
+    @Override
+    protected void writeFields(ByteBuffer buffer) {
+        buffer.putInt(sequence);
+        super.writeFields(buffer);
+    }
+}
@@ -0,0 +1,54 @@
+package models.messages;
+
+import helpers.MessageFieldHelper;
+import models.MessageType;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * Asks a neighbor for a gossip message it announced, and to push gossip messages to the sender from now on.
+ * GFT <origin address><sequence>
+ */
+public class GraftMessage extends Message {
+
+    private final InetSocketAddress originSocketAddress;
+
+    private final int sequence;
+
+    /**
+     * Constructs a request for a gossip message.
+     * @param senderSocketAddress The socket address of the requesting member.
+     * @param originSocketAddress The socket address of the member that wrote the gossip message.
+     * @param sequence The sequence number of the gossip message.
+     */
+    public GraftMessage(final InetSocketAddress senderSocketAddress, final InetSocketAddress originSocketAddress, final int sequence) {
+        super(senderSocketAddress);
+        this.originSocketAddress = originSocketAddress;
+        this.sequence = sequence;
+    }
+
+    public InetSocketAddress getOriginSocketAddress() {
+        return originSocketAddress;
+    }
+
+    public int getSequence() {
+        return sequence;
+    }
+
+    @Override
+    public MessageType getMessageType() {
+        return MessageType.GRAFT;
+    }
+
+    @Override
+    protected int getFieldsSize() {
+        return MessageFieldHelper.sizeOf(originSocketAddress) + 4;
+    }
+
+    @Override
+    protected void writeFields(ByteBuffer buffer) {
+        MessageFieldHelper.putSocketAddress(buffer, originSocketAddress);
+        buffer.putInt(sequence);
+    }
+}
@@ -0,0 +1,30 @@
+package models.messages;
+
+import models.MessageType;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * Tells a peer that the sender is still alive. Sent periodically on every peer connection.
+ */
+public class HeartbeatMessage extends Message {
+
+    public HeartbeatMessage(final InetSocketAddress senderSocketAddress) {
+        super(senderSocketAddress);
+    }
+
+    @Override
+    public MessageType getMessageType() {
+        return MessageType.HEARTBEAT;
+    }
+
+    @Override
+    protected int getFieldsSize() {
+        return 0;
+    }
+
+    @Override
+    protected void writeFields(ByteBuffer buffer) {
+    }
+}
@@ -1,8 +1,11 @@
 package models.messages;
 
+import helpers.MessageFieldHelper;
 import models.MessageType;
 import models.User;
 
+import java.nio.ByteBuffer;
+
 /**
  * Hello message to pass the senderUsername and the sourcePort to connect to for communication.
  * HLO <senderUsername> <sourcePort>
@@ -21,8 +24,17 @@ public class HelloMessage extends Message {
     }
 
     @Override
-    protected String getData() {
-        return String.format("%s %s %s %d", MessageType.HELLO.getProtocolCode(),
-                sender.getUsername(), this.senderSocketAddress.getHostString(), this.senderSocketAddress.getPort());
+    public MessageType getMessageType() {
+        return MessageType.HELLO;
+    }
+
+    @Override
+    protected int getFieldsSize() {
+        return MessageFieldHelper.sizeOf(sender);
+    }
+
+    @Override
+    protected void writeFields(ByteBuffer buffer) {
+        MessageFieldHelper.putUser(buffer, sender);
     }
 }
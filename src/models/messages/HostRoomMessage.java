@@ -1,9 +1,10 @@
 package models.messages;
 
+import helpers.MessageFieldHelper;
 import models.MessageType;
 
 import java.net.InetSocketAddress;
-import java.util.Base64;
+import java.nio.ByteBuffer;
 
 public class HostRoomMessage extends Message {
     private byte[] encryptedHostInformation;
@@ -12,23 +13,23 @@ public class HostRoomMessage extends Message {
         super(senderSocketAddress);
         this.encryptedHostInformation = encryptedHostInformation;
     }
-
-    public HostRoomMessage(final InetSocketAddress senderSocketAddress, String encryptedHostInformation) {
-        super(senderSocketAddress);
-        this.encryptedHostInformation = parseString(encryptedHostInformation);
-    }
     
     public byte[] getRoomData() {
     	return encryptedHostInformation;
     }
 
-    private byte[] parseString(String messageContent) {
-        messageContent = messageContent.trim();
-        return Base64.getDecoder().decode(messageContent);
+    @Override
+    public MessageType getMessageType() {
+        return MessageType.HOST_ROOM;
     }
-    
+
+    @Override
+    protected int getFieldsSize() {
+        return MessageFieldHelper.sizeOf(encryptedHostInformation);
+    }
+
     @Override
-    protected String getData() {
-        return String.format("%s %s", MessageType.HOST_ROOM.getProtocolCode(), new String(Base64.getEncoder().encode(encryptedHostInformation)));
+    protected void writeFields(ByteBuffer buffer) {
+        MessageFieldHelper.putBytes(buffer, encryptedHostInformation);
     }
 }
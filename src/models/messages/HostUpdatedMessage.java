@@ -1,8 +1,9 @@
 package models.messages;
 
 import java.net.InetSocketAddress;
-import java.util.Base64;
+import java.nio.ByteBuffer;
 
+import helpers.MessageFieldHelper;
 import models.MessageType;
 
 public class HostUpdatedMessage extends Message {
@@ -14,13 +15,6 @@ public class HostUpdatedMessage extends Message {
 		this.token = token;
 		this.newEncryptedHost = encryptedHost;
 	}
-
-	public HostUpdatedMessage(InetSocketAddress senderSocketAddress, String content) {
-		super(senderSocketAddress);
-		String[] splitContent = content.split(" ");
-		this.token = splitContent[0];
-		this.newEncryptedHost = Base64.getDecoder().decode(splitContent[1]);
-	}
 	
 	public String getToken(){
 		return token;
@@ -29,15 +23,20 @@ public class HostUpdatedMessage extends Message {
 	public byte[] getEncryptedHost(){
 		return newEncryptedHost;
 	}
-	
-    @Override
-    protected String getData() {
-        StringBuilder stringBuilder = new StringBuilder();
-        stringBuilder.append(MessageType.HOST_UPDATED.getProtocolCode());
-        stringBuilder.append(" ");
-        stringBuilder.append(token);
-        stringBuilder.append(" ");
-        stringBuilder.append(new String(Base64.getEncoder().encode(newEncryptedHost)));
-        return stringBuilder.toString();
-    }
+
+	@Override
+	public MessageType getMessageType() {
+		return MessageType.HOST_UPDATED;
+	}
+
+	@Override
+	protected int getFieldsSize() {
+		return MessageFieldHelper.sizeOf(token) + MessageFieldHelper.sizeOf(newEncryptedHost);
+	}
+
+	@Override
+	protected void writeFields(ByteBuffer buffer) {
+		MessageFieldHelper.putString(buffer, token);
+		MessageFieldHelper.putBytes(buffer, newEncryptedHost);
+	}
 }
@@ -0,0 +1,54 @@
+package models.messages;
+
+import helpers.MessageFieldHelper;
+import models.MessageType;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * Announces a gossip message to a neighbor that it is not pushed to.
+ * IHV <origin address><sequence>
+ */
+public class IHaveMessage extends Message {
+
+    private final InetSocketAddress originSocketAddress;
+
+    private final int sequence;
+
+    /**
+     * Constructs an announcement of a gossip message.
+     * @param senderSocketAddress The socket address of the announcing member.
+     * @param originSocketAddress The socket address of the member that wrote the gossip message.
+     * @param sequence The sequence number of the gossip message.
+     */
+    public IHaveMessage(final InetSocketAddress senderSocketAddress, final InetSocketAddress originSocketAddress, final int sequence) {
+        super(senderSocketAddress);
+        this.originSocketAddress = originSocketAddress;
+        this.sequence = sequence;
+    }
+
+    public InetSocketAddress getOriginSocketAddress() {
+        return originSocketAddress;
+    }
+
+    public int getSequence() {
+        return sequence;
+    }
+
+    @Override
+    public MessageType getMessageType() {
+        return MessageType.I_HAVE;
+    }
+
+    @Override
+    protected int getFieldsSize() {
+        return MessageFieldHelper.sizeOf(originSocketAddress) + 4;
+    }
+
+    @Override
+    protected void writeFields(ByteBuffer buffer) {
+        MessageFieldHelper.putSocketAddress(buffer, originSocketAddress);
+        buffer.putInt(sequence);
+    }
+}
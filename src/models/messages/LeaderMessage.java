@@ -1,28 +1,53 @@
 package models.messages;
 
+import helpers.MessageFieldHelper;
 import models.MessageType;
 import models.User;
 
+import java.nio.ByteBuffer;
+
 /**
  * Leader message to claim new hosting rights.
- * HLO <senderUsername> <sourceAddress>
+ * Carries the epoch the new host numbers sequenced messages in, which every member takes over.
+ * LDR <sender><epoch>
  */
 public class LeaderMessage extends Message {
 
     private final User sender;
 
-    public LeaderMessage(final User sender) {
+    private final int epoch;
+
+    public LeaderMessage(final User sender, final int epoch) {
         super(sender.getSocketAddress());
         this.sender = sender;
+        this.epoch = epoch;
     }
 
     public User getSender() {
         return sender;
     }
 
+    /**
+     * Returns the epoch of the new host.
+     * @return The epoch, 0 unless the room is sequenced.
+     */
+    public int getEpoch() {
+        return epoch;
+    }
+
+    @Override
+    public MessageType getMessageType() {
+        return MessageType.LEADER;
+    }
+
+    @Override
+    protected int getFieldsSize() {
+        return MessageFieldHelper.sizeOf(sender) + 4;
+    }
+
     @Override
-    protected String getData() {
-        return String.format("%s %s %s %d", MessageType.LEADER.getProtocolCode(),
-                sender.getUsername(), this.senderSocketAddress.getHostString(), this.senderSocketAddress.getPort());
+    protected void writeFields(ByteBuffer buffer) {
+        MessageFieldHelper.putUser(buffer, sender);
+        buffer.putInt(epoch);
     }
 }
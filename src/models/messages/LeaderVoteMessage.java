@@ -1,8 +1,11 @@
 package models.messages;
 
+import helpers.MessageFieldHelper;
 import models.MessageType;
 import models.User;
 
+import java.nio.ByteBuffer;
+
 /**
  * LeaderVote message to pass the senderUsername and the sourcePort to send a vote in receivers favour.
  * VOT <senderUsername> <sourceAddress>
@@ -21,8 +24,17 @@ public class LeaderVoteMessage extends Message {
     }
 
     @Override
-    protected String getData() {
-        return String.format("%s %s %s %d", MessageType.LEADER_VOTE.getProtocolCode(),
-                sender.getUsername(), this.senderSocketAddress.getHostString(), this.senderSocketAddress.getPort());
+    public MessageType getMessageType() {
+        return MessageType.LEADER_VOTE;
+    }
+
+    @Override
+    protected int getFieldsSize() {
+        return MessageFieldHelper.sizeOf(sender);
+    }
+
+    @Override
+    protected void writeFields(ByteBuffer buffer) {
+        MessageFieldHelper.putUser(buffer, sender);
     }
 }
@@ -1,5 +1,7 @@
 package models.messages;
 
+import models.MessageType;
+
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 
@@ -13,6 +15,11 @@ import java.nio.ByteBuffer;
  * size = 4 bytes, size of message in bytes
  * data = the data of the message
  *
+ * Data follows a format of <version><opcode><fields>
+ * version = 1 byte, binary protocol version
+ * opcode = 1 byte, opcode of the MessageType
+ * fields = the fields of the message, encoded as described in MessageFieldHelper
+ *
  * @author Clinton Cabiles
  * @author Jan Clarin
  * @author Riley Lahd
@@ -23,6 +30,16 @@ public abstract class Message {
 	 */
 	public static final int BYTE_HEADER_SIZE = 12;
 
+	/**
+	 * Number of bytes in front of the fields of the data, the version and opcode.
+	 */
+	public static final int BYTE_DATA_PREFIX_SIZE = 2;
+
+	/**
+	 * Version of the binary protocol written by this class.
+	 */
+	public static final byte PROTOCOL_VERSION = 1;
+
 	/**
 	 * The socket address of the message sender.
 	 */
@@ -38,11 +55,25 @@ public abstract class Message {
 	}
 
 	/**
-     * The data payload of the message as a String. This must be overridden by subclasses to return proper format.
+	 * The type of the message, which determines the opcode written to the data.
 	 *
-	 * @return Data payload of the message as a String.
+	 * @return MessageType of the message.
 	 */
-	protected abstract String getData();
+	public abstract MessageType getMessageType();
+
+	/**
+	 * The number of bytes writeFields will write. This must be overridden by subclasses to match writeFields.
+	 *
+	 * @return Size of the fields in bytes.
+	 */
+	protected abstract int getFieldsSize();
+
+	/**
+	 * Writes the fields of the message. This must be overridden by subclasses to write the proper format.
+	 *
+	 * @param buffer The buffer to write the fields to.
+	 */
+	protected abstract void writeFields(ByteBuffer buffer);
 
     /**
      * Returns the message sender's socket address.
@@ -54,18 +85,56 @@ public abstract class Message {
     }
 
     /**
-     * Converts the message into its representation in bytes. Relies on getData() returning the proper protocol info.
+     * Converts the message into its representation in bytes. Relies on writeFields() writing the proper protocol info.
 	 *
      * @return Byte array representing the message.
      */
     public byte[] toByteArray() {
-        byte[] dataBytes = getData().getBytes();
-        ByteBuffer buffer = ByteBuffer.allocate(BYTE_HEADER_SIZE + dataBytes.length);
+        ByteBuffer buffer = ByteBuffer.allocate(getEncodedSize());
+        writeTo(buffer);
+        return buffer.array();
+    }
+
+    /**
+     * Returns the number of bytes writeTo will write, the header followed by the data.
+     *
+     * @return Size of the encoded message in bytes.
+     */
+    public int getEncodedSize() {
+        return BYTE_HEADER_SIZE + getDataSize();
+    }
+
+    /**
+     * Writes the message, the header followed by the data, into the buffer without any intermediate copies.
+     *
+     * @param buffer The buffer to write to. Must have at least getEncodedSize() bytes remaining.
+     */
+    public void writeTo(ByteBuffer buffer) {
         buffer.put(senderSocketAddress.getAddress().getAddress());
         buffer.putInt(senderSocketAddress.getPort());
-        buffer.putInt(dataBytes.length);
-        buffer.put(dataBytes);
-        return buffer.array();
+        buffer.putInt(getDataSize());
+        writeData(buffer);
+    }
+
+    /**
+     * Returns the size of the data, the version and opcode followed by the fields.
+     *
+     * @return Size of the data in bytes.
+     */
+    public int getDataSize() {
+        return BYTE_DATA_PREFIX_SIZE + getFieldsSize();
+    }
+
+    /**
+     * Writes the data of the message, the version and opcode followed by the fields.
+     * This is the part of the message that is encrypted.
+     *
+     * @param buffer The buffer to write the data to.
+     */
+    public void writeData(ByteBuffer buffer) {
+        buffer.put(PROTOCOL_VERSION);
+        buffer.put(getMessageType().getOpcode());
+        writeFields(buffer);
     }
 
 	/**
@@ -0,0 +1,72 @@
+package models.messages;
+
+import models.MessageType;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * A chat message for the whole room, sealed by the member that wrote it and sent once to the multicast group
+ * of the room. The header carries the socket address of the writing member. The session tells apart runs of
+ * the member's multicast lane, and the sequence number orders the messages of one session, so members notice
+ * lost datagrams. Lost messages are sent again over the connection to the member as is, see BroadcastMessage.
+ * MCT <session><sequence><sealed message>
+ */
+public class MulticastMessage extends BroadcastMessage {
+
+    private final int session;
+
+    private final int sequence;
+
+    /**
+     * Constructs a multicast message to send.
+     * @param senderSocketAddress The socket address of the member that wrote the message.
+     * @param session The session of the member's multicast lane.
+     * @param sequence The number the member gave the message in the session.
+     * @param ciphertext The sealed bytes of the message.
+     */
+    public MulticastMessage(final InetSocketAddress senderSocketAddress, final int session, final int sequence,
+                            final byte[] ciphertext) {
+        this(senderSocketAddress, session, sequence, ciphertext, null);
+    }
+
+    /**
+     * Constructs a received multicast message.
+     * @param senderSocketAddress The socket address of the member that wrote the message.
+     * @param session The session of the member's multicast lane.
+     * @param sequence The number the member gave the message in the session.
+     * @param ciphertext The sealed bytes of the message.
+     * @param message The message decrypted from the sealed bytes.
+     */
+    public MulticastMessage(final InetSocketAddress senderSocketAddress, final int session, final int sequence,
+                            final byte[] ciphertext, final Message message) {
+        super(senderSocketAddress, ciphertext, message);
+        this.session = session;
+        this.sequence = sequence;
+    }
+
+    public int getSession() {
+        return session;
+    }
+
+    public int getSequence() {
+        return sequence;
+    }
+
+    @Override
+    public MessageType getMessageType() {
+        return MessageType.MULTICAST;
+    }
+
+    @Override
+    protected int getFieldsSize() {
+        return 4 + 4 + super.getFieldsSize();
+    }
+
+    @Override
+    protected void writeFields(ByteBuffer buffer) {
+        buffer.putInt(session);
+        buffer.putInt(sequence);
+        super.writeFields(buffer);
+    }
+}
@@ -0,0 +1,70 @@
+package models.messages;
+
+import models.MessageType;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * Negative acknowledgement of a range of sequenced chat messages.
+ * Sent to the host, it asks for the messages to be sent again. Sent by the host, it tells that they can no longer be.
+ * Messages multicast by a member are acknowledged the same way with the member itself, the epoch then being
+ * the session of the member's multicast lane, which is always below -1.
+ * NAK <epoch><firstSequence><lastSequence>
+ */
+public class NakMessage extends Message {
+
+    private final int epoch;
+
+    private final int firstSequence;
+
+    private final int lastSequence;
+
+    public NakMessage(final InetSocketAddress senderSocketAddress, final int epoch, final int firstSequence, final int lastSequence) {
+        super(senderSocketAddress);
+        this.epoch = epoch;
+        this.firstSequence = firstSequence;
+        this.lastSequence = lastSequence;
+    }
+
+    /**
+     * Returns the epoch of the host the sequence numbers belong to, or the session of a multicast lane.
+     * @return The epoch.
+     */
+    public int getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * Returns the first sequence number of the range.
+     * @return The first sequence number.
+     */
+    public int getFirstSequence() {
+        return firstSequence;
+    }
+
+    /**
+     * Returns the last sequence number of the range, inclusive.
+     * @return The last sequence number.
+     */
+    public int getLastSequence() {
+        return lastSequence;
+    }
+
+    @Override
+    public MessageType getMessageType() {
+        return MessageType.NEGATIVE_ACKNOWLEDGEMENT;
+    }
+
+    @Override
+    protected int getFieldsSize() {
+        return 4 + 4 + 4;
+    }
+
+    @Override
+    protected void writeFields(ByteBuffer buffer) {
+        buffer.putInt(epoch);
+        buffer.putInt(firstSequence);
+        buffer.putInt(lastSequence);
+    }
+}
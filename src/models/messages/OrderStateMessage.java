@@ -0,0 +1,92 @@
+package models.messages;
+
+import helpers.MessageFieldHelper;
+import models.MessageType;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Tells a joining client where the order of the room stands, so it knows which messages it has missed.
+ * Sent by the host before the user rank order. Carries the epoch and next sequence number of a sequenced room,
+ * and the number of messages of every sender the host had delivered, including its own.
+ * OST <epoch><nextSequence><senderCount><socket address1><delivered1>...
+ */
+public class OrderStateMessage extends Message {
+
+    private final int epoch;
+
+    private final int nextSequence;
+
+    private final Map<InetSocketAddress, Integer> deliveredMessages;
+
+    /**
+     * Constructs an order state message.
+     * @param senderSocketAddress The socket address of the host.
+     * @param epoch The epoch of the host in a sequenced room, otherwise 0.
+     * @param nextSequence The sequence number of the next message in a sequenced room, otherwise 0.
+     * @param deliveredMessages Sender socket addresses mapped to the number of their messages the host delivered.
+     */
+    public OrderStateMessage(final InetSocketAddress senderSocketAddress, final int epoch, final int nextSequence,
+                             final Map<InetSocketAddress, Integer> deliveredMessages) {
+        super(senderSocketAddress);
+        this.epoch = epoch;
+        this.nextSequence = nextSequence;
+        this.deliveredMessages = Collections.unmodifiableMap(deliveredMessages);
+    }
+
+    /**
+     * Returns the epoch of the host.
+     * @return The epoch, 0 unless the room is sequenced.
+     */
+    public int getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * Returns the sequence number the host gives the next message.
+     * @return The sequence number, 0 unless the room is sequenced.
+     */
+    public int getNextSequence() {
+        return nextSequence;
+    }
+
+    /**
+     * Returns the number of messages of every sender the host delivered.
+     * @return Unmodifiable map of sender socket addresses to message counts.
+     */
+    public Map<InetSocketAddress, Integer> getDeliveredMessages() {
+        return deliveredMessages;
+    }
+
+    @Override
+    public MessageType getMessageType() {
+        return MessageType.ORDER_STATE;
+    }
+
+    @Override
+    protected int getFieldsSize() {
+        int size = 4 + 4 + 4;
+        for (InetSocketAddress sender : deliveredMessages.keySet()) {
+            size += MessageFieldHelper.sizeOf(sender) + 4;
+        }
+        return size;
+    }
+
+    /**
+     * Formats fields as follows:
+     * <epoch><nextSequence><senderCount><socket address1><delivered1>...
+     */
+    @Override
+    protected void writeFields(ByteBuffer buffer) {
+        buffer.putInt(epoch);
+        buffer.putInt(nextSequence);
+        buffer.putInt(deliveredMessages.size());
+        for (Map.Entry<InetSocketAddress, Integer> delivered : deliveredMessages.entrySet()) {
+            MessageFieldHelper.putSocketAddress(buffer, delivered.getKey());
+            buffer.putInt(delivered.getValue());
+        }
+    }
+}
@@ -1,8 +1,10 @@
 package models.messages;
 
+import helpers.MessageFieldHelper;
 import models.MessageType;
 
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
 import java.util.UUID;
 
 /**
@@ -25,11 +27,17 @@ public class ProcessMessage extends Message {
     }
 
     @Override
-    protected String getData() {
-        StringBuilder stringBuilder = new StringBuilder();
-        stringBuilder.append(MessageType.PROCESS.getProtocolCode());
-        stringBuilder.append("\n");
-        stringBuilder.append(messageId.toString());
-        return stringBuilder.toString();
+    public MessageType getMessageType() {
+        return MessageType.PROCESS;
+    }
+
+    @Override
+    protected int getFieldsSize() {
+        return MessageFieldHelper.UUID_SIZE;
+    }
+
+    @Override
+    protected void writeFields(ByteBuffer buffer) {
+        MessageFieldHelper.putUuid(buffer, messageId);
     }
 }
@@ -0,0 +1,31 @@
+package models.messages;
+
+import models.MessageType;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * Asks a neighbor to stop pushing gossip messages to the sender and only announce them,
+ * since they already arrive another way.
+ */
+public class PruneMessage extends Message {
+
+    public PruneMessage(final InetSocketAddress senderSocketAddress) {
+        super(senderSocketAddress);
+    }
+
+    @Override
+    public MessageType getMessageType() {
+        return MessageType.PRUNE;
+    }
+
+    @Override
+    protected int getFieldsSize() {
+        return 0;
+    }
+
+    @Override
+    protected void writeFields(ByteBuffer buffer) {
+    }
+}
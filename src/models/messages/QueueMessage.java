@@ -1,11 +1,15 @@
 package models.messages;
 
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
 import java.util.UUID;
+
+import helpers.MessageFieldHelper;
 import models.MessageType;
 
 /**
  * Message class to be sent to server when a message should be stored in queue to await processing.
+ * The queued message is written as its opcode followed by its fields and shares the sender of this message.
  */
 public class QueueMessage extends Message {
 	private Message queuedMessage;
@@ -26,14 +30,20 @@ public class QueueMessage extends Message {
 	}
 
 	@Override
-	public String getData() {
-        StringBuilder stringBuilder = new StringBuilder();
-        stringBuilder.append(MessageType.QUEUE.getProtocolCode());
-        stringBuilder.append(" ");
-        stringBuilder.append(messageId.toString());
-        stringBuilder.append("\n");
-        stringBuilder.append(queuedMessage.getData());
-        return stringBuilder.toString();
+	public MessageType getMessageType() {
+		return MessageType.QUEUE;
+	}
+
+	@Override
+	protected int getFieldsSize() {
+		return MessageFieldHelper.UUID_SIZE + 1 + queuedMessage.getFieldsSize();
+	}
+
+	@Override
+	protected void writeFields(ByteBuffer buffer) {
+		MessageFieldHelper.putUuid(buffer, messageId);
+		buffer.put(queuedMessage.getMessageType().getOpcode());
+		queuedMessage.writeFields(buffer);
 	}
 	
 }
@@ -4,6 +4,7 @@ import models.MessageType;
 import models.User;
 
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
 
 public class RequestRoomListMessage extends Message {
 
@@ -16,7 +17,16 @@ public class RequestRoomListMessage extends Message {
     }
 
     @Override
-    public String getData() {
-        return MessageType.REQUEST_ROOM_LIST.getProtocolCode();
+    public MessageType getMessageType() {
+        return MessageType.REQUEST_ROOM_LIST;
+    }
+
+    @Override
+    protected int getFieldsSize() {
+        return 0;
+    }
+
+    @Override
+    protected void writeFields(ByteBuffer buffer) {
     }
 }
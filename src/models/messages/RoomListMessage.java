@@ -1,11 +1,11 @@
 package models.messages;
 
+import helpers.MessageFieldHelper;
 import models.MessageType;
 
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
 import java.util.List;
-import java.util.ArrayList;
-import java.util.Base64;
 
 public class RoomListMessage extends Message {
 
@@ -16,36 +16,32 @@ public class RoomListMessage extends Message {
         this.entries = entries;
     }
 
-    public RoomListMessage(final InetSocketAddress senderSocketAddress, String entryList) {
-        //This constructor builds the entries from a string
-        super(senderSocketAddress);
-        this.entries = buildList(entryList);
-    }
-
     public List<byte[]> getEntries() {
         return entries;
     }
 
-    private List<byte[]> buildList(String listString) {
-        List<byte[]> list = new ArrayList<byte[]>();
-        listString = listString.trim();
-        String[] splitString = listString.split("\n");
-        for(String encodedEntry : splitString) {
-            list.add(Base64.getDecoder().decode(encodedEntry));
+    @Override
+    public MessageType getMessageType() {
+        return MessageType.ROOM_LIST;
+    }
+
+    @Override
+    protected int getFieldsSize() {
+        int size = 4;
+        for (byte[] entry : entries) {
+            size += MessageFieldHelper.sizeOf(entry);
         }
-        return list;
+        return size;
     }
 
+    /**
+     * Format: <entryCount>[<entry>]*
+     */
     @Override
-    protected String getData() {
-        StringBuilder stringBuilder = new StringBuilder();
-        stringBuilder.append(MessageType.ROOM_LIST.getProtocolCode());
-        stringBuilder.append(" ");
+    protected void writeFields(ByteBuffer buffer) {
+        buffer.putInt(entries.size());
         for (byte[] entry : entries) {
-            //Format: LST [<encoded entry>\n]*
-            stringBuilder.append(new String(Base64.getEncoder().encode(entry)));
-            stringBuilder.append("\n");
+            MessageFieldHelper.putBytes(buffer, entry);
         }
-        return stringBuilder.toString();
     }
 }
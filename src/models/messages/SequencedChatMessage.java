@@ -0,0 +1,83 @@
+package models.messages;
+
+import helpers.MessageFieldHelper;
+import models.MessageType;
+import models.User;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * A chat message numbered by the room host, which every member delivers in sequence.
+ * The sequence restarts at 1 whenever a new host takes over, which increments the epoch.
+ * Carries the member that wrote the message, and the number that member gave it when submitting it to the host.
+ * SEQ <epoch><sequence><origin><submission><message>
+ */
+public class SequencedChatMessage extends ChatMessage {
+
+    private final int epoch;
+
+    private final User origin;
+
+    private final int submission;
+
+    /**
+     * Constructs a sequenced chat message.
+     * @param senderSocketAddress The socket address of the host.
+     * @param epoch The epoch of the host.
+     * @param sequence The sequence number given by the host, starting at 1.
+     * @param origin The member that wrote the message.
+     * @param submission The number the member gave the message when submitting it.
+     * @param message The text of the message.
+     */
+    public SequencedChatMessage(final InetSocketAddress senderSocketAddress, final int epoch, final int sequence,
+                                final User origin, final int submission, final String message) {
+        super(senderSocketAddress, sequence, message);
+        this.epoch = epoch;
+        this.origin = origin;
+        this.submission = submission;
+    }
+
+    public int getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * Returns the sequence number given by the host.
+     * @return The sequence number, which is also the timestamp.
+     */
+    public int getSequence() {
+        return getTimestamp();
+    }
+
+    public User getOrigin() {
+        return origin;
+    }
+
+    public int getSubmission() {
+        return submission;
+    }
+
+    @Override
+    public MessageType getMessageType() {
+        return MessageType.SEQUENCED_MESSAGE;
+    }
+
+    @Override
+    protected int getFieldsSize() {
+        return 4 + 4 + MessageFieldHelper.sizeOf(origin) + 4 + MessageFieldHelper.sizeOf(getMessage());
+    }
+
+    /**
+     * Formats fields as follows:
+     * <epoch><sequence><origin><submission><message>
+     */
+    @Override
+    protected void writeFields(ByteBuffer buffer) {
+        buffer.putInt(epoch);
+        buffer.putInt(getSequence());
+        MessageFieldHelper.putUser(buffer, origin);
+        buffer.putInt(submission);
+        MessageFieldHelper.putString(buffer, getMessage());
+    }
+}
@@ -1,9 +1,11 @@
 package models.messages;
 
+import helpers.MessageFieldHelper;
 import models.MessageType;
 import models.User;
 
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
 
 /**
  * User info message:
@@ -31,12 +33,18 @@ public class UserInfoMessage extends Message {
         return user;
     }
 
-    /**
-     * @return the payload attached to this message
-     */
     @Override
-    public String getData() {
-        return String.format("%s %s %s %d", MessageType.USER.getProtocolCode(), user.getUsername(),
-                user.getIpAddress().getHostAddress(), user.getPort());
+    public MessageType getMessageType() {
+        return MessageType.USER;
+    }
+
+    @Override
+    protected int getFieldsSize() {
+        return MessageFieldHelper.sizeOf(user);
+    }
+
+    @Override
+    protected void writeFields(ByteBuffer buffer) {
+        MessageFieldHelper.putUser(buffer, user);
     }
 }
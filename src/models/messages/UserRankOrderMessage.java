@@ -1,14 +1,16 @@
 package models.messages;
 
+import helpers.MessageFieldHelper;
 import models.MessageType;
 import models.User;
 
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
 import java.util.List;
 
 /**
  * Used for passing user ranking order for leader election.
- * ORD <username1> <userIpAddress1> <userPort1>\n<username2> <userIpAddress2> <userPort2>\n...
+ * ORD <userCount><user1><user2>...
  */
 public class UserRankOrderMessage extends Message {
 
@@ -23,26 +25,29 @@ public class UserRankOrderMessage extends Message {
         return userRankOrderList;
     }
 
-    /**
-     * Formats data as follows:
-     * ORD <username1> <userIpAddress1> <userPort1>\n<username2> <userIpAddress2> <userPort2>\n...
-     * @return String formatted as described above.
-     */
     @Override
-    protected String getData() {
-        StringBuilder stringBuilder = new StringBuilder();
-        stringBuilder.append(MessageType.USER_RANK_ORDER.getProtocolCode());
-        stringBuilder.append(" ");
+    public MessageType getMessageType() {
+        return MessageType.USER_RANK_ORDER;
+    }
 
+    @Override
+    protected int getFieldsSize() {
+        int size = 4;
         for (User user : userRankOrderList) {
-            stringBuilder.append(user.getUsername());
-            stringBuilder.append(" ");
-            stringBuilder.append(user.getSocketAddress().getAddress().getHostAddress());
-            stringBuilder.append(" ");
-            stringBuilder.append(user.getSocketAddress().getPort());
-            stringBuilder.append("\n");
+            size += MessageFieldHelper.sizeOf(user);
         }
+        return size;
+    }
 
-        return stringBuilder.toString();
+    /**
+     * Formats fields as follows:
+     * <userCount><user1><user2>...
+     */
+    @Override
+    protected void writeFields(ByteBuffer buffer) {
+        buffer.putInt(userRankOrderList.size());
+        for (User user : userRankOrderList) {
+            MessageFieldHelper.putUser(buffer, user);
+        }
     }
 }
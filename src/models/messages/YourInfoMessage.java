@@ -1,9 +1,11 @@
 package models.messages;
 
+import helpers.MessageFieldHelper;
 import models.MessageType;
 import models.User;
 
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
 
 public class YourInfoMessage extends Message {
 
@@ -24,8 +26,17 @@ public class YourInfoMessage extends Message {
     }
 
     @Override
-    protected String getData() {
-        return String.format("%s %s %s %d", MessageType.YOU.getProtocolCode(), user.getUsername(),
-                user.getIpAddress().getHostAddress(), user.getPort());
+    public MessageType getMessageType() {
+        return MessageType.YOU;
+    }
+
+    @Override
+    protected int getFieldsSize() {
+        return MessageFieldHelper.sizeOf(user);
+    }
+
+    @Override
+    protected void writeFields(ByteBuffer buffer) {
+        MessageFieldHelper.putUser(buffer, user);
     }
 }
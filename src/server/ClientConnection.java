@@ -1,65 +1,84 @@
 package server;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.net.InetSocketAddress;
-import java.net.Socket;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
 import models.User;
 import models.messages.*;
-import helpers.MessageReadHelper;
+import sockets.SocketHandler;
+import sockets.SocketHandlerListener;
 
 /**
  * This worker class handles a distinct connection and handles their messages to communicate
- * with the servers. 
+ * with the servers. Messages are read by the SocketHandler and handled on the relay executor,
+ * one at a time and in order for each connection.
  *
  * @author Clinton Cabiles
  * @author Jan Clarin
  * @author Riley Lahd
  */
-public class ClientConnection implements Runnable {
-	private Socket socket;
-	private boolean closeConnection;
-	private ClientConnectionListener listener;
+public class ClientConnection implements SocketHandlerListener {
+	private final SocketHandler socketHandler;
+	private final ClientConnectionListener listener;
+	private final Executor relayExecutor;
+	private final Queue<Message> pendingMessages = new ConcurrentLinkedQueue<>();
+	private final AtomicBoolean relayScheduled = new AtomicBoolean();
 
 	/**
-	 * Initializes the server
-	 * A new User object is created based on socket information.
+	 * Initializes the connection.
 	 * 
-	 * @param socket
+	 * @param socketHandler The SocketHandler of the client connection
+	 * @param listener The listener forwarding messages to the servers
+	 * @param relayExecutor The executor that messages are handled on
 	 */
-	public ClientConnection(Socket socket, ClientConnectionListener listener) {
-		this.socket = socket;
+	public ClientConnection(SocketHandler socketHandler, ClientConnectionListener listener, Executor relayExecutor) {
+		this.socketHandler = socketHandler;
 		this.listener = listener;
+		this.relayExecutor = relayExecutor;
+		System.out.printf("New Connection @%s", socketHandler.getRemoteSocketAddress().getAddress().getHostAddress());
 	}
 	
 	/**
-	 * Sets closeConnection flag to true
+	 * Closes the connection once pending replies are written.
 	 */
 	public void closeConnection(){
-		closeConnection = true;
+		socketHandler.shutdown();
 	}
-	
+
+	@Override
+	public void messageSent(SocketHandler recipientSocketHandler, Message message) {
+	}
+
 	/**
-	 * Receives messages and handles their input
-	 * 
+	 * Queues a received message and schedules the relay for this connection if it is not already scheduled.
 	 */
 	@Override
-	public void run() {
-		try {
-			System.out.printf("New Connection @%s", socket.getInetAddress().getHostAddress());
-			InputStream inputStream = socket.getInputStream();
-			Message message;
-			while (!closeConnection) {
-                message = MessageReadHelper.readNextMessage(inputStream);
-                handleMessage(message);
-            }
-			socket.close();
-		} catch (IOException e) {
-			e.printStackTrace();
+	public void messageReceived(SocketHandler senderSocketHandler, Message message) {
+		pendingMessages.add(message);
+		if (relayScheduled.compareAndSet(false, true)) {
+			relayExecutor.execute(this::handlePendingMessages);
 		}
 	}
 
+	/**
+	 * Handles queued messages until none are left.
+	 */
+	private void handlePendingMessages() {
+		do {
+			Message message;
+			while ((message = pendingMessages.poll()) != null) {
+				try {
+					handleMessage(message);
+				} catch (RuntimeException ex) {
+					ex.printStackTrace();
+				}
+			}
+			relayScheduled.set(false);
+		} while (!pendingMessages.isEmpty() && relayScheduled.compareAndSet(false, true));
+	}
+
 	/**
 	 * Handles the messages. This should really be handled by the server.
 	 * @param message
@@ -68,7 +87,7 @@ public class ClientConnection implements Runnable {
 		if (message instanceof HelloMessage) {
 			HelloMessage helloMessage = (HelloMessage) message;
 			User sender = helloMessage.getSender();
-			sendMessage(new YourInfoMessage((InetSocketAddress) socket.getLocalSocketAddress(), sender));
+			sendMessage(new YourInfoMessage(socketHandler.getLocalSocketAddress(), sender));
 		} else if (message instanceof ByeMessage) {
 			closeConnection();
 		} else {
@@ -85,11 +104,9 @@ public class ClientConnection implements Runnable {
 	 */
 	public void sendMessage(Message message) {
 		try{
-			OutputStream outputStream = socket.getOutputStream();
-			outputStream.write(message.toByteArray());
-			outputStream.flush();
+			socketHandler.sendMessage(message);
 		}
-		catch(Exception ex){
+		catch(IOException ex){
 			System.err.println("Error: Exception: " + ex.getMessage());
 			ex.printStackTrace();
 		}
@@ -1,35 +1,55 @@
 package server;
 
 import helpers.MessageReadHelper;
+import helpers.MessageWriteHelper;
 import models.messages.ByeMessage;
 import models.messages.Message;
 import models.messages.ProcessMessage;
 import models.messages.QueueMessage;
 import java.io.IOException;
-import java.io.OutputStream;
-import java.net.InetSocketAddress;
-import java.net.Socket;
-import java.net.SocketException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class ClientServerConnectionRelay implements ClientConnectionListener {
 
-    private List<Socket> serverSockets;
+    /**
+     * Blocking channels connected to the servers, over TCP or over Unix domain sockets for servers on the same host.
+     */
+    private List<SocketChannel> serverChannels;
 
-    public ClientServerConnectionRelay(List<Socket> serverSockets) {
-        this.serverSockets = serverSockets;
+    /**
+     * [SocketChannel, ServerLink] Input stream and request lock of each server channel. A lock rather than a monitor
+     * keeps virtual threads waiting for a server reply from pinning their carrier thread.
+     */
+    private final ConcurrentHashMap<SocketChannel, ServerLink> serverLinks = new ConcurrentHashMap<>();
+
+    public ClientServerConnectionRelay(List<SocketChannel> serverChannels) {
+        this.serverChannels = serverChannels;
     }
 
-    public Message sendMessage(Socket socket, Message outgoing) throws IOException {
-        synchronized (socket) {
-            OutputStream serverOutputStream = socket.getOutputStream();
-            serverOutputStream.write(outgoing.toByteArray());
-            serverOutputStream.flush();
-            return MessageReadHelper.readNextMessage(socket.getInputStream());
+    public Message sendMessage(SocketChannel channel, Message outgoing) throws IOException {
+        ServerLink serverLink = getServerLink(channel);
+        serverLink.lock.lock();
+        try {
+            if (serverLink.inputStream == null) {
+                serverLink.inputStream = Channels.newInputStream(channel);
+            }
+            MessageWriteHelper.writeMessage(channel, outgoing);
+            return MessageReadHelper.readNextMessage(serverLink.inputStream);
+        } finally {
+            serverLink.lock.unlock();
         }
     }
+
+    private ServerLink getServerLink(SocketChannel channel) {
+        return serverLinks.computeIfAbsent(channel, c -> new ServerLink());
+    }
     
     /**
      * Send messages to server sockets until a valid reply is received. Returns first message in the list.
@@ -41,15 +61,15 @@ public class ClientServerConnectionRelay implements ClientConnectionListener {
     public Message sendMessageToServerSockets(Message message, UUID messageId){
     	List<Message> replies = new ArrayList<Message>();
 		Message reply = null;
-    	for(Socket serverSocket : serverSockets){
+    	for(SocketChannel serverChannel : serverChannels){
     		do{
         		try{
-					reply = sendMessage(serverSocket, message);
+					reply = sendMessage(serverChannel, message);
 					if(reply instanceof ProcessMessage){
 						reply = ((ProcessMessage)reply).hasMessageId(messageId) ? reply : null;
 					}
         		} catch (IOException ex){
-        			reply = new ByeMessage((InetSocketAddress) serverSocket.getLocalSocketAddress());
+        			reply = new ByeMessage(null);
         			//ex.printStackTrace();
         		}
     		} while (reply == null);
@@ -67,6 +87,13 @@ public class ClientServerConnectionRelay implements ClientConnectionListener {
         responseMessage = sendMessageToServerSockets(new QueueMessage(message.getSenderSocketAddress(), message, queueId), queueId);
         responseMessage = sendMessageToServerSockets(new ProcessMessage(message.getSenderSocketAddress(), queueId), queueId);
         return responseMessage;
-    }  
-    
+    }
+
+    /**
+     * Request state of one server channel. The channel is only used while holding the lock.
+     */
+    private static class ServerLink {
+        private final ReentrantLock lock = new ReentrantLock();
+        private InputStream inputStream;
+    }
 }
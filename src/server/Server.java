@@ -2,51 +2,83 @@ package server;
 
 import exceptions.ChatRoomNotFoundException;
 import exceptions.MessageTypeNotSupportedException;
+import helpers.FrameDecoder;
 import helpers.MessageReadHelper;
+import helpers.MessageWriteHelper;
+import helpers.SocketAddressHelper;
+import models.ExecutionMode;
 import models.messages.*;
 
+import java.io.EOFException;
+import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.net.InetSocketAddress;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.net.SocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 
 /**
  * This class represents a head server of the system for exchanging
  * keys and IPs.
  * 
  * <p>
- * e.g. java Server sourcePort
+ * e.g. java Server sourcePort [--execution=platform|virtual]
+ * or java Server unix:/tmp/blocktalk-server.sock to serve a server manager on the same host over a Unix domain socket
  *
  * @author Clinton Cabiles
  * @author Jan Clarin
  * @author Riley Lahd
  */
 public class Server {
-	private boolean stopServer;
-	private ServerSocket serverSocket;
-	private Socket managerSocket;
-	private int port;
+	private volatile boolean stopServer;
+	private ServerSocketChannel serverSocketChannel;
+	
+	/**
+	 * Address to listen on, a TCP socket address or a Unix domain socket address.
+	 */
+	private final SocketAddress listenAddress;
+	
+	/**
+	 * Sender address of replies, the bound TCP socket address or the loopback address for a Unix domain socket.
+	 */
+	private volatile InetSocketAddress serverSocketAddress;
+	
+	/**
+	 * Runs one task per connected server manager.
+	 */
+	private final ExecutorService managerThreadPool;
 	
 	/**
 	 * [UUID, Message] Map of stored queue messages
 	 */
-	private HashMap<UUID, Message> queuedMessages = new HashMap<>();
+	private Map<UUID, Message> queuedMessages = new ConcurrentHashMap<>();
 	
 	/**
 	 * [UUID, byte[]] Hash Map of all existing chatrooms on the server
 	 */
-	private HashMap<UUID, byte[]> roomMap = new HashMap<>();
+	private Map<UUID, byte[]> roomMap = new ConcurrentHashMap<>();
 
 	/**
-	 * Main function. Requires port.
+	 * Main function. Requires port, or unix:PATH for a Unix domain socket.
 	 */
 	public static void main(String[] args) throws MessageTypeNotSupportedException {
-	    int port = Integer.parseInt(args[0]);
-	    Server server = new Server(port);
+	    SocketAddress listenAddress = SocketAddressHelper.parse(args[0]);
+	    ExecutionMode executionMode = ExecutionMode.PLATFORM;
+	    for (int i = 1; i < args.length; i++) {
+	    	if (args[i].startsWith("--execution=")) {
+	    		executionMode = ExecutionMode.valueOf(args[i].substring("--execution=".length()).toUpperCase());
+	    	} else {
+	    		throw new IllegalArgumentException("Unknown option: " + args[i]);
+	    	}
+	    }
+	    Server server = new Server(listenAddress, executionMode);
 	    server.run();
 	}
 	
@@ -54,24 +86,83 @@ public class Server {
 	 * Initializes the server and room map
 	 */
 	public Server(int port) {
-		this.port = port;
+		this(port, ExecutionMode.PLATFORM);
+	}
+	
+	/**
+	 * Initializes the server and room map
+	 * 
+	 * @param port
+	 * @param executionMode Kind of threads serving server manager connections
+	 */
+	public Server(int port, ExecutionMode executionMode) {
+		this(new InetSocketAddress(port), executionMode);
+	}
+	
+	/**
+	 * Initializes the server and room map
+	 * 
+	 * @param listenAddress TCP socket address or Unix domain socket address to listen on
+	 * @param executionMode Kind of threads serving server manager connections
+	 */
+	public Server(SocketAddress listenAddress, ExecutionMode executionMode) {
+		this.listenAddress = listenAddress;
+		this.managerThreadPool = executionMode.newExecutor();
 	}
 
 	/**
-	 * Runs, listens for incoming requests and responds to requests.
+	 * Runs, listens for server managers and serves each of them on its own thread.
 	 */
 	public void run() throws MessageTypeNotSupportedException {
+		boolean bound = false;
 		try {
-			serverSocket = new ServerSocket(port);
-			managerSocket = serverSocket.accept();
-			InputStream inputStream = managerSocket.getInputStream();
+			// A socket file left by a previous run would make binding fail, one of a running server is kept.
+			SocketAddressHelper.deleteStaleSocketFile(listenAddress);
+			serverSocketChannel = ServerSocketChannel.open(SocketAddressHelper.getProtocolFamily(listenAddress));
+			serverSocketChannel.bind(listenAddress);
+			bound = true;
+			serverSocketAddress = SocketAddressHelper.getHeaderSocketAddress(serverSocketChannel.getLocalAddress());
 			while (!stopServer) {
-				parseMessage(MessageReadHelper.readNextMessage(inputStream));
+				SocketChannel managerChannel = serverSocketChannel.accept();
+				managerThreadPool.execute(() -> serveManager(managerChannel));
 			}
-			managerSocket.close();
-			serverSocket.close();
+			serverSocketChannel.close();
 		} catch (Exception e) {
 			e.printStackTrace();
+		} finally {
+			managerThreadPool.shutdown();
+			try {
+				if (bound) {
+					SocketAddressHelper.deleteSocketFile(listenAddress);
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+	
+	/**
+	 * Listens for incoming requests from one server manager and responds to them.
+	 * 
+	 * @param managerChannel Blocking channel connected to the server manager
+	 */
+	private void serveManager(SocketChannel managerChannel) {
+		try {
+			InputStream inputStream = Channels.newInputStream(managerChannel);
+			FrameDecoder frameDecoder = new FrameDecoder();
+			while (!stopServer) {
+				parseMessage(MessageReadHelper.readMessage(frameDecoder.readFrame(inputStream)), managerChannel);
+			}
+		} catch (EOFException e) {
+			// Server manager disconnected.
+		} catch (Exception e) {
+			e.printStackTrace();
+		} finally {
+			try {
+				managerChannel.close();
+			} catch (IOException e) {
+				// Already closed.
+			}
 		}
 	}
 
@@ -101,18 +192,19 @@ public class Server {
 	 * Queue incoming messages
 	 * 
 	 * @param message
+	 * @param managerChannel Channel of the server manager that sent the message
 	 * @throws MessageTypeNotSupportedException
 	 */
-	public void parseMessage(Message message) throws MessageTypeNotSupportedException {
+	public void parseMessage(Message message, WritableByteChannel managerChannel) throws MessageTypeNotSupportedException {
 		if (message instanceof ProcessMessage) {
 			UUID messageId = ((ProcessMessage)message).getMessageId();
-			processMessage(queuedMessages.get(messageId), ((ProcessMessage)message).getMessageId());
+			processMessage(queuedMessages.get(messageId), ((ProcessMessage)message).getMessageId(), managerChannel);
 			System.out.printf("DEBUG: Processing Message ID: %s\n", messageId.toString());
 		}
 		else {
 			QueueMessage queueMessage = (QueueMessage)message;
 			queuedMessages.put(queueMessage.getMessageId(), queueMessage.getMessage());
-			sendMessage(new ProcessMessage((InetSocketAddress)serverSocket.getLocalSocketAddress(), queueMessage.getMessageId()));
+			sendMessage(managerChannel, new ProcessMessage(serverSocketAddress, queueMessage.getMessageId()));
 			System.out.printf("DEBUG: Queued Message ID: %s\n", queueMessage.getMessageId());
 		}
 	}
@@ -121,26 +213,27 @@ public class Server {
 	 * Process queued message
 	 * 
 	 * @param message
+	 * @param managerChannel Channel of the server manager to reply to
 	 * @throws MessageTypeNotSupportedException
 	 */
-	public void processMessage(Message message, UUID token) throws MessageTypeNotSupportedException {
-		InetSocketAddress serverSocketAddress = (InetSocketAddress) serverSocket.getLocalSocketAddress();
+	public void processMessage(Message message, UUID token, WritableByteChannel managerChannel) throws MessageTypeNotSupportedException {
 		if (message instanceof HostRoomMessage) {
 			// Maps the chat room to the host room message sender's socket address.
 			HostRoomMessage hostRoomMessage = (HostRoomMessage) message;
 			byte[] hostData = hostRoomMessage.getRoomData();
 			addRoomMap(token, hostData);
-			sendMessage(new AckMessage(serverSocketAddress, String.format("TOKEN %s", token.toString())));
+			sendMessage(managerChannel, new AckMessage(serverSocketAddress, String.format("TOKEN %s", token.toString())));
 		}
 		else if (message instanceof HostUpdatedMessage) {
 			HostUpdatedMessage hostRoomMessage = (HostUpdatedMessage) message;
 			byte[] hostData = hostRoomMessage.getEncryptedHost();
 			UUID hostToken = UUID.fromString(hostRoomMessage.getToken());
 			addRoomMap(hostToken, hostData);
-			sendMessage(new AckMessage(serverSocketAddress, String.format("TOKEN %s", token.toString())));
+			// The room keeps its token, the new host must not take the token of the queued message.
+			sendMessage(managerChannel, new AckMessage(serverSocketAddress, String.format("TOKEN %s", hostToken.toString())));
 		}
 		else if (message instanceof RequestRoomListMessage) {
-			sendMessage(new RoomListMessage(serverSocketAddress, new ArrayList<>(roomMap.values())));
+			sendMessage(managerChannel, new RoomListMessage(serverSocketAddress, new ArrayList<>(roomMap.values())));
 		} 
 		else{
 			throw new MessageTypeNotSupportedException();
@@ -151,13 +244,12 @@ public class Server {
 	/**
 	 * Send reply message
 	 * 
+	 * @param managerChannel
 	 * @param message
 	 */
-	public void sendMessage(Message message){
+	public void sendMessage(WritableByteChannel managerChannel, Message message){
 		try{
-			OutputStream outStream = managerSocket.getOutputStream();
-			outStream.write(message.toByteArray());
-			outStream.flush();
+			MessageWriteHelper.writeMessage(managerChannel, message);
 		}
 		catch(Exception ex){
 			ex.printStackTrace();
@@ -1,13 +1,19 @@
 package server;
 
 
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.net.InetSocketAddress;
+import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Scanner;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+
+import helpers.SocketAddressHelper;
+import models.ExecutionMode;
+import sockets.BlockingSocketTransport;
+import sockets.SelectorSocketTransport;
+import sockets.SocketTransport;
+import sockets.TransportMode;
 
 /**
  * This class manages incoming connections to server from chatroom clients
@@ -18,30 +24,40 @@ import java.util.concurrent.Executors;
  */
 public class ServerManager {
 	
+	/**
+	 * Maximum number of client connections waiting to be accepted.
+	 */
+	private static final int LISTEN_BACKLOG = 1024;
+	
 	private static List<ClientConnectionListener> servers;
 	private static int port = 9999;
-	private static boolean listen;
-	private static List<Socket> serverSockets;
+	private static List<SocketChannel> serverChannels;
+	private static TransportMode transportMode = TransportMode.BLOCKING;
+	private static int selectorThreads = 1;
+	private static int relayThreads = Runtime.getRuntime().availableProcessors();
+	private static ExecutionMode executionMode = ExecutionMode.PLATFORM;
 	
 	/**
 	 * Starts the main server manager.
-	 * Begins listening for incoming connections and creates a thread based on distinct connection.
+	 * Begins listening for incoming connections and relays their requests to the servers.
+	 * Usage: <port> [--transport=blocking|nio] [--selector-threads=N] [--relay-threads=N] [--execution=platform|virtual]
 	 * 
-	 * @param port
+	 * @param args
 	 */
 	public static void main(String[] args){
 		try{
-			ExecutorService threadPool = Executors.newCachedThreadPool();
 			port = Integer.parseInt(args[0]);
+			for(int i = 1; i < args.length; i++){
+				parseOption(args[i]);
+			}
 			servers = new ArrayList<ClientConnectionListener>();
-			serverSockets = new ArrayList<Socket>();
+			serverChannels = new ArrayList<SocketChannel>();
 			
-			ServerSocket listenServer = new ServerSocket(port);
-			System.out.println(listenServer.getInetAddress() + ":"+listenServer.getLocalPort());
-			listen = true;
+			InetSocketAddress listenAddress = new InetSocketAddress(port);
+			System.out.println(listenAddress);
 			
 			Scanner input = new Scanner(System.in);
-			System.out.println("Enter a server ip and sourcePort to connect to, or c to continue:");
+			System.out.println("Enter a server ip and sourcePort, or unix:PATH of a server on this host, to connect to, or c to continue:");
 			boolean findServers = true;
 			while(findServers){
 				try{
@@ -50,12 +66,9 @@ public class ServerManager {
 						findServers = false;
 					}
 					else{
-						String[] connectionInfo = inputLine.split(" ");
-						Socket newServer = new Socket(connectionInfo[0], Integer.parseInt(connectionInfo[1]));
-						if(newServer.isBound()){
-							serverSockets.add(newServer);
-							System.out.println(String.format("Server Added: %s %d", newServer.getInetAddress().toString(), newServer.getPort()));
-						}
+						SocketChannel newServer = SocketChannel.open(SocketAddressHelper.parse(inputLine));
+						serverChannels.add(newServer);
+						System.out.println(String.format("Server Added: %s", newServer.getRemoteAddress()));
 					}
 				}
 				catch(Exception ex){
@@ -63,18 +76,17 @@ public class ServerManager {
 				}
 			}
 			
-			System.out.println("Listening on "+listenServer.getInetAddress() + ":"+listenServer.getLocalPort()+"...");
-			while(listen){
-				try{
-					threadPool.execute(new ClientConnection(listenServer.accept(), new ClientServerConnectionRelay(serverSockets)));
-				}
-				catch(Exception ex){
-					ex.printStackTrace();
-				}
-			}
-			
-			System.out.println("Closing...");
-			listenServer.close();
+			// Frames are read on the transport threads and relayed to the servers on the relay threads.
+			ExecutorService relayThreadPool = executionMode.newFixedExecutor(relayThreads);
+			ClientServerConnectionRelay relay = new ClientServerConnectionRelay(serverChannels);
+			SocketTransport transport = transportMode == TransportMode.NIO
+					? new SelectorSocketTransport(selectorThreads)
+					: new BlockingSocketTransport(executionMode.newExecutor());
+			transport.listen(listenAddress, LISTEN_BACKLOG, socketHandler -> {
+				socketHandler.setServerMode(true);
+				socketHandler.registerListener(new ClientConnection(socketHandler, relay, relayThreadPool));
+			});
+			System.out.println("Listening on "+listenAddress+"...");
 		}
 		catch(Exception ex){
 			System.err.println("Error: Exception: " + ex.getMessage());
@@ -82,4 +94,32 @@ public class ServerManager {
 		}
 	}
 	
+	/**
+	 * Applies a command line option of the form --name=value.
+	 * 
+	 * @param arg The option
+	 */
+	private static void parseOption(String arg){
+		String[] option = arg.split("=", 2);
+		if(option.length != 2){
+			throw new IllegalArgumentException("Options must be of the form --name=value: " + arg);
+		}
+		switch(option[0]){
+			case "--transport":
+				transportMode = TransportMode.valueOf(option[1].toUpperCase());
+				break;
+			case "--selector-threads":
+				selectorThreads = Integer.parseInt(option[1]);
+				break;
+			case "--relay-threads":
+				relayThreads = Integer.parseInt(option[1]);
+				break;
+			case "--execution":
+				executionMode = ExecutionMode.valueOf(option[1].toUpperCase());
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option: " + option[0]);
+		}
+	}
+	
 }
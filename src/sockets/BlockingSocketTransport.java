@@ -0,0 +1,119 @@
+package sockets;
+
+import encryption.EncryptionEngine;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Transport using blocking Sockets, with one thread reading each connection and one thread accepting.
+ * The accepting thread is a platform thread of its own so that it keeps the process alive
+ * even when connections are read on virtual threads.
+ */
+public class BlockingSocketTransport implements SocketTransport {
+    /**
+     * Thread pool running the StreamSocketHandlers and their writer tasks.
+     */
+    private final ExecutorService threadPool;
+
+    /**
+     * Number of messages queued per connection before the slow consumer policy applies.
+     */
+    private final int outboundQueueCapacity;
+
+    /**
+     * What connections do when their outbound queue is full.
+     */
+    private final SlowConsumerPolicy slowConsumerPolicy;
+
+    /**
+     * Server socket for incoming connections, null until listen is called.
+     */
+    private volatile ServerSocket serverSocket;
+
+    /**
+     * Constructs a BlockingSocketTransport whose senders wait for slow peers.
+     *
+     * @param threadPool Thread pool to run the StreamSocketHandlers on.
+     */
+    public BlockingSocketTransport(final ExecutorService threadPool) {
+        this(threadPool, OutboundQueue.DEFAULT_CAPACITY, SlowConsumerPolicy.BLOCK);
+    }
+
+    /**
+     * Constructs a BlockingSocketTransport.
+     *
+     * @param threadPool Thread pool to run the StreamSocketHandlers and their writer tasks on.
+     * @param outboundQueueCapacity Number of messages queued per connection before the slow consumer policy applies.
+     * @param slowConsumerPolicy What connections do when their outbound queue is full.
+     */
+    public BlockingSocketTransport(final ExecutorService threadPool, final int outboundQueueCapacity,
+                                   final SlowConsumerPolicy slowConsumerPolicy) {
+        this.threadPool = threadPool;
+        this.outboundQueueCapacity = outboundQueueCapacity;
+        this.slowConsumerPolicy = slowConsumerPolicy;
+    }
+
+    @Override
+    public void listen(InetSocketAddress localSocketAddress, int backlog, SocketAcceptListener acceptListener) throws IOException {
+        serverSocket = new ServerSocket();
+        serverSocket.bind(localSocketAddress, backlog);
+        ServerSocket boundServerSocket = serverSocket;
+        new Thread(() -> acceptConnections(boundServerSocket, acceptListener), "accept-" + boundServerSocket.getLocalPort()).start();
+    }
+
+    @Override
+    public SocketHandler connect(InetSocketAddress remoteSocketAddress, SocketHandlerListener listener,
+                                 EncryptionEngine encryptionEngine, boolean serverMode, int connectTimeout) throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(remoteSocketAddress, connectTimeout);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+        StreamSocketHandler socketHandler = new StreamSocketHandler(socket, newOutboundQueue(), threadPool, listener, encryptionEngine);
+        socketHandler.setServerMode(serverMode);
+        threadPool.execute(socketHandler);
+        return socketHandler;
+    }
+
+    @Override
+    public void shutdown() {
+        try {
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+        } catch (IOException e) {
+            // Already closed.
+        }
+        threadPool.shutdown();
+    }
+
+    private OutboundQueue newOutboundQueue() {
+        return new OutboundQueue(outboundQueueCapacity, slowConsumerPolicy);
+    }
+
+    /**
+     * Accepts connections until the server socket is closed. Creates a new StreamSocketHandler for every new connection.
+     *
+     * @param serverSocket The bound server socket.
+     * @param acceptListener Notified of every accepted connection.
+     */
+    private void acceptConnections(ServerSocket serverSocket, SocketAcceptListener acceptListener) {
+        while (!serverSocket.isClosed()) {
+            try {
+                StreamSocketHandler socketHandler = new StreamSocketHandler(serverSocket.accept(), newOutboundQueue(), threadPool);
+                acceptListener.socketAccepted(socketHandler);
+                threadPool.execute(socketHandler);
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+}
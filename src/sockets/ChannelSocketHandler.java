@@ -0,0 +1,362 @@
+package sockets;
+
+import helpers.BufferPool;
+import helpers.FrameDecoder;
+import models.Frame;
+import models.messages.Message;
+import encryption.*;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Handles a connection over a non-blocking SocketChannel registered with a SelectorLoop.
+ * Reads, decoding and listener notifications happen on the loop thread. Sent messages are queued
+ * in a bounded OutboundQueue and encoded by the loop thread into its shared write buffer, so queued
+ * messages hold no buffers and several small messages go out in one write.
+ */
+public class ChannelSocketHandler extends SocketHandler {
+    /**
+     * Channel to manage.
+     */
+    private final SocketChannel channel;
+
+    /**
+     * Loop this channel is registered with.
+     */
+    private final SelectorLoop selectorLoop;
+
+    /**
+     * Remote address, kept since the channel no longer reports it once closed.
+     */
+    private final InetSocketAddress remoteSocketAddress;
+
+    /**
+     * Local address, kept since the channel no longer reports it once closed.
+     */
+    private final InetSocketAddress localSocketAddress;
+
+    /**
+     * Decoder holding partially received frames.
+     */
+    private final FrameDecoder frameDecoder = new FrameDecoder();
+
+    /**
+     * Messages waiting to be encoded and written by the loop thread.
+     */
+    private final OutboundQueue outboundQueue;
+
+    /**
+     * Message taken off the queue that did not fit the write buffer yet, or null. Only used on the loop thread.
+     */
+    private Message unencodedMessage;
+
+    /**
+     * Encoded bytes left over from a write that did not complete, or null. Only used on the loop thread.
+     */
+    private ByteBuffer unwrittenBytes;
+
+    /**
+     * True while a flush is scheduled or the channel is waiting to become writable.
+     */
+    private final AtomicBoolean writeScheduled = new AtomicBoolean();
+
+    /**
+     * Key of the channel, null until registered. Only used on the loop thread.
+     */
+    private SelectionKey selectionKey;
+
+    /**
+     * Set by shutdown. The channel is closed once queued messages are written.
+     */
+    private volatile boolean shutdownRequested;
+
+    /**
+     * Set once the channel is closed.
+     */
+    private volatile boolean closed;
+
+    /**
+     * Constructs a ChannelSocketHandler for an accepted channel. Its owner registers listeners before it is registered.
+     *
+     * @param channel The non-blocking channel to manage.
+     * @param selectorLoop The loop to register with.
+     * @param outboundQueue The queue of messages to write.
+     * @throws IOException Thrown when the channel is not connected.
+     */
+    ChannelSocketHandler(final SocketChannel channel, final SelectorLoop selectorLoop, final OutboundQueue outboundQueue) throws IOException {
+        this.channel = channel;
+        this.selectorLoop = selectorLoop;
+        this.outboundQueue = outboundQueue;
+        this.remoteSocketAddress = (InetSocketAddress) channel.getRemoteAddress();
+        this.localSocketAddress = (InetSocketAddress) channel.getLocalAddress();
+    }
+
+    /**
+     * Constructs a ChannelSocketHandler.
+     *
+     * @param channel The non-blocking channel to manage.
+     * @param selectorLoop The loop to register with.
+     * @param outboundQueue The queue of messages to write.
+     * @param listener The Client listening to this SocketHandler
+     * @param encryptionEngine The encryptionEngine to decrypt messages with
+     * @throws IOException Thrown when the channel is not connected.
+     */
+    ChannelSocketHandler(final SocketChannel channel, final SelectorLoop selectorLoop, final OutboundQueue outboundQueue,
+                         final SocketHandlerListener listener, final EncryptionEngine encryptionEngine) throws IOException {
+        super(listener, encryptionEngine);
+        this.channel = channel;
+        this.selectorLoop = selectorLoop;
+        this.outboundQueue = outboundQueue;
+        this.remoteSocketAddress = (InetSocketAddress) channel.getRemoteAddress();
+        this.localSocketAddress = (InetSocketAddress) channel.getLocalAddress();
+    }
+
+    /**
+     * Registers the channel with its loop so that reading starts.
+     */
+    void register() {
+        selectorLoop.execute(() -> {
+            try {
+                int interestOps = writeScheduled.get() ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ;
+                selectionKey = channel.register(selectorLoop.getSelector(), interestOps, this);
+            } catch (IOException e) {
+                close();
+            }
+        });
+    }
+
+    /**
+     * Queues the message to be encoded and written by the loop thread.
+     *
+     * The loop thread never waits for room in its own queues.
+     *
+     * @param message The message to send.
+     * @param mayBlock False if the caller must never wait for room in the queue.
+     * @throws IOException Thrown when the connection has closed, or the peer is too slow and was disconnected.
+     */
+    @Override
+    public void sendMessage(Message message, boolean mayBlock) throws IOException {
+        if (isConnectionClosed()) {
+            throw new IOException("Connection has been terminated.");
+        }
+        if (!outboundQueue.offer(message, mayBlock && !selectorLoop.inLoopThread())) {
+            if (isConnectionClosed()) {
+                throw new IOException("Connection has been terminated.");
+            }
+            shutdownRequested = true;
+            selectorLoop.execute(this::close);
+            throw new IOException("Peer is not keeping up with sent messages and was disconnected.");
+        }
+        if (writeScheduled.compareAndSet(false, true)) {
+            selectorLoop.execute(this::flush);
+        }
+    }
+
+    @Override
+    public InetSocketAddress getRemoteSocketAddress() {
+        return remoteSocketAddress;
+    }
+
+    @Override
+    public InetSocketAddress getLocalSocketAddress() {
+        return localSocketAddress;
+    }
+
+    /**
+     * The loop thread reads and writes every channel registered with it.
+     */
+    @Override
+    public boolean writesOnReaderThread() {
+        return true;
+    }
+
+    @Override
+    public boolean isConnectionClosed() {
+        return closed || shutdownRequested || !channel.isOpen();
+    }
+
+    /**
+     * Closes the channel once the messages already queued are written.
+     */
+    @Override
+    public void shutdown() {
+        shutdownRequested = true;
+        selectorLoop.execute(() -> {
+            if (!writeScheduled.get()) {
+                close();
+            }
+        });
+    }
+
+    /**
+     * Reads or writes when the channel is ready. Called on the loop thread.
+     *
+     * @param key The selected key of this channel.
+     * @param readBuffer The buffer shared by the loop for reads.
+     */
+    void handleSelectedKey(SelectionKey key, ByteBuffer readBuffer) {
+        try {
+            if (key.isReadable()) {
+                read(readBuffer);
+            }
+            if (key.isValid() && key.isWritable()) {
+                flush();
+            }
+        } catch (IOException | RuntimeException e) {
+            if (!shutdownRequested) {
+                e.printStackTrace();
+            }
+            close();
+        }
+    }
+
+    /**
+     * Reads the bytes available on the channel and notifies listeners of every completed frame.
+     *
+     * @param readBuffer The buffer shared by the loop for reads.
+     * @throws IOException Thrown when reading fails or a frame is invalid.
+     */
+    private void read(ByteBuffer readBuffer) throws IOException {
+        readBuffer.clear();
+        if (channel.read(readBuffer) < 0) {
+            // The other end closed the connection.
+            close();
+            return;
+        }
+        readBuffer.flip();
+        Frame frame;
+        while (!closed && (frame = frameDecoder.decode(readBuffer)) != null) {
+            frameReceived(frame);
+        }
+    }
+
+    /**
+     * Writes queued messages until the queue is empty or the socket buffer is full. Called on the loop thread.
+     */
+    private void flush() {
+        if (closed) {
+            return;
+        }
+        try {
+            do {
+                if (!writeQueuedMessages()) {
+                    // Socket buffer is full, continue once the channel is writable.
+                    setInterestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    return;
+                }
+                setInterestOps(SelectionKey.OP_READ);
+                writeScheduled.set(false);
+            } while (!outboundQueue.isEmpty() && writeScheduled.compareAndSet(false, true));
+
+            if (shutdownRequested && !writeScheduled.get()) {
+                close();
+            }
+        } catch (IOException e) {
+            if (!shutdownRequested) {
+                e.printStackTrace();
+            }
+            close();
+        }
+    }
+
+    /**
+     * Encodes as many queued messages as fit into the loop's write buffer and writes them together,
+     * until the queue is empty. Bytes the socket does not take are copied into a pooled buffer.
+     *
+     * @return True if every queued message was written, false if the socket buffer filled up.
+     * @throws IOException Thrown when writing fails.
+     */
+    private boolean writeQueuedMessages() throws IOException {
+        if (unwrittenBytes != null && !writeUnwrittenBytes()) {
+            return false;
+        }
+        ByteBuffer writeBuffer = selectorLoop.getWriteBuffer();
+        Message message = unencodedMessage != null ? unencodedMessage : outboundQueue.poll();
+        unencodedMessage = null;
+        while (message != null) {
+            writeBuffer.clear();
+            while (message != null && message.getEncodedSize() <= writeBuffer.remaining()) {
+                message.writeTo(writeBuffer);
+                message = outboundQueue.poll();
+            }
+            if (writeBuffer.position() == 0) {
+                // Larger than the write buffer, encoded on its own.
+                unwrittenBytes = BufferPool.acquire(message.getEncodedSize());
+                message.writeTo(unwrittenBytes);
+                unwrittenBytes.flip();
+                message = outboundQueue.poll();
+                if (!writeUnwrittenBytes()) {
+                    unencodedMessage = message;
+                    return false;
+                }
+                continue;
+            }
+            writeBuffer.flip();
+            channel.write(writeBuffer);
+            if (writeBuffer.hasRemaining()) {
+                unwrittenBytes = BufferPool.acquire(writeBuffer.remaining());
+                unwrittenBytes.put(writeBuffer);
+                unwrittenBytes.flip();
+                unencodedMessage = message;
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes the bytes left over from an earlier write.
+     *
+     * @return True if they were all written, false if the socket buffer filled up.
+     * @throws IOException Thrown when writing fails.
+     */
+    private boolean writeUnwrittenBytes() throws IOException {
+        channel.write(unwrittenBytes);
+        if (unwrittenBytes.hasRemaining()) {
+            return false;
+        }
+        BufferPool.release(unwrittenBytes);
+        unwrittenBytes = null;
+        return true;
+    }
+
+    /**
+     * Sets the interest set of the key, if registered.
+     *
+     * @param interestOps The operations to wait for.
+     */
+    private void setInterestOps(int interestOps) {
+        if (selectionKey != null && selectionKey.isValid() && selectionKey.interestOps() != interestOps) {
+            selectionKey.interestOps(interestOps);
+        }
+    }
+
+    /**
+     * Closes the channel and drops queued messages. Called on the loop thread.
+     */
+    private void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (selectionKey != null) {
+            selectionKey.cancel();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Already closed.
+        }
+        if (unwrittenBytes != null) {
+            BufferPool.release(unwrittenBytes);
+            unwrittenBytes = null;
+        }
+        unencodedMessage = null;
+        outboundQueue.close();
+    }
+}
@@ -0,0 +1,168 @@
+package sockets;
+
+import encryption.EncryptionEngine;
+import helpers.BufferPool;
+import helpers.FrameDecoder;
+import helpers.MessageReadHelper;
+import models.Frame;
+import models.messages.Message;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.function.Consumer;
+
+/**
+ * Membership of the UDP multicast group of a room on the local network.
+ * Every datagram holds one frame, encoded the same way as on a connection, so a message sent once
+ * reaches every member in the group. Datagrams are not retransmitted, so users of the group must notice
+ * and repair lost messages themselves.
+ *
+ * Received datagrams are decrypted on a thread of their own, then handed to the listener.
+ * Datagrams that do not decrypt, e.g. those of another room using the same group, are dropped.
+ */
+public class MulticastGroup {
+
+    /**
+     * Largest frame that fits in one UDP datagram.
+     */
+    public static final int MAX_DATAGRAM_SIZE = 65507;
+
+    /**
+     * Lowest port of a group, the start of the dynamic port range.
+     */
+    private static final int FIRST_GROUP_PORT = 49152;
+
+    /**
+     * Channel joined to the group.
+     */
+    private final DatagramChannel channel;
+
+    /**
+     * Socket address of the group.
+     */
+    private final InetSocketAddress groupSocketAddress;
+
+    /**
+     * Decrypts received datagrams.
+     */
+    private final EncryptionEngine encryptionEngine;
+
+    /**
+     * Receives decrypted messages.
+     */
+    private final Consumer<Message> listener;
+
+    /**
+     * Joins a multicast group and starts receiving from it.
+     *
+     * @param groupSocketAddress The socket address of the group.
+     * @param networkInterface The network interface to join the group on.
+     * @param encryptionEngine The EncryptionEngine to decrypt received messages with.
+     * @param listener Receives decrypted messages, on the receiving thread.
+     * @throws IOException Thrown when the group cannot be joined.
+     */
+    public MulticastGroup(final InetSocketAddress groupSocketAddress, final NetworkInterface networkInterface,
+                          final EncryptionEngine encryptionEngine, final Consumer<Message> listener) throws IOException {
+        this.groupSocketAddress = groupSocketAddress;
+        this.encryptionEngine = encryptionEngine;
+        this.listener = listener;
+        // Every member on the same host binds the port of the group.
+        this.channel = DatagramChannel.open(StandardProtocolFamily.INET)
+                .setOption(StandardSocketOptions.SO_REUSEADDR, true)
+                .bind(new InetSocketAddress(groupSocketAddress.getPort()));
+        try {
+            channel.setOption(StandardSocketOptions.IP_MULTICAST_IF, networkInterface);
+            channel.setOption(StandardSocketOptions.IP_MULTICAST_LOOP, true);
+            channel.join(groupSocketAddress.getAddress(), networkInterface);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        Thread receiver = new Thread(this::receiveDatagrams, "multicast-" + groupSocketAddress.getPort());
+        receiver.setDaemon(true);
+        receiver.start();
+    }
+
+    /**
+     * Derives the socket address of the multicast group of a room from its token, an address in the
+     * local scope 239.255.0.0/16 and a port in the dynamic range. Every member of the room derives the same one.
+     *
+     * @param roomToken The token of the room.
+     * @return The socket address of the group.
+     */
+    public static InetSocketAddress getGroupSocketAddress(String roomToken) {
+        byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256").digest(roomToken.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available.", e);
+        }
+        byte[] address = {(byte) 239, (byte) 255, digest[0], digest[1]};
+        int port = FIRST_GROUP_PORT + (((digest[2] & 0xFF) << 8 | (digest[3] & 0xFF)) % (65536 - FIRST_GROUP_PORT));
+        try {
+            return new InetSocketAddress(InetAddress.getByAddress(address), port);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Sends a message to the group in one datagram.
+     *
+     * @param message The message to send. Must fit in MAX_DATAGRAM_SIZE bytes once encoded.
+     * @throws IOException Thrown when the datagram cannot be sent.
+     */
+    public void send(Message message) throws IOException {
+        ByteBuffer datagram = BufferPool.acquire(message.getEncodedSize());
+        try {
+            message.writeTo(datagram);
+            datagram.flip();
+            channel.send(datagram, groupSocketAddress);
+        } finally {
+            BufferPool.release(datagram);
+        }
+    }
+
+    /**
+     * Leaves the group and stops receiving from it.
+     */
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Receives datagrams until the group is left, handing every message that decodes to the listener.
+     */
+    private void receiveDatagrams() {
+        ByteBuffer datagram = ByteBuffer.allocate(MAX_DATAGRAM_SIZE);
+        while (channel.isOpen()) {
+            try {
+                datagram.clear();
+                channel.receive(datagram);
+                datagram.flip();
+                Frame frame = new FrameDecoder().decode(datagram);
+                if (frame != null) {
+                    listener.accept(MessageReadHelper.readEncryptedMessage(frame, encryptionEngine));
+                }
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                // A datagram that is truncated, of another room or not a message at all.
+            }
+        }
+    }
+}
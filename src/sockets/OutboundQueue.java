@@ -0,0 +1,128 @@
+package sockets;
+
+import models.messages.Message;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded queue of messages waiting to be written to one connection.
+ * Senders add messages, the connection's writer removes them. When the queue is full,
+ * the SlowConsumerPolicy decides whether senders wait, the oldest message is dropped or the send fails.
+ */
+class OutboundQueue {
+    /**
+     * Number of messages queued by default before the slow consumer policy applies.
+     */
+    static final int DEFAULT_CAPACITY = 1024;
+
+    private final ArrayDeque<Message> messages = new ArrayDeque<>();
+
+    /**
+     * Lock guarding the queue. A lock rather than a monitor so that blocked virtual threads do not pin their carrier.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition notFull = lock.newCondition();
+
+    private final int capacity;
+
+    private final SlowConsumerPolicy slowConsumerPolicy;
+
+    private boolean closed;
+
+    /**
+     * Constructs an OutboundQueue.
+     *
+     * @param capacity Number of messages queued before the slow consumer policy applies.
+     * @param slowConsumerPolicy What to do when the queue is full.
+     */
+    OutboundQueue(final int capacity, final SlowConsumerPolicy slowConsumerPolicy) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Outbound queue capacity must be at least 1.");
+        }
+        this.capacity = capacity;
+        this.slowConsumerPolicy = slowConsumerPolicy;
+    }
+
+    /**
+     * Adds a message to the queue, applying the slow consumer policy if it is full.
+     *
+     * @param message The message to queue.
+     * @param mayBlock False if the calling thread must not wait, e.g. because it is the one draining the queue,
+     *                 or the one draining it may be waiting for the caller. BLOCK then fails the offer as DISCONNECT
+     *                 does, so the queue never grows past its capacity.
+     * @return True if the message was queued, false if the queue is closed or the consumer is too slow
+     *         and the connection should be disconnected.
+     * @throws InterruptedIOException Thrown when interrupted while waiting for room.
+     */
+    boolean offer(Message message, boolean mayBlock) throws InterruptedIOException {
+        lock.lock();
+        try {
+            while (!closed && messages.size() >= capacity) {
+                if (slowConsumerPolicy == SlowConsumerPolicy.DROP_OLDEST) {
+                    messages.poll();
+                } else if (slowConsumerPolicy == SlowConsumerPolicy.DISCONNECT || !mayBlock) {
+                    return false;
+                } else {
+                    try {
+                        notFull.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrupted while waiting for a slow consumer.");
+                    }
+                }
+            }
+            if (closed) {
+                return false;
+            }
+            messages.add(message);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the oldest queued message.
+     *
+     * @return The message, or null if the queue is empty.
+     */
+    Message poll() {
+        lock.lock();
+        try {
+            Message message = messages.poll();
+            if (message != null) {
+                notFull.signal();
+            }
+            return message;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    boolean isEmpty() {
+        lock.lock();
+        try {
+            return messages.isEmpty();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Discards queued messages and fails every waiting and future offer.
+     */
+    void close() {
+        lock.lock();
+        try {
+            closed = true;
+            messages.clear();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package sockets;
+
+import helpers.BufferPool;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A thread owning one Selector. Every channel registered with it is accepted, read and written on this thread,
+ * and work from other threads is handed over through execute.
+ */
+class SelectorLoop implements Runnable {
+    /**
+     * Size of the buffer that channels are read into.
+     */
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Selector of this loop.
+     */
+    private final Selector selector;
+
+    /**
+     * Work handed over by other threads, run before handling selected keys.
+     */
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Buffer shared by every channel of this loop for reads. Frames are copied out of it by their FrameDecoder.
+     */
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+
+    /**
+     * Buffer shared by every channel of this loop for encoding queued messages before writing them.
+     * Sized like pooled buffers, so any message that does not fit would not fit a pooled buffer either.
+     */
+    private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(BufferPool.BUFFER_SIZE);
+
+    /**
+     * Thread running this loop, null until started.
+     */
+    private volatile Thread loopThread;
+
+    /**
+     * Indicates whether or not to keep selecting.
+     */
+    private volatile boolean continueRunning = true;
+
+    /**
+     * Opens the selector of this loop.
+     *
+     * @throws IOException Thrown when the selector cannot be opened.
+     */
+    SelectorLoop() throws IOException {
+        this.selector = Selector.open();
+    }
+
+    /**
+     * Returns the selector of this loop. Channels must only be registered from the loop thread.
+     *
+     * @return The selector.
+     */
+    Selector getSelector() {
+        return selector;
+    }
+
+    /**
+     * Returns the buffer that channels encode queued messages into. Only used on the loop thread.
+     *
+     * @return The write buffer.
+     */
+    ByteBuffer getWriteBuffer() {
+        return writeBuffer;
+    }
+
+    /**
+     * Runs the task on the loop thread.
+     *
+     * @param task The task to run.
+     */
+    void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    /**
+     * Indicates whether or not the calling thread is the thread running this loop.
+     *
+     * @return True if called on the loop thread.
+     */
+    boolean inLoopThread() {
+        return Thread.currentThread() == loopThread;
+    }
+
+    /**
+     * Stops the loop and closes every channel registered with it.
+     */
+    void shutdown() {
+        continueRunning = false;
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        loopThread = Thread.currentThread();
+        try {
+            while (continueRunning) {
+                selector.select();
+                runTasks();
+                Iterator<SelectionKey> selectedKeys = selector.selectedKeys().iterator();
+                while (selectedKeys.hasNext()) {
+                    SelectionKey key = selectedKeys.next();
+                    selectedKeys.remove();
+                    handleSelectedKey(key);
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            e.printStackTrace();
+        } finally {
+            closeSelector();
+        }
+    }
+
+    /**
+     * Runs the tasks handed over since the last select.
+     */
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
+
+    /**
+     * Dispatches a ready key to the acceptor or SocketHandler attached to it.
+     *
+     * @param key The selected key.
+     */
+    private void handleSelectedKey(SelectionKey key) {
+        if (!key.isValid()) {
+            return;
+        }
+        Object attachment = key.attachment();
+        if (attachment instanceof SelectorSocketTransport.Acceptor) {
+            ((SelectorSocketTransport.Acceptor) attachment).acceptConnections();
+        } else if (attachment instanceof ChannelSocketHandler) {
+            ((ChannelSocketHandler) attachment).handleSelectedKey(key, readBuffer);
+        }
+    }
+
+    /**
+     * Closes the channels registered with the selector and then the selector.
+     */
+    private void closeSelector() {
+        try {
+            for (SelectionKey key : selector.keys()) {
+                key.channel().close();
+            }
+            selector.close();
+        } catch (IOException | ClosedSelectorException e) {
+            // Already closed.
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package sockets;
+
+import encryption.EncryptionEngine;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Transport using non-blocking SocketChannels. A fixed number of selector threads accept, read
+ * and write every connection, so the number of threads does not grow with the number of connections.
+ */
+public class SelectorSocketTransport implements SocketTransport {
+    /**
+     * Loops that connections are spread over.
+     */
+    private final SelectorLoop[] selectorLoops;
+
+    /**
+     * Index of the loop the next connection is registered with.
+     */
+    private final AtomicInteger nextSelectorLoop = new AtomicInteger();
+
+    /**
+     * Number of messages queued per connection before the slow consumer policy applies.
+     */
+    private final int outboundQueueCapacity;
+
+    /**
+     * What connections do when their outbound queue is full.
+     */
+    private final SlowConsumerPolicy slowConsumerPolicy;
+
+    /**
+     * Channel accepting incoming connections, null until listen is called.
+     */
+    private volatile ServerSocketChannel serverSocketChannel;
+
+    /**
+     * Constructs a SelectorSocketTransport whose senders wait for slow peers, and starts its selector threads.
+     *
+     * @param selectorThreads Number of selector threads.
+     * @throws IOException Thrown when a selector cannot be opened.
+     */
+    public SelectorSocketTransport(final int selectorThreads) throws IOException {
+        this(selectorThreads, OutboundQueue.DEFAULT_CAPACITY, SlowConsumerPolicy.BLOCK);
+    }
+
+    /**
+     * Constructs a SelectorSocketTransport and starts its selector threads.
+     *
+     * @param selectorThreads Number of selector threads.
+     * @param outboundQueueCapacity Number of messages queued per connection before the slow consumer policy applies.
+     * @param slowConsumerPolicy What connections do when their outbound queue is full.
+     * @throws IOException Thrown when a selector cannot be opened.
+     */
+    public SelectorSocketTransport(final int selectorThreads, final int outboundQueueCapacity,
+                                   final SlowConsumerPolicy slowConsumerPolicy) throws IOException {
+        this.outboundQueueCapacity = outboundQueueCapacity;
+        this.slowConsumerPolicy = slowConsumerPolicy;
+        if (selectorThreads < 1) {
+            throw new IllegalArgumentException("At least one selector thread is required.");
+        }
+        selectorLoops = new SelectorLoop[selectorThreads];
+        for (int i = 0; i < selectorThreads; i++) {
+            selectorLoops[i] = new SelectorLoop();
+            new Thread(selectorLoops[i], "selector-" + i).start();
+        }
+    }
+
+    @Override
+    public void listen(InetSocketAddress localSocketAddress, int backlog, SocketAcceptListener acceptListener) throws IOException {
+        serverSocketChannel = ServerSocketChannel.open();
+        serverSocketChannel.bind(localSocketAddress, backlog);
+        serverSocketChannel.configureBlocking(false);
+        Acceptor acceptor = new Acceptor(serverSocketChannel, acceptListener);
+        SelectorLoop acceptLoop = selectorLoops[0];
+        acceptLoop.execute(() -> {
+            try {
+                serverSocketChannel.register(acceptLoop.getSelector(), SelectionKey.OP_ACCEPT, acceptor);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    /**
+     * Opens a connection, blocking until it is established, and registers it with a selector thread.
+     */
+    @Override
+    public SocketHandler connect(InetSocketAddress remoteSocketAddress, SocketHandlerListener listener,
+                                 EncryptionEngine encryptionEngine, boolean serverMode, int connectTimeout) throws IOException {
+        SocketChannel channel = SocketChannel.open();
+        try {
+            // The socket adaptor of a blocking channel is what supports a connect timeout.
+            channel.socket().connect(remoteSocketAddress, connectTimeout);
+            channel.configureBlocking(false);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        ChannelSocketHandler socketHandler = new ChannelSocketHandler(channel, nextSelectorLoop(), newOutboundQueue(), listener, encryptionEngine);
+        socketHandler.setServerMode(serverMode);
+        socketHandler.register();
+        return socketHandler;
+    }
+
+    @Override
+    public void shutdown() {
+        try {
+            if (serverSocketChannel != null) {
+                serverSocketChannel.close();
+            }
+        } catch (IOException e) {
+            // Already closed.
+        }
+        for (SelectorLoop selectorLoop : selectorLoops) {
+            selectorLoop.shutdown();
+        }
+    }
+
+    /**
+     * Returns the loop the next connection is registered with, spreading connections evenly.
+     *
+     * @return A selector loop.
+     */
+    private SelectorLoop nextSelectorLoop() {
+        return selectorLoops[Math.floorMod(nextSelectorLoop.getAndIncrement(), selectorLoops.length)];
+    }
+
+    private OutboundQueue newOutboundQueue() {
+        return new OutboundQueue(outboundQueueCapacity, slowConsumerPolicy);
+    }
+
+    /**
+     * Accepts connections when the server channel is ready. Attached to the server channel's key.
+     */
+    class Acceptor {
+        private final ServerSocketChannel serverSocketChannel;
+        private final SocketAcceptListener acceptListener;
+
+        Acceptor(final ServerSocketChannel serverSocketChannel, final SocketAcceptListener acceptListener) {
+            this.serverSocketChannel = serverSocketChannel;
+            this.acceptListener = acceptListener;
+        }
+
+        /**
+         * Accepts every pending connection. Creates a new ChannelSocketHandler for every new connection.
+         */
+        void acceptConnections() {
+            try {
+                SocketChannel channel;
+                while ((channel = serverSocketChannel.accept()) != null) {
+                    channel.configureBlocking(false);
+                    ChannelSocketHandler socketHandler = new ChannelSocketHandler(channel, nextSelectorLoop(), newOutboundQueue());
+                    acceptListener.socketAccepted(socketHandler);
+                    socketHandler.register();
+                }
+            } catch (IOException e) {
+                if (serverSocketChannel.isOpen()) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+}
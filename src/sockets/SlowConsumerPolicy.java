@@ -0,0 +1,22 @@
+package sockets;
+
+/**
+ * What a SocketHandler does when a message is sent while its outbound queue is full.
+ */
+public enum SlowConsumerPolicy {
+    /**
+     * Wait for the writer to make room. Senders that must not wait for the writer, such as the event loop
+     * of a Client on the nio transport, whose selector thread may be waiting for it, disconnect the peer instead.
+     */
+    BLOCK,
+
+    /**
+     * Discard the oldest queued message to make room.
+     */
+    DROP_OLDEST,
+
+    /**
+     * Close the connection and fail the send, so the peer is reported dead.
+     */
+    DISCONNECT
+}
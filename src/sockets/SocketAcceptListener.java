@@ -0,0 +1,15 @@
+package sockets;
+
+/**
+ * Interface to be implemented by classes that should be
+ * notified when a SocketTransport accepts a connection.
+ */
+public interface SocketAcceptListener {
+    /**
+     * To be called when a connection is accepted, before its SocketHandler starts reading.
+     * Implementations register their listeners and configure the SocketHandler here.
+     *
+     * @param socketHandler The SocketHandler of the accepted connection.
+     */
+    void socketAccepted(SocketHandler socketHandler);
+}
@@ -1,111 +1,90 @@
 package sockets;
 
 import helpers.MessageReadHelper;
+import models.Frame;
 import models.messages.Message;
 import encryption.*;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.net.InetSocketAddress;
-import java.net.Socket;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Handles a connection to a chat room socket.
  * Should notify everything else aside from new connections.
+ * Subclasses decide how bytes are moved; this class decodes frames and notifies listeners.
  */
-public class SocketHandler implements Runnable {
-    /**
-     * Socket to manage.
-     */
-    private final Socket socket;
-
+public abstract class SocketHandler {
     /**
      * Listener to notify.
      */
-    private final List<SocketHandlerListener> listeners = new ArrayList<>();
-
-    /**
-     * OutputStream of socket
-     */
-    private OutputStream out;
+    private final CopyOnWriteArrayList<SocketHandlerListener> listeners = new CopyOnWriteArrayList<>();
 
     /**
-     * Indicates whether or not to streaming input from Socket.
+     * Indicates whether or not to this SocketHandler is in server mode
      */
-    private boolean continueRunning = true;
+    private volatile boolean serverMode = false;
 
     /**
-     * Indicates whether or not to this SocketHandler is in server mode
+     * The encryption engine for decrypting recieved messages
      */
-    private boolean serverMode = false;
+    private volatile EncryptionEngine encryptionEngine;
 
     /**
-     * The encryption engine for decrypting recieved messages
+     * Constructs a SocketHandler without listeners, as done for accepted connections
+     * before their owner configures them.
      */
-    private final EncryptionEngine encryptionEngine;
+    protected SocketHandler() {
+    }
 
     /**
-     * Constructs a SocketHandler with a given Socket.
+     * Constructs a SocketHandler.
      *
-     * @param socket The socket to manage.
      * @param listener The Client listening to this SocketHandler
      * @param encryptionEngine The encryptionEngine to decrypt messages with
      */
-    public SocketHandler(final Socket socket, final SocketHandlerListener listener, final EncryptionEngine encryptionEngine) {
-        this.socket = socket;
+    protected SocketHandler(final SocketHandlerListener listener, final EncryptionEngine encryptionEngine) {
         this.listeners.add(listener);
         this.encryptionEngine = encryptionEngine;
     }
 
-    @Override
-    public void run() {
-        try {
-            InputStream incomingStream = socket.getInputStream();
-
-            while (continueRunning) {
-                Message message;
-                if(serverMode){
-                    message = MessageReadHelper.readNextMessage(incomingStream);
-                }
-                else {
-                    message = MessageReadHelper.readNextEncryptedMessage(incomingStream, encryptionEngine);
-                }
-                notifyMessageReceived(message);
-            }
-
-            socket.close();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-    }
-
     /**
      * Registers the listener to receive notifications.
      *
      * @param listener The listener to receive notifications.
      */
     public void registerListener(SocketHandlerListener listener) {
-        // TODO: Do not allow registering multiple times.
-        listeners.add(listener);
+        listeners.addIfAbsent(listener);
     }
 
     /**
-     * Sends a message through the socket.
+     * Sends a message through the socket, waiting for room if the slow consumer policy says so.
      *
      * @param message The message to send.
      * @throws IOException Thrown when the connection has closed and cannot send.
      */
     public void sendMessage(Message message) throws IOException {
-        if (isConnectionClosed()) {
-            throw new IOException("Connection has been terminated.");
-        }
+        sendMessage(message, true);
+    }
 
-        if(out == null){out = socket.getOutputStream();}
-        out.write(message.toByteArray());
-        out.flush();
+    /**
+     * Sends a message through the socket.
+     *
+     * @param message The message to send.
+     * @param mayBlock False if the caller must never wait for the writer, e.g. because the thread that wakes
+     *                 the writer may be waiting on the caller. A full queue then disconnects the peer instead.
+     * @throws IOException Thrown when the connection has closed and cannot send.
+     */
+    public abstract void sendMessage(Message message, boolean mayBlock) throws IOException;
+
+    /**
+     * Returns whether queued messages are written by the thread that also reads and hands over received messages.
+     * A sender that thread may wait on, such as the event loop of a Client, must then not wait for the writer.
+     *
+     * @return True if the reading thread writes, false if a writer of its own does.
+     */
+    public boolean writesOnReaderThread() {
+        return false;
     }
 
     /**
@@ -113,17 +92,42 @@ public class SocketHandler implements Runnable {
      *
      * @return The remote socket address.
      */
-    public InetSocketAddress getRemoteSocketAddress() {
-        return (InetSocketAddress) socket.getRemoteSocketAddress();
-    }
+    public abstract InetSocketAddress getRemoteSocketAddress();
+
+    /**
+     * Returns the local socket address of the socket.
+     *
+     * @return The local socket address.
+     */
+    public abstract InetSocketAddress getLocalSocketAddress();
 
     /**
      * Indicates whether or not the socket has been closed or is disconnected.
      *
      * @return Boolean indicating if the socket has been closed or disconnected.
      */
-    public boolean isConnectionClosed() {
-        return !socket.isConnected() || socket.isClosed();
+    public abstract boolean isConnectionClosed();
+
+    /**
+     * Safely disconnect and end this SocketHandler
+     */
+    public abstract void shutdown();
+
+    /**
+     * Decodes a frame read off the socket according to the mode of this SocketHandler and notifies listeners.
+     *
+     * @param frame The frame that was read.
+     * @throws IOException Thrown when the frame does not hold a supported message.
+     */
+    protected void frameReceived(Frame frame) throws IOException {
+        Message message;
+        if(serverMode){
+            message = MessageReadHelper.readMessage(frame);
+        }
+        else {
+            message = MessageReadHelper.readEncryptedMessage(frame, encryptionEngine);
+        }
+        notifyMessageReceived(message);
     }
 
     /**
@@ -131,7 +135,7 @@ public class SocketHandler implements Runnable {
      *
      * @param message The message that was sent.
      */
-    private void notifyMessageSent(Message message) {
+    protected void notifyMessageSent(Message message) {
         for (SocketHandlerListener listener : listeners) {
             listener.messageSent(this, message);
         }
@@ -142,17 +146,18 @@ public class SocketHandler implements Runnable {
      *
      * @param message The message that was received.
      */
-    private void notifyMessageReceived(Message message) {
+    protected void notifyMessageReceived(Message message) {
         for (SocketHandlerListener listener : listeners) {
             listener.messageReceived(this, message);
         }
     }
 
     /**
-     * Safely disconnect and end this SocketHandler
+     * Sets the encryption engine used to decrypt received messages.
+     * @param encryptionEngine The encryptionEngine to decrypt messages with
      */
-    public void shutdown(){
-        continueRunning = false;
+    public void setEncryptionEngine(EncryptionEngine encryptionEngine) {
+        this.encryptionEngine = encryptionEngine;
     }
 
     /**
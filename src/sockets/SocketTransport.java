@@ -0,0 +1,66 @@
+package sockets;
+
+import encryption.EncryptionEngine;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+
+/**
+ * Opens and accepts connections, creating the SocketHandlers that manage them.
+ */
+public interface SocketTransport {
+    /**
+     * Starts accepting connections on the given address with the system default backlog.
+     *
+     * @param localSocketAddress The address to listen on.
+     * @param acceptListener Notified of every accepted connection.
+     * @throws IOException Thrown when the address cannot be bound.
+     */
+    default void listen(InetSocketAddress localSocketAddress, SocketAcceptListener acceptListener) throws IOException {
+        listen(localSocketAddress, 0, acceptListener);
+    }
+
+    /**
+     * Starts accepting connections on the given address. Returns once the address is bound.
+     *
+     * @param localSocketAddress The address to listen on.
+     * @param backlog Maximum number of connections waiting to be accepted, or 0 for the system default.
+     * @param acceptListener Notified of every accepted connection.
+     * @throws IOException Thrown when the address cannot be bound.
+     */
+    void listen(InetSocketAddress localSocketAddress, int backlog, SocketAcceptListener acceptListener) throws IOException;
+
+    /**
+     * Opens a connection and starts reading from it, waiting as long as the system allows for it to be established.
+     *
+     * @param remoteSocketAddress The address to connect to.
+     * @param listener The listener to notify of messages on the connection.
+     * @param encryptionEngine The encryptionEngine to decrypt messages with.
+     * @param serverMode True if this connection will be with the server.
+     * @return SocketHandler managing the new connection.
+     * @throws IOException Thrown when the connection cannot be opened.
+     */
+    default SocketHandler connect(InetSocketAddress remoteSocketAddress, SocketHandlerListener listener,
+                                  EncryptionEngine encryptionEngine, boolean serverMode) throws IOException {
+        return connect(remoteSocketAddress, listener, encryptionEngine, serverMode, 0);
+    }
+
+    /**
+     * Opens a connection and starts reading from it. Blocks until the connection is established.
+     *
+     * @param remoteSocketAddress The address to connect to.
+     * @param listener The listener to notify of messages on the connection.
+     * @param encryptionEngine The encryptionEngine to decrypt messages with.
+     * @param serverMode True if this connection will be with the server.
+     * @param connectTimeout Time to wait for the connection to be established in milliseconds, or 0 for the system default.
+     * @return SocketHandler managing the new connection.
+     * @throws IOException Thrown when the connection cannot be opened, or is not established in time.
+     */
+    SocketHandler connect(InetSocketAddress remoteSocketAddress, SocketHandlerListener listener,
+                          EncryptionEngine encryptionEngine, boolean serverMode, int connectTimeout) throws IOException;
+
+    /**
+     * Stops accepting connections and releases the threads of this transport.
+     */
+    void shutdown();
+}
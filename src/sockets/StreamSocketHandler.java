@@ -0,0 +1,239 @@
+package sockets;
+
+import helpers.BufferPool;
+import helpers.FrameDecoder;
+import helpers.MessageWriteHelper;
+import models.messages.Message;
+import encryption.*;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Handles a connection over a blocking Socket. A thread runs this handler to read messages.
+ * Sent messages are queued in a bounded OutboundQueue and written by a writer task scheduled
+ * on the writer executor while the queue is not empty, coalescing queued messages into one write.
+ */
+public class StreamSocketHandler extends SocketHandler implements Runnable {
+    /**
+     * Socket to manage.
+     */
+    private final Socket socket;
+
+    /**
+     * Channel writing to the socket. Only used by the writer task.
+     */
+    private WritableByteChannel out;
+
+    /**
+     * Messages waiting to be written.
+     */
+    private final OutboundQueue outboundQueue;
+
+    /**
+     * Executor running the writer task.
+     */
+    private final Executor writerExecutor;
+
+    /**
+     * True while the writer task is scheduled or running.
+     */
+    private final AtomicBoolean writeScheduled = new AtomicBoolean();
+
+    /**
+     * Indicates whether or not to streaming input from Socket.
+     */
+    private volatile boolean continueRunning = true;
+
+    /**
+     * Constructs a StreamSocketHandler for an accepted Socket. Its owner registers listeners before it is run.
+     *
+     * @param socket The socket to manage.
+     * @param outboundQueue The queue of messages to write.
+     * @param writerExecutor The executor to run the writer task on.
+     */
+    StreamSocketHandler(final Socket socket, final OutboundQueue outboundQueue, final Executor writerExecutor) {
+        this.socket = socket;
+        this.outboundQueue = outboundQueue;
+        this.writerExecutor = writerExecutor;
+    }
+
+    /**
+     * Constructs a StreamSocketHandler with a given Socket.
+     *
+     * @param socket The socket to manage.
+     * @param outboundQueue The queue of messages to write.
+     * @param writerExecutor The executor to run the writer task on.
+     * @param listener The Client listening to this SocketHandler
+     * @param encryptionEngine The encryptionEngine to decrypt messages with
+     */
+    StreamSocketHandler(final Socket socket, final OutboundQueue outboundQueue, final Executor writerExecutor,
+                        final SocketHandlerListener listener, final EncryptionEngine encryptionEngine) {
+        super(listener, encryptionEngine);
+        this.socket = socket;
+        this.outboundQueue = outboundQueue;
+        this.writerExecutor = writerExecutor;
+    }
+
+    /**
+     * Reads messages until the connection ends. Blocks while no bytes are available.
+     */
+    @Override
+    public void run() {
+        try {
+            InputStream incomingStream = socket.getInputStream();
+            FrameDecoder frameDecoder = new FrameDecoder();
+
+            while (continueRunning) {
+                frameReceived(frameDecoder.readFrame(incomingStream));
+            }
+        } catch (EOFException eofe) {
+            // The other end closed the connection.
+        } catch (IOException e) {
+            // Reads fail once shutdown closes the socket, which is expected.
+            if (continueRunning) {
+                e.printStackTrace();
+            }
+        } finally {
+            closeSocket();
+        }
+    }
+
+    /**
+     * Queues a message to be written by the writer task.
+     *
+     * @param message The message to send.
+     * @param mayBlock False if the caller must never wait for room in the queue.
+     * @throws IOException Thrown when the connection has closed, or the peer is too slow and was disconnected.
+     */
+    @Override
+    public void sendMessage(Message message, boolean mayBlock) throws IOException {
+        if (isConnectionClosed()) {
+            throw new IOException("Connection has been terminated.");
+        }
+        if (!outboundQueue.offer(message, mayBlock)) {
+            if (isConnectionClosed()) {
+                throw new IOException("Connection has been terminated.");
+            }
+            continueRunning = false;
+            closeSocket();
+            throw new IOException("Peer is not keeping up with sent messages and was disconnected.");
+        }
+        if (writeScheduled.compareAndSet(false, true)) {
+            try {
+                writerExecutor.execute(this::writeQueuedMessages);
+            } catch (RejectedExecutionException e) {
+                closeSocket();
+                throw new IOException("Connection has been terminated.");
+            }
+        }
+    }
+
+    /**
+     * Writes queued messages until the queue is empty, encoding as many as fit into one pooled buffer per write.
+     * Closes the socket afterwards if shutdown was requested meanwhile.
+     */
+    private void writeQueuedMessages() {
+        ByteBuffer buffer = BufferPool.acquire(BufferPool.BUFFER_SIZE);
+        try {
+            if (out == null) {
+                out = MessageWriteHelper.getWritableChannel(socket);
+            }
+            do {
+                Message message = outboundQueue.poll();
+                while (message != null) {
+                    if (message.getEncodedSize() > buffer.capacity()) {
+                        // Larger than the buffer, written on its own.
+                        MessageWriteHelper.writeMessage(out, message);
+                        message = outboundQueue.poll();
+                        continue;
+                    }
+                    buffer.clear();
+                    while (message != null && message.getEncodedSize() <= buffer.remaining()) {
+                        message.writeTo(buffer);
+                        message = outboundQueue.poll();
+                    }
+                    buffer.flip();
+                    while (buffer.hasRemaining()) {
+                        out.write(buffer);
+                    }
+                }
+                writeScheduled.set(false);
+            } while (!outboundQueue.isEmpty() && writeScheduled.compareAndSet(false, true));
+
+            if (!continueRunning) {
+                closeSocket();
+            }
+        } catch (IOException e) {
+            // Writes fail once the reading thread closes the socket, which is expected.
+            if (continueRunning && !socket.isClosed()) {
+                e.printStackTrace();
+            }
+            closeSocket();
+        } finally {
+            BufferPool.release(buffer);
+        }
+    }
+
+    /**
+     * Returns the remote socket address of the socket.
+     *
+     * @return The remote socket address.
+     */
+    @Override
+    public InetSocketAddress getRemoteSocketAddress() {
+        return (InetSocketAddress) socket.getRemoteSocketAddress();
+    }
+
+    /**
+     * Returns the local socket address of the socket.
+     *
+     * @return The local socket address.
+     */
+    @Override
+    public InetSocketAddress getLocalSocketAddress() {
+        return (InetSocketAddress) socket.getLocalSocketAddress();
+    }
+
+    /**
+     * Indicates whether or not the socket has been closed or is disconnected.
+     *
+     * @return Boolean indicating if the socket has been closed or disconnected.
+     */
+    @Override
+    public boolean isConnectionClosed() {
+        return !continueRunning || !socket.isConnected() || socket.isClosed();
+    }
+
+    /**
+     * Safely disconnect and end this SocketHandler once queued messages are written.
+     * Closing the socket unblocks the reading thread.
+     */
+    @Override
+    public void shutdown(){
+        continueRunning = false;
+        if (!writeScheduled.get()) {
+            closeSocket();
+        }
+    }
+
+    /**
+     * Closes the socket and discards queued messages, ignoring errors since the connection is being abandoned.
+     */
+    private void closeSocket() {
+        outboundQueue.close();
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Already closed.
+        }
+    }
+}
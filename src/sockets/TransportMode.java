@@ -0,0 +1,16 @@
+package sockets;
+
+/**
+ * Supported ways of moving bytes over connections.
+ */
+public enum TransportMode {
+    /**
+     * Blocking Sockets with a thread per connection.
+     */
+    BLOCKING,
+
+    /**
+     * Non-blocking SocketChannels multiplexed over a few selector threads.
+     */
+    NIO
+}